@@ -20,8 +20,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -80,14 +82,22 @@ public class CancelApi implements EndpointGroup {
         }
         if ("true".equals(doAndHow)) {
             List<String> results = new ArrayList<>(jobNames.size());
+            final Map<String, JenkinsCliWrapper.ClientResponse> batch;
+            if (op.equals(DirectOp.enable)) {
+                batch = JenkinsCliWrapper.getCli().enableJobs(jobNames);
+            } else if (op.equals(DirectOp.disable)) {
+                batch = JenkinsCliWrapper.getCli().disableJobs(jobNames);
+            } else {
+                batch = Collections.emptyMap();
+            }
             for (String job : jobNames) {
                 JenkinsCliWrapper.ClientResponseBase r = null;
                 String opString = "unknown";
                 if (op.equals(DirectOp.enable)) {
-                    r = JenkinsCliWrapper.getCli().enableJob(job);
+                    r = batch.get(job);
                     opString = "enabled";
                 } else if (op.equals(DirectOp.disable)) {
-                    r = JenkinsCliWrapper.getCli().disableJob(job);
+                    r = batch.get(job);
                     opString = "disabled";
                 } else if (op.equals(DirectOp.stop)) {
                     r = JenkinsCliWrapper.getCli().stopJob(job);
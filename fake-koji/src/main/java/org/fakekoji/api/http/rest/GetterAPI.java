@@ -99,6 +99,8 @@ public class GetterAPI implements EndpointGroup {
     private static final String JENKINS = "jenkins";
     private static final String JENKINS_URL = "jenkinsUrl";
     private static final String STATUS = "status";
+    private static final String STORAGE_STATS = "storageStats";
+    private static final String JENKINS_CLI_STATS = "jenkinsCliStats";
 
     private static final String JDK_VERSIONS = "jdkVersions";
     private static final String HELP = "help";
@@ -362,6 +364,34 @@ public class GetterAPI implements EndpointGroup {
         };
     }
 
+    private QueryHandler getStorageStatsHandler() {
+        return new QueryHandler() {
+            @Override
+            public Result<String, String> handle(Map<String, List<String>> queryParams) {
+                return Result.ok(String.join("\n", settings.getConfigManager().getStorageStatistics()) + "\n");
+            }
+
+            @Override
+            public String about() {
+                return "/" + STORAGE_STATS + " Will report hits and misses of config storage caches";
+            }
+        };
+    }
+
+    private QueryHandler getJenkinsCliStatsHandler() {
+        return new QueryHandler() {
+            @Override
+            public Result<String, String> handle(Map<String, List<String>> queryParams) {
+                return Result.ok(String.join("\n", JenkinsCliWrapper.getCli().getCommandStatistics()) + "\n");
+            }
+
+            @Override
+            public String about() {
+                return "/" + JENKINS_CLI_STATS + " Will report count, failures and latency of every jenkins cli command";
+            }
+        };
+    }
+
     private QueryHandler getPortHandler() {
         return new QueryHandler() {
             @Override
@@ -1195,6 +1225,8 @@ public class GetterAPI implements EndpointGroup {
             put(VARIANTS, getVariantsHandler());
             put(JENKINS_URL, getJenkinsUrlHandler());
             put(SERVICE, getServiceHandler());
+            put(STORAGE_STATS, getStorageStatsHandler());
+            put(JENKINS_CLI_STATS, getJenkinsCliStatsHandler());
         }});
     }
 
@@ -280,6 +280,7 @@ public class RedeployApi implements EndpointGroup {
                 int totalReplacements = 0;
                 int invalidNodes = 0;
                 final String noneNode = "NoneNodeFound";
+                final List<String> written = new ArrayList<>();
                 for (String job : jobs) {
                     Job foundJob = findJob(allJobs, job);
                     sb.append(job).append("\n");
@@ -332,15 +333,11 @@ public class RedeployApi implements EndpointGroup {
                     if ("true".equals(doAndHow)) {
                         Utils.writeToFile(config, String.join("\n", lines));
                         sb.append(" - written\n");
-                        try {
-                            JenkinsCliWrapper.getCli().reloadJob(job).throwIfNecessary();
-                            sb.append(" - reloaded\n");
-                        } catch (Exception ex) {
-                            sb.append(" - reload failed, reload on your own\n");
-                        }
+                        written.add(job);
                     }
                     totalFiles++;
                 }
+                reloadJobs(written, sb);
                 sb.append("true".equals(doAndHow) ? "Written " : "Would be written: " + totalFiles + " of " + jobs.size() + "\n");
                 if ("true".equals(skipSlaves)) {
                     sb.append("Replaced " + totalReplacements + " of " + (jobs.size() * 2) + "\n");
@@ -365,6 +362,7 @@ public class RedeployApi implements EndpointGroup {
                 StringBuilder sb = new StringBuilder();
                 int totalCountReplacements = 0;
                 int totalCountFiles = 0;
+                final List<String> written = new ArrayList<>();
                 for (String job : jobs) {
                     sb.append(job).append("\n");
                     File jobDir = new File(settings.getJenkinsJobsRoot(), job);
@@ -383,15 +381,11 @@ public class RedeployApi implements EndpointGroup {
                     if ("true".equals(doAndHow)) {
                         Utils.writeToFile(config, String.join("\n", lines));
                         sb.append(" - written\n");
-                        try {
-                            JenkinsCliWrapper.getCli().reloadJob(job).throwIfNecessary();
-                            sb.append(" - reloaded\n");
-                        } catch (Exception ex) {
-                            sb.append(" - reload failed, reload on your own\n");
-                        }
+                        written.add(job);
                     }
                     totalCountFiles++;
                 }
+                reloadJobs(written, sb);
                 sb.append("true".equals(doAndHow) ? "Written " : "Would be written: " + totalCountFiles + " of " + jobs.size() + "\n");
                 sb.append("Replaced " + totalCountReplacements + " of " + jobs.size() + "\n");
                 context.status(OToolService.OK).result(sb.toString() + "\n");
@@ -408,10 +402,27 @@ public class RedeployApi implements EndpointGroup {
                 String force = context.queryParam("force");
                 if ("true".equals(doAndHow)) {
                     List<String> results = new ArrayList<>(jobs.size());
+                    Map<String, String> prepared = new HashMap<>();
+                    List<String> toSchedule = new ArrayList<>();
+                    for (String job : jobs) {
+                        try {
+                            if (prepareCheckoutOnJob(job, nvr, "true".equals(force), new StringBuilder())) {
+                                toSchedule.add(job);
+                            }
+                            prepared.put(job, "ok - checking out -  " + job);
+                        } catch (Exception ex) {
+                            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+                            prepared.put(job, "failed " + job + ex.toString());
+                        }
+                    }
+                    Map<String, JenkinsCliWrapper.ClientResponse> scheduled = JenkinsCliWrapper.getCli().scheduleBuilds(toSchedule);
                     for (String job : jobs) {
+                        JenkinsCliWrapper.ClientResponse cr = scheduled.get(job);
                         try {
-                            forceCheckoutOnJob(job, nvr, "true".equals(force));
-                            results.add("ok - checking out -  " + job);
+                            if (cr != null) {
+                                cr.throwIfNecessary();
+                            }
+                            results.add(prepared.get(job));
                         } catch (Exception ex) {
                             LOGGER.log(Level.WARNING, ex.getMessage(), ex);
                             results.add("failed " + job + ex.toString());
@@ -433,9 +444,10 @@ public class RedeployApi implements EndpointGroup {
                 String doAndHow = context.queryParam(REDEPLOY_DO);
                 if ("true".equals(doAndHow)) {
                     List<String> results = new ArrayList<>(jobs.size());
+                    Map<String, JenkinsCliWrapper.ClientResponse> scheduled = JenkinsCliWrapper.getCli().scheduleBuilds(jobs);
                     for (String job : jobs) {
                         try {
-                            JenkinsCliWrapper.ClientResponse cr = JenkinsCliWrapper.getCli().scheduleBuild(job);
+                            JenkinsCliWrapper.ClientResponse cr = scheduled.get(job);
                             cr.throwIfNecessary();
                             results.add("ok - scheduling -  " + job);
                         } catch (Exception ex) {
@@ -607,11 +619,39 @@ public class RedeployApi implements EndpointGroup {
     }
 
 
+    private static void reloadJobs(List<String> jobs, StringBuilder sb) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        Map<String, JenkinsCliWrapper.ClientResponse> reloaded = JenkinsCliWrapper.getCli().reloadJobs(jobs);
+        for (String job : jobs) {
+            if (reloaded.get(job).simpleVerdict()) {
+                sb.append(job).append(" - reloaded\n");
+            } else {
+                sb.append(job).append(" - reload failed, reload on your own\n");
+            }
+        }
+    }
+
     private StringBuilder forceCheckoutOnJob(String job, String nvr, boolean force) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (prepareCheckoutOnJob(job, nvr, force, sb)) {
+            JenkinsCliWrapper.ClientResponse cr = JenkinsCliWrapper.getCli().scheduleBuild(job);
+            cr.throwIfNecessary();
+            sb.append("scheduled " + job + "\n");
+        }
+        return sb;
+    }
+
+    /**
+     * Removes nvr from processed builds of the job and deletes its build.xml.
+     *
+     * @return whether the job should be scheduled
+     */
+    private boolean prepareCheckoutOnJob(String job, String nvr, boolean force, StringBuilder sb) throws IOException {
         if (job == null) {
             throw new RuntimeException(RERUN_JOB + " must be an existing job id, was " + job);
         }
-        StringBuilder sb = new StringBuilder();
         boolean removed = true;
         if (nvr != null) {
             File processed = new File(settings.getJenkinsJobsRoot().getAbsolutePath() + File.separator + job + File.separator + Constants.PROCESSED_BUILDS_HISTORY);
@@ -631,13 +671,11 @@ public class RedeployApi implements EndpointGroup {
         }
         if (removed || force) {
             deleteBuildXml(job, sb);
-            JenkinsCliWrapper.ClientResponse cr = JenkinsCliWrapper.getCli().scheduleBuild(job);
-            cr.throwIfNecessary();
-            sb.append("scheduled " + job + "\n");
+            return true;
         } else {
             sb.append("not scheduling " + job + "\n");
+            return false;
         }
-        return sb;
     }
 
     private class ArchesExpectedWorker {
@@ -9,12 +9,17 @@ import org.fakekoji.Utils;
 import org.fakekoji.core.AccessibleSettings;
 import org.fakekoji.xmlrpc.server.JavaServerConstants;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -23,7 +28,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -39,7 +48,27 @@ public class ResultsDb implements EndpointGroup {
     private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
     public static final String MAIN_DELIMITER = ":";
     private static final String SECONDARY_DELIMITER = " ";
+    // minimal number of journaled changes which makes the periodic compaction rewrite the results file
     public static final int LIMIT_TO_SAVE = 50;
+    private static final long COMPACT_PERIOD_SECONDS = Long.getLong("otool.resultsDb.compactSeconds", 60);
+    // one thread and one shutdown hook compact all opened dbs
+    private static final ScheduledExecutorService COMPACTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "results-db-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Set<DB> OPENED = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("results-db-shutdown") {
+            @Override
+            public void run() {
+                for (DB db : OPENED) {
+                    db.compact();
+                }
+            }
+        });
+    }
 
     private static class ScoreWithTimeStamp {
 
@@ -111,26 +140,64 @@ public class ResultsDb implements EndpointGroup {
         }
     }
 
+    /**
+     * Results are kept in memory. The results file is a snapshot of them; every change since the snapshot was written
+     * is appended to the journal next to it and synced before it is applied. The journal is folded into the snapshot
+     * in background, and on startup the snapshot is loaded and the journal replayed over it.
+     */
     private class DB {
+        private static final String JOURNAL_SUFFIX = ".journal";
+        // journal being folded into snapshot; if it survives a crash, it is replayed before the journal
+        private static final String COMPACTING_SUFFIX = ".compacting";
+        private static final String JOURNAL_SET = "set";
+        private static final String JOURNAL_DEL = "del";
+
         private final Map<String/*nvr*/, Map<String/*job*/, Map<Integer/*jobId*/, List<ScoreWithTimeStamp>>>> nvras = Collections.synchronizedMap(new HashMap<>());
-        AtomicInteger added = new AtomicInteger(0);
+        private final File snapshot;
+        private final File journalFile;
+        private final File compactingFile;
+        private final Object compactionLock = new Object();
+        private ScheduledFuture<?> compaction;
+        private FileOutputStream journal;
+        private int journalEntries;
 
         public DB() {
-            Runtime.getRuntime().addShutdownHook(new Thread() {
-                @Override
-                public void run() {
-                    DB.this.save();
-                }
-            });
+            snapshot = settings.getResultsFile();
+            journalFile = new File(snapshot.getParentFile(), snapshot.getName() + JOURNAL_SUFFIX);
+            compactingFile = new File(snapshot.getParentFile(), snapshot.getName() + COMPACTING_SUFFIX);
+        }
+
+        /**
+         * Loads the snapshot, replays journals over it and starts periodic compaction. Compaction serializes the
+         * results by ResultsDb, so it can be called only once the db is assigned to it.
+         */
+        private void open() {
             load();
+            replay(compactingFile);
+            replay(journalFile);
+            compact();
+            OPENED.add(this);
+            compaction = COMPACTOR.scheduleWithFixedDelay(() -> {
+                if (getJournalEntries() >= LIMIT_TO_SAVE) {
+                    compact();
+                }
+            }, COMPACT_PERIOD_SECONDS, COMPACT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+
+        private void close() {
+            OPENED.remove(this);
+            if (compaction != null) {
+                compaction.cancel(false);
+            }
+            compact();
         }
 
         private synchronized void load() {
             List<String> lines = new ArrayList<>();
             try {
-                lines = Utils.readFileToLines(settings.getResultsFile(), null);
+                lines = Utils.readFileToLines(snapshot, null);
             } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "error loading results db: " + settings.getResultsFile().getAbsoluteFile(), ex);
+                LOGGER.log(Level.SEVERE, "error loading results db: " + snapshot.getAbsoluteFile(), ex);
                 return;
             }
             nvras.clear();
@@ -142,19 +209,103 @@ public class ResultsDb implements EndpointGroup {
                         set(main[0], main[1], Integer.valueOf(main[2]), new ScoreWithTimeStamp(result));
                     }
                 } catch (Exception ex) {
-                    LOGGER.log(Level.SEVERE, "error results db: " + settings.getResultsFile().getAbsoluteFile() + " line of " + line, ex);
+                    LOGGER.log(Level.SEVERE, "error results db: " + snapshot.getAbsoluteFile() + " line of " + line, ex);
                     return;
                 }
             }
         }
 
-        private synchronized void save() {
+        private synchronized void replay(File file) {
+            if (!file.exists()) {
+                return;
+            }
+            List<String> lines;
             try {
-                Utils.writeToFile(settings.getResultsFile(), getScore(null, null, null));
+                lines = Utils.readFileToLines(file, null);
             } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "error saving results db: " + settings.getResultsFile().getAbsoluteFile(), ex);
+                LOGGER.log(Level.SEVERE, "error replaying results db journal: " + file.getAbsoluteFile(), ex);
+                return;
+            }
+            for (String line : lines) {
+                try {
+                    String[] main = line.split(MAIN_DELIMITER);
+                    if (JOURNAL_SET.equals(main[0])) {
+                        applySet(main[1], main[2], Integer.valueOf(main[3]), new ScoreWithTimeStamp(main[4]));
+                    } else if (JOURNAL_DEL.equals(main[0])) {
+                        applyDel(main[1], main[2], Integer.valueOf(main[3]), Integer.valueOf(main[4]));
+                    }
+                } catch (Exception ex) {
+                    // most likely the last line, torn by crash in the middle of write, which was never acknowledged
+                    LOGGER.log(Level.SEVERE, "error results db journal: " + file.getAbsoluteFile() + " line of " + line, ex);
+                }
+            }
+            LOGGER.log(Level.INFO, "replayed " + lines.size() + " results db changes from " + file.getAbsoluteFile());
+        }
+
+        /**
+         * Writes the current state as new snapshot and drops the journal. Changes done meanwhile go to a fresh journal,
+         * so callers of set and del are blocked only while the state is serialized.
+         */
+        private void compact() {
+            synchronized (compactionLock) {
+                final String content;
+                synchronized (ResultsDb.this) {
+                    synchronized (this) {
+                        try {
+                            closeJournal();
+                            if (journalFile.exists() && !compactingFile.exists()) {
+                                Files.move(journalFile.toPath(), compactingFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                            }
+                        } catch (Exception ex) {
+                            LOGGER.log(Level.SEVERE, "error rotating results db journal: " + journalFile.getAbsoluteFile(), ex);
+                            return;
+                        }
+                        journalEntries = 0;
+                        content = getScore(null, null, null);
+                    }
+                }
+                try {
+                    final File tmp = new File(snapshot.getParentFile(), snapshot.getName() + ".tmp");
+                    try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                        fos.write(content.getBytes(StandardCharsets.UTF_8));
+                        fos.getFD().sync();
+                    }
+                    Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Files.deleteIfExists(compactingFile.toPath());
+                } catch (Exception ex) {
+                    LOGGER.log(Level.SEVERE, "error saving results db: " + snapshot.getAbsoluteFile(), ex);
+                }
+            }
+        }
+
+        private synchronized int getJournalEntries() {
+            return journalEntries;
+        }
+
+        private synchronized void appendToJournal(String... fields) {
+            final String line = String.join(MAIN_DELIMITER, fields) + "\n";
+            try {
+                if (journal == null) {
+                    journal = new FileOutputStream(journalFile, true);
+                }
+                journal.write(line.getBytes(StandardCharsets.UTF_8));
+                journal.getFD().sync();
+                journalEntries++;
+            } catch (IOException ex) {
+                closeJournal();
+                throw new RuntimeException("error writing results db journal: " + journalFile.getAbsoluteFile(), ex);
             }
+        }
 
+        private synchronized void closeJournal() {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "error closing results db journal: " + journalFile.getAbsoluteFile(), ex);
+                }
+                journal = null;
+            }
         }
 
         private synchronized void set(String nvr, String job, Integer buildId, ScoreWithTimeStamp result) {
@@ -163,43 +314,58 @@ public class ResultsDb implements EndpointGroup {
         }
 
         private synchronized ScoreWithTimeStamp set(String nvr, String job, Integer buildId, Integer score, Optional<String> messgae, Optional<String> author) {
-            List<ScoreWithTimeStamp> scores = getChain(nvr, job, buildId, true);
             ScoreWithTimeStamp newOne = new ScoreWithTimeStamp(score, new Date().getTime(), messgae, author);
+            ScoreWithTimeStamp oldOne = find(nvr, job, buildId, newOne);
+            if (oldOne != null) {
+                //we do not overwrite
+                return oldOne;
+            }
+            appendToJournal(JOURNAL_SET, nvr, job, buildId.toString(), newOne.toString());
+            return applySet(nvr, job, buildId, newOne);
+        }
+
+        private synchronized ScoreWithTimeStamp applySet(String nvr, String job, Integer buildId, ScoreWithTimeStamp newOne) {
+            List<ScoreWithTimeStamp> scores = getChain(nvr, job, buildId, true);
             for (ScoreWithTimeStamp oldOne : scores) {
                 if (oldOne.equals(newOne)) {
-                    //we do not overwrite
                     return oldOne;
                 }
             }
             scores.add(newOne);
-            saveOnCount();
             return null;
         }
 
         private synchronized ScoreWithTimeStamp del(String nvr, String job, Integer buildId, Integer score) {
-            List<ScoreWithTimeStamp> scores = getChain(nvr, job, buildId, false);
             ScoreWithTimeStamp newOne = new ScoreWithTimeStamp(score, new Date().getTime(), Optional.empty(), Optional.empty());
+            if (find(nvr, job, buildId, newOne) == null) {
+                return null;
+            }
+            appendToJournal(JOURNAL_DEL, nvr, job, buildId.toString(), score.toString());
+            return applyDel(nvr, job, buildId, score);
+        }
+
+        private synchronized ScoreWithTimeStamp applyDel(String nvr, String job, Integer buildId, Integer score) {
+            ScoreWithTimeStamp newOne = new ScoreWithTimeStamp(score, new Date().getTime(), Optional.empty(), Optional.empty());
+            ScoreWithTimeStamp oldOne = find(nvr, job, buildId, newOne);
+            if (oldOne != null) {
+                int deleteions = delChain(nvr, job, buildId, oldOne);
+                if (deleteions == 0) {
+                    LOGGER.log(Level.WARNING, "deletion of " + nvr + ", " + job + ", " + buildId + ", " + score + " is bad, deleted: " + deleteions);
+                }
+            }
+            return oldOne;
+        }
+
+        private synchronized ScoreWithTimeStamp find(String nvr, String job, Integer buildId, ScoreWithTimeStamp newOne) {
+            List<ScoreWithTimeStamp> scores = getChain(nvr, job, buildId, false);
             for (ScoreWithTimeStamp oldOne : scores) {
                 if (oldOne.equals(newOne)) {
-                    int deleteions = delChain(nvr, job, buildId, oldOne);
-                    if (deleteions == 0) {
-                        LOGGER.log(Level.WARNING, "deletion of " + nvr + ", " + job + ", " + buildId + ", " + score + " is bad, deleted: " + deleteions);
-                    }
-                    saveOnCount();
                     return oldOne;
                 }
             }
             return null;
         }
 
-        private void saveOnCount() {
-            added.incrementAndGet();
-            if (added.get() > LIMIT_TO_SAVE) {
-                save();
-                added.set(0);
-            }
-        }
-
         @NotNull
         private synchronized List<ScoreWithTimeStamp> getChain(String nvr, String job, Integer buildId, boolean putIfNeeded) {
             Map<String, Map<Integer, List<ScoreWithTimeStamp>>> jobs = nvras.get(nvr);
@@ -284,6 +450,14 @@ public class ResultsDb implements EndpointGroup {
     ResultsDb(final AccessibleSettings settings) {
         this.settings = settings;
         this.db = new DB();
+        this.db.open();
+    }
+
+    /**
+     * Stops periodic compaction, and folds the journal into the results file.
+     */
+    public void close() {
+        db.close();
     }
 
 
@@ -363,6 +537,13 @@ public class ResultsDb implements EndpointGroup {
         return delHelper(job, nvr, buildId, score);
     }
 
+    /**
+     * Folds the journal into the results file right now, instead of waiting for background compaction.
+     */
+    void compact() {
+        db.compact();
+    }
+
     synchronized String getNvrs() {
         List l = new ArrayList<>(db.get().keySet());
         return l.stream().sorted().collect(Collectors.joining("\n")) + "\n";
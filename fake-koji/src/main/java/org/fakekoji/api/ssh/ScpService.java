@@ -40,6 +40,7 @@ import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
 import org.apache.sshd.server.session.ServerSession;
 import org.fakekoji.core.AccessibleSettings;
 import org.fakekoji.core.FakeKojiDB;
+import org.fakekoji.core.IsFailedBuild;
 import org.fakekoji.core.utils.OToolParser;
 import org.fakekoji.functional.Result;
 import org.fakekoji.jobmanager.model.JDKProject;
@@ -442,7 +443,18 @@ public class ScpService {
                     throw new SshException(ss);
                 }
                 setOwner(paths.fullPath.toPath(), session.getUsername());
-                return new FileOutputStream(paths.fullPath);
+                IsFailedBuild.invalidate(paths.fullPath);
+                return new FileOutputStream(paths.fullPath) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            //the file was empty (and so looking like failed build) until now
+                            IsFailedBuild.invalidate(paths.fullPath);
+                        }
+                    }
+                };
             }
 
             private void createCorrectlyOwnedDirectoryTree(File dirr, String username) throws IOException {
@@ -632,7 +644,7 @@ public class ScpService {
             name = Arrays.stream(split).limit(3).collect(Collectors.joining("-"));
             version = split[split.length - 2];
             suffix = releaseArchSuffix[releaseArchSuffix.length - 1];
-            final Result<OToolArchive, String> parseResult = new OToolParser(jdkProjects, jdkVersions, buildVariants)
+            final Result<OToolArchive, String> parseResult = OToolParser.shared(jdkProjects, jdkVersions, buildVariants)
                     .parseArchive(fileName);
             if (FakeKojiDB.isOkForOldApi(fileName)) {
                 arch = releaseArchSuffix[releaseArchSuffix.length - 2];
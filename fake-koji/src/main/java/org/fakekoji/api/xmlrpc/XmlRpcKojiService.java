@@ -47,6 +47,9 @@ import org.fakekoji.xmlrpc.server.xmlrpcresponse.TagSet;
 import org.fakekoji.xmlrpc.server.xmlrpcresponse.XmlRpcResponse;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -60,6 +63,7 @@ public class XmlRpcKojiService {
 
     private WebServer webServer;
     private final AccessibleSettings settings;
+    private FakeKojiDB kojiDb;
 
     public XmlRpcKojiService(AccessibleSettings settings) {
         this.settings = settings;
@@ -99,53 +103,87 @@ public class XmlRpcKojiService {
         config.setEnabledForExtensions(true);
         webServer.getXmlRpcServer().setConfig(config);
 
+        kojiDb = new FakeKojiDB(settings);
         XmlRpcHandlerMapping xxx = string -> xmlRpcRequest -> {
             LOGGER.info("Requested: " + xmlRpcRequest.getMethodName());
-            //need reinitializzing, as new  build could be added
-            FakeKojiDB kojiDb = new FakeKojiDB(settings);
+            //need refreshing, as new  build could be added
+            kojiDb.refresh();
             if (xmlRpcRequest.getMethodName().equals("sample.sum")) {
                 //testing method
                 return sum(xmlRpcRequest.getParameter(0), xmlRpcRequest.getParameter(1));
             }
-            final Object parameter = xmlRpcRequest.getParameter(0);
-
-            final XmlRpcResponse response;
-            switch (xmlRpcRequest.getMethodName()) {
-                case Constants.getPackageID:
-                    response = new PackageId(kojiDb.getPkgId(GetPackageId.create(parameter).getPackageName()));
-                    break;
-                case Constants.listBuilds:
-                    response = new BuildList(kojiDb.getProjectBuilds(ListBuilds.create(parameter).getPackageId()));
-                    break;
-                case Constants.listTags:
-                    response = new TagSet(kojiDb.getTags(ListTags.create(parameter).getBuildId()));
-                    break;
-                case Constants.listRPMs:
-                    final ListRPMs listRPMsParams = ListRPMs.create(parameter);
-                    response = new RPMList(kojiDb.getRpms(listRPMsParams.getBuildId(), listRPMsParams.getArchs()));
-                    break;
-                case Constants.listArchives:
-                    final ListArchives listArchivesParams = ListArchives.create(parameter);
-                    response = new ArchiveList(kojiDb.getArchives(listArchivesParams.getBuildId(), listArchivesParams.getArchs()));
-                    break;
-                case Constants.getBuildList:
-                    final GetBuildList getBuildListParams = GetBuildList.create(parameter);
-                    response = new FakeBuildList(kojiDb.getBuildList(getBuildListParams));
-                    break;
-                case Constants.getBuildDetail:
-                    final GetBuildDetail getBuildDetailParams = GetBuildDetail.create(parameter);
-                    response = new FakeBuildDetail(kojiDb.getBuildDetail(getBuildDetailParams));
-                    break;
-                default:
-                    return null;
+            if (xmlRpcRequest.getMethodName().equals(Constants.multicall)) {
+                return multicall(xmlRpcRequest.getParameter(0));
             }
-            return response.toObject();
+            return handle(xmlRpcRequest.getMethodName(), xmlRpcRequest.getParameter(0));
         };
         webServer.getXmlRpcServer().setHandlerMapping(xxx);
         //server.addHandler("sample", new JavaServer());
         webServer.start();
     }
 
+    private Object handle(final String methodName, final Object parameter) {
+        final XmlRpcResponse response;
+        switch (methodName) {
+            case Constants.getPackageID:
+                response = new PackageId(kojiDb.getPkgId(GetPackageId.create(parameter).getPackageName()));
+                break;
+            case Constants.listBuilds:
+                response = new BuildList(kojiDb.getProjectBuilds(ListBuilds.create(parameter).getPackageId()));
+                break;
+            case Constants.listTags:
+                response = new TagSet(kojiDb.getTags(ListTags.create(parameter).getBuildId()));
+                break;
+            case Constants.listRPMs:
+                final ListRPMs listRPMsParams = ListRPMs.create(parameter);
+                response = new RPMList(kojiDb.getRpms(listRPMsParams.getBuildId(), listRPMsParams.getArchs()));
+                break;
+            case Constants.listArchives:
+                final ListArchives listArchivesParams = ListArchives.create(parameter);
+                response = new ArchiveList(kojiDb.getArchives(listArchivesParams.getBuildId(), listArchivesParams.getArchs()));
+                break;
+            case Constants.getBuildList:
+                final GetBuildList getBuildListParams = GetBuildList.create(parameter);
+                response = new FakeBuildList(kojiDb.getBuildList(getBuildListParams));
+                break;
+            case Constants.getBuildDetail:
+                final GetBuildDetail getBuildDetailParams = GetBuildDetail.create(parameter);
+                response = new FakeBuildDetail(kojiDb.getBuildDetail(getBuildDetailParams));
+                break;
+            default:
+                return null;
+        }
+        return response.toObject();
+    }
+
+    /**
+     * Implements system.multicall: each call is answered by array with its single result, or by fault struct, so
+     * failure of one call does not fail the others.
+     */
+    private Object[] multicall(final Object parameter) {
+        final Object[] calls = (Object[]) parameter;
+        final Object[] responses = new Object[calls.length];
+        for (int i = 0; i < calls.length; i++) {
+            final Map<?, ?> call = (Map<?, ?>) calls[i];
+            final String methodName = (String) call.get(Constants.methodName);
+            try {
+                final Object[] params = (Object[]) call.get(Constants.params);
+                responses[i] = new Object[]{handle(methodName, params == null || params.length == 0 ? null : params[0])};
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Call of " + methodName + " in " + Constants.multicall + " failed", ex);
+                final Map<String, Object> fault = new HashMap<>();
+                fault.put(Constants.faultCode, 1);
+                fault.put(Constants.faultString, ex.toString());
+                responses[i] = fault;
+            }
+        }
+        return responses;
+    }
+
+    public FakeKojiDB getKojiDb() {
+        return kojiDb;
+    }
+
     public void stop() {
         webServer.shutdown();
     }
@@ -39,7 +39,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -347,6 +349,7 @@ public class FakeBuild {
         }
         final List<File> files = getNonLogs();
         final List<RPM> rpms = new ArrayList<>(files.size());
+        final Map<File, Boolean> failedDirs = new HashMap<>();
         for (File file : files) {
             final String fileName = file.getName();
             String packageName = replaceLast(fileName, "-.*", "");
@@ -354,7 +357,10 @@ public class FakeBuild {
             String packageFile = replaceLast(fileName, "\\..*", ""); //.suffix
             packageFile = replaceLast(packageFile, "\\..*", ""); //.arch
             final String arch = file.getParentFile().getName();
-            final boolean isFailed = new IsFailedBuild(file.getParentFile().getParentFile()).reCheck().getLastResult();
+            final boolean isFailed = failedDirs.computeIfAbsent(
+                    file.getParentFile().getParentFile(),
+                    buildDir -> new IsFailedBuild(buildDir).check().getLastResult()
+            );
             if (isFailed) {
                 LOGGER.warning(file + " seems to be from failed build!");
             }
@@ -39,8 +39,12 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -54,54 +58,148 @@ import java.util.stream.Collectors;
 public class FakeKojiDB {
 
     private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
+    private static final long MTIME_GRANULARITY_MILLIS = 2000;
 
-    private final String[] projects;
-    private final List<FakeBuild> builds;
     private final AccessibleSettings settings;
+    /**
+     * project dir -> version dir -> builds of that version. Every directory seen is remembered with its mtime in
+     * dirStamps, so refresh only re-lists directories whose content (set of children) changed.
+     */
+    private final Map<File, Map<File, List<FakeBuild>>> index = new LinkedHashMap<>();
+    private final Map<File, Long> dirStamps = new HashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptySet(), Collections.emptyList());
+    private volatile long lastRefreshTime;
+    private volatile long lastRefreshLatencyNanos;
+    private long lastRefreshStart;
 
     public FakeKojiDB(AccessibleSettings settings) {
         LOGGER.info("(re)initizing fake koji DB");
         this.settings = settings;
-        File[] projectDirs = settings.getDbFileRoot().listFiles(new DirFilter());
-        projects = new String[projectDirs.length];
-        builds = new ArrayList<>();
-        //read all projects
-        for (int i = 0; i < projectDirs.length; i++) {
-            File projectDir = projectDirs[i];
-            projects[i] = projectDir.getName();
-            //and all builds in those project
-            File[] versions = projectDir.listFiles(new DirFilter());
-            for (File version : versions) {
-                File[] releases = version.listFiles(new DirFilter());
-                for (File release : releases) {
-                    FakeBuild b = new FakeBuild(projectDir.getName(), version.getName(), release.getName(), release, settings.getProjectMapping());
-                    builds.add(b);
+        refresh();
+    }
+
+    /**
+     * Brings the index up to date with the db file root. Only directories whose mtime changed since last refresh are
+     * listed again, so on unchanged tree this costs one stat per project and version directory.
+     *
+     * @return this
+     */
+    public synchronized FakeKojiDB refresh() {
+        final long start = System.nanoTime();
+        final long refreshStart = System.currentTimeMillis();
+        boolean changed = false;
+        final File root = settings.getDbFileRoot();
+        if (isModified(root)) {
+            changed = true;
+            final Map<File, Map<File, List<FakeBuild>>> oldIndex = new HashMap<>(index);
+            index.clear();
+            for (File projectDir : listDirs(root)) {
+                final Map<File, List<FakeBuild>> versions = oldIndex.get(projectDir);
+                index.put(projectDir, versions == null ? new LinkedHashMap<>() : versions);
+            }
+        }
+        for (Map.Entry<File, Map<File, List<FakeBuild>>> project : index.entrySet()) {
+            final File projectDir = project.getKey();
+            final Map<File, List<FakeBuild>> versions = project.getValue();
+            if (isModified(projectDir)) {
+                changed = true;
+                final Map<File, List<FakeBuild>> oldVersions = new HashMap<>(versions);
+                versions.clear();
+                for (File version : listDirs(projectDir)) {
+                    final List<FakeBuild> releases = oldVersions.get(version);
+                    versions.put(version, releases == null ? new ArrayList<>() : releases);
+                }
+            }
+            for (Map.Entry<File, List<FakeBuild>> version : versions.entrySet()) {
+                if (isModified(version.getKey())) {
+                    changed = true;
+                    final List<FakeBuild> releases = new ArrayList<>();
+                    for (File release : listDirs(version.getKey())) {
+                        releases.add(new FakeBuild(projectDir.getName(), version.getKey().getName(), release.getName(), release, settings.getProjectMapping()));
+                    }
+                    version.setValue(releases);
                 }
             }
+        }
+        if (changed) {
+            dirStamps.keySet().retainAll(collectIndexedDirs(root));
+            snapshot = new Snapshot(
+                    index.keySet().stream().map(File::getName).collect(Collectors.toCollection(LinkedHashSet::new)),
+                    index.values().stream()
+                            .flatMap(versions -> versions.values().stream())
+                            .flatMap(List::stream)
+                            .collect(Collectors.toList())
+            );
+        }
+        lastRefreshStart = refreshStart;
+        lastRefreshTime = System.currentTimeMillis();
+        lastRefreshLatencyNanos = System.nanoTime() - start;
+        if (changed) {
+            LOGGER.info("fake koji DB index refreshed: " + getIndexStats());
+        }
+        return this;
+    }
 
+    private Set<File> collectIndexedDirs(File root) {
+        final Set<File> dirs = new HashSet<>();
+        dirs.add(root);
+        for (Map.Entry<File, Map<File, List<FakeBuild>>> project : index.entrySet()) {
+            dirs.add(project.getKey());
+            dirs.addAll(project.getValue().keySet());
         }
+        return dirs;
+    }
 
+    /**
+     * Directory is considered modified if its mtime differs from the remembered one. As mtime has limited granularity,
+     * directories touched shortly before previous refresh are considered modified too.
+     */
+    private boolean isModified(File dir) {
+        final long stamp = dir.lastModified();
+        final Long known = dirStamps.put(dir, stamp);
+        return known == null || known != stamp || stamp >= lastRefreshStart - MTIME_GRANULARITY_MILLIS;
+    }
+
+    private static File[] listDirs(File dir) {
+        final File[] dirs = dir.listFiles(new DirFilter());
+        return dirs == null ? new File[0] : dirs;
+    }
+
+    public int getIndexSize() {
+        return snapshot.builds.size();
+    }
+
+    public long getLastRefreshLatencyMillis() {
+        return lastRefreshLatencyNanos / 1000_000;
+    }
+
+    public long getStalenessMillis() {
+        return System.currentTimeMillis() - lastRefreshTime;
+    }
+
+    public String getIndexStats() {
+        return "projects: " + snapshot.projects.size()
+                + ", builds: " + getIndexSize()
+                + ", refresh latency: " + getLastRefreshLatencyMillis() + "ms"
+                + ", staleness: " + getStalenessMillis() + "ms";
     }
 
     public Integer getPkgId(String requestedProject) {
-        StringBuilder triedProjects = new StringBuilder();
-        for (String project : projects) {
-            triedProjects.append(" ").append(project);
-            if (project.equals(requestedProject)) {
-                //is there better str->int function?
-                //indeed, the file. But number of projects is small.
-                return project.hashCode();
-            }
+        final Set<String> projects = snapshot.projects;
+        if (projects.contains(requestedProject)) {
+            //is there better str->int function?
+            //indeed, the file. But number of projects is small.
+            return requestedProject.hashCode();
         }
-        LOGGER.info("Unknown project " + requestedProject + ". Tried: " + triedProjects + ".");
+        LOGGER.info("Unknown project " + requestedProject + ". Tried: " + String.join(" ", projects) + ".");
         return null;
     }
 
     public List<Build> getProjectBuilds(Integer projectId, Set<String> fakeTags) {
         List<Build> projectBuilds = new ArrayList<>();
-        for (FakeBuild build : builds) {
-            if (build.getProjectID() == projectId && isOkForOldApi(build)) {
-                if (new IsFailedBuild(build.getDir()).reCheck().getLastResult()) {
+        for (FakeBuild build : snapshot.buildsByProject.getOrDefault(projectId, Collections.emptyList())) {
+            if (isOkForOldApi(build)) {
+                if (new IsFailedBuild(build.getDir()).check().getLastResult()) {
                     LOGGER.info("Removing build " + build.toString() + " from result. Contains FAILED records");
                     continue;
                 }
@@ -120,12 +218,7 @@ public class FakeKojiDB {
     }
 
     FakeBuild getBuildById(Integer buildId) {
-        for (FakeBuild build : builds) {
-            if (build.getBuildID() == buildId) {
-                return build;
-            }
-        }
-        return null;
+        return snapshot.buildsById.get(buildId);
     }
 
     /**
@@ -138,12 +231,11 @@ public class FakeKojiDB {
      */
 
     public Set<String> getTags(Integer buildId) {
-        for (FakeBuild build : builds) {
-            if (build.getBuildID() == buildId) {
-                return build.getTags();
-            }
+        final FakeBuild build = getBuildById(buildId);
+        if (build == null) {
+            return Collections.emptySet();
         }
-        return Collections.emptySet();
+        return build.getTags();
     }
 /*
     void checkAll() {
@@ -266,6 +358,7 @@ public class FakeKojiDB {
             LOGGER.severe(e.getMessage());
             return Collections.emptyList();
         }
+        final List<FakeBuild> builds = snapshot.builds;
         boolean debug = false;
         //use this when yoou need to decomposer the terrible streweam atthe bottom
         //issue is msotly in getBuildParser at a9
@@ -402,4 +495,28 @@ public class FakeKojiDB {
         return fb.toBuild(new HashSet<>());
     }
 
+    /**
+     * Immutable view of the index, replaced as whole on refresh, so readers never see half updated lookups.
+     */
+    private static class Snapshot {
+
+        private final Set<String> projects;
+        private final List<FakeBuild> builds;
+        private final Map<Integer, FakeBuild> buildsById;
+        private final Map<Integer, List<FakeBuild>> buildsByProject;
+
+        private Snapshot(Set<String> projects, List<FakeBuild> builds) {
+            this.projects = Collections.unmodifiableSet(projects);
+            this.builds = Collections.unmodifiableList(builds);
+            final Map<Integer, FakeBuild> byId = new HashMap<>(builds.size() * 2);
+            final Map<Integer, List<FakeBuild>> byProject = new HashMap<>();
+            for (FakeBuild build : builds) {
+                byId.putIfAbsent(build.getBuildID(), build);
+                byProject.computeIfAbsent(build.getProjectID(), id -> new ArrayList<>()).add(build);
+            }
+            this.buildsById = byId;
+            this.buildsByProject = byProject;
+        }
+    }
+
 }
@@ -32,7 +32,11 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -41,6 +45,13 @@ import java.util.logging.Logger;
 public class IsFailedBuild {
 
     private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
+    /**
+     * Fingerprint only covers the directory and its direct children, so changes deeper in the tree, done outside of
+     * the upload service, are noticed at latest after this time.
+     */
+    private static final long MAX_VERDICT_AGE_MILLIS = Long.getLong("otool.fakekoji.failedBuild.maxVerdictAgeMillis", 10 * 60 * 1000);
+    private static final int MAX_VERDICTS = Integer.getInteger("otool.fakekoji.failedBuild.maxVerdicts", 10000);
+    private static final Map<File, Verdict> VERDICTS = new ConcurrentHashMap<>();
 
     private final File dir;
     boolean lastResult = false;
@@ -62,6 +73,71 @@ public class IsFailedBuild {
         return this;
     }
 
+    /**
+     * Same as reCheck, but reuses verdict of previous check of the same directory, if the directory did not change
+     * since.
+     *
+     * @return this
+     */
+    public IsFailedBuild check() {
+        final File key = dir.getAbsoluteFile();
+        final long fingerprint = fingerprint(key);
+        final Verdict cached = VERDICTS.get(key);
+        if (cached != null
+                && cached.fingerprint == fingerprint
+                && System.currentTimeMillis() - cached.created < MAX_VERDICT_AGE_MILLIS) {
+            lastResult = cached.failed;
+            return this;
+        }
+        lastResult = false;
+        reCheck();
+        VERDICTS.put(key, new Verdict(fingerprint, lastResult));
+        if (VERDICTS.size() > MAX_VERDICTS) {
+            prune();
+        }
+        return this;
+    }
+
+    /**
+     * Drops expired verdicts, and if there are still too many of them, the oldest ones.
+     */
+    private static synchronized void prune() {
+        final long now = System.currentTimeMillis();
+        VERDICTS.values().removeIf(verdict -> now - verdict.created >= MAX_VERDICT_AGE_MILLIS);
+        final int excess = VERDICTS.size() - MAX_VERDICTS;
+        if (excess > 0) {
+            VERDICTS.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().created))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList())
+                    .forEach(VERDICTS::remove);
+        }
+    }
+
+    /**
+     * Drops cached verdicts of the file and of all directories containing it.
+     *
+     * @param file file or directory which was changed
+     */
+    public static void invalidate(File file) {
+        for (File f = file.getAbsoluteFile(); f != null; f = f.getParentFile()) {
+            VERDICTS.remove(f);
+        }
+    }
+
+    private static long fingerprint(File dir) {
+        long fingerprint = dir.lastModified();
+        final File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                fingerprint = 31 * fingerprint + child.lastModified();
+                fingerprint = 31 * fingerprint + child.length();
+            }
+        }
+        return fingerprint;
+    }
+
     private void mayBeFailedImpl() throws IOException {
         Files.walkFileTree(dir.toPath(), new FileVisitor<Path>() {
             @Override
@@ -106,4 +182,16 @@ public class IsFailedBuild {
         });
     }
 
+    private static class Verdict {
+
+        private final long fingerprint;
+        private final boolean failed;
+        private final long created = System.currentTimeMillis();
+
+        private Verdict(long fingerprint, boolean failed) {
+            this.fingerprint = fingerprint;
+            this.failed = failed;
+        }
+    }
+
 }
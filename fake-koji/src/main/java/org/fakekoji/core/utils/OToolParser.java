@@ -16,8 +16,12 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.fakekoji.jobmanager.JenkinsJobTemplateBuilder.SOURCES;
@@ -30,9 +34,17 @@ public class OToolParser {
     static final String UNKNOWN_PROJECT_NAME_ERROR = "unknown project name: ";
     static final String CHANGE_SET_OR_PROJECT_NAME_MISSING_ERROR = WRONG_FORMAT + "change set or project name missing";
 
+    private static final int PARSE_CACHE_SIZE = Integer.getInteger("otool.fakekoji.parser.cacheSize", 50_000);
+    private static OToolParser shared;
+
     private final List<JDKProject> jdkProjects;
     private final List<JDKVersion> jdkVersions;
     private final List<TaskVariant> buildVariants;
+    private final List<TaskVariant> originalBuildVariants;
+    private final PackageNameTrie packageNames;
+    private final Set<String> projectIds;
+    private final Map<String, Result<OToolBuild, String>> parsedBuilds = Collections.synchronizedMap(new LruMap<>(PARSE_CACHE_SIZE));
+    private final Map<String, Result<OToolArchive, String>> parsedArchives = Collections.synchronizedMap(new LruMap<>(PARSE_CACHE_SIZE));
 
     public OToolParser(
             List<JDKProject> jdkProjects,
@@ -41,12 +53,39 @@ public class OToolParser {
     ) {
         this.jdkVersions = jdkVersions;
         this.jdkProjects = jdkProjects;
+        this.originalBuildVariants = buildVariants;
         this.buildVariants = buildVariants.stream().sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        this.packageNames = new PackageNameTrie();
+        jdkVersions.stream()
+                .map(JDKVersion::getPackageNames)
+                .flatMap(Collection::stream)
+                .forEach(packageNames::add);
+        this.projectIds = jdkProjects.stream().map(Project::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Parser is immutable and memoizes its results, so it is shared as long as the configuration it was created
+     * from does not change.
+     *
+     * @return parser for given configuration, reused from previous call if the configuration is equal
+     */
+    public static synchronized OToolParser shared(
+            List<JDKProject> jdkProjects,
+            List<JDKVersion> jdkVersions,
+            List<TaskVariant> buildVariants
+    ) {
+        if (shared == null
+                || !shared.jdkProjects.equals(jdkProjects)
+                || !shared.jdkVersions.equals(jdkVersions)
+                || !shared.originalBuildVariants.equals(buildVariants)) {
+            shared = new OToolParser(jdkProjects, jdkVersions, buildVariants);
+        }
+        return shared;
     }
-    
+
     public static Result<OToolParser, String> create(final ConfigManager configManager) {
         try {
-            return Result.ok(new OToolParser(
+            return Result.ok(shared(
                     configManager.jdkProjectManager.readAll(),
                     configManager.jdkVersionManager.readAll(),
                     configManager.taskVariantManager.getBuildVariants()
@@ -57,15 +96,11 @@ public class OToolParser {
     }
 
     private Result<PackageNameCut, String> parsePackageName(final String nvr) {
-        return jdkVersions.stream()
-                .map(JDKVersion::getPackageNames)
-                .flatMap(Collection::stream)
-                .filter(packageName -> nvr.startsWith(packageName + '-'))
-                .min((a, b) -> b.length() - a.length())
-                .<Result<PackageNameCut, String>>map(packageName ->
-                        Result.ok(new PackageNameCut(packageName, nvr.replace(packageName + '-', "")))
-                )
-                .orElseGet(() -> Result.err(UNKNOWN_PACKAGE_NAME_ERROR));
+        final String packageName = packageNames.longestPrefixOf(nvr);
+        if (packageName == null) {
+            return Result.err(UNKNOWN_PACKAGE_NAME_ERROR);
+        }
+        return Result.ok(new PackageNameCut(packageName, nvr.replace(packageName + '-', "")));
     }
 
     private Result<ChangeSetCut, String> parseChangeSet(final PackageNameCut packageNameCut) {
@@ -90,6 +125,16 @@ public class OToolParser {
     }
 
     public Result<OToolArchive, String> parseArchive(final String nvra) {
+        final Result<OToolArchive, String> cached = parsedArchives.get(nvra);
+        if (cached != null) {
+            return cached;
+        }
+        final Result<OToolArchive, String> result = parseArchiveImpl(nvra);
+        parsedArchives.put(nvra, result);
+        return result;
+    }
+
+    private Result<OToolArchive, String> parseArchiveImpl(final String nvra) {
         return parsePackageName(nvra)
                 .flatMap(this::parseChangeSet)
                 .flatMap(this::parseArchiveTailCut)
@@ -106,6 +151,16 @@ public class OToolParser {
     }
 
     public Result<OToolBuild, String> parseBuild(final String nvr) {
+        final Result<OToolBuild, String> cached = parsedBuilds.get(nvr);
+        if (cached != null) {
+            return cached;
+        }
+        final Result<OToolBuild, String> result = parseBuildImpl(nvr);
+        parsedBuilds.put(nvr, result);
+        return result;
+    }
+
+    private Result<OToolBuild, String> parseBuildImpl(final String nvr) {
         return parsePackageName(nvr)
                 .flatMap(this::parseChangeSet)
                 .flatMap(this::parseBuildTailCut)
@@ -121,10 +176,7 @@ public class OToolParser {
     private Result<BuildTailCut, String> parseBuildTailCut(final ChangeSetCut changeSetCut) {
         final String[] tailParts = changeSetCut.tail.split("\\.");
         final int projectIndex = tailParts.length - 1;
-        final Optional<String> projectNameOpt = jdkProjects.stream()
-                .map(Project::getId)
-                .filter(name -> name.equals(tailParts[projectIndex]))
-                .findFirst();
+        final Optional<String> projectNameOpt = Optional.of(tailParts[projectIndex]).filter(projectIds::contains);
         return projectNameOpt.<Result<BuildTailCut, String>>map(projectName -> {
             final String garbage = Arrays.stream(tailParts).limit(projectIndex).collect(Collectors.joining("."));
             return Result.ok(new BuildTailCut(changeSetCut, garbage, projectName));
@@ -177,6 +229,49 @@ public class OToolParser {
         )));
     }
 
+    /**
+     * Character trie of package names. Finds the longest package name which, followed by dash, prefixes given nvr in
+     * a single pass over the nvr.
+     */
+    private static class PackageNameTrie {
+        private final Map<Character, PackageNameTrie> children = new HashMap<>();
+        private String packageName;
+
+        void add(final String name) {
+            PackageNameTrie node = this;
+            for (int i = 0; i < name.length(); i++) {
+                node = node.children.computeIfAbsent(name.charAt(i), c -> new PackageNameTrie());
+            }
+            node.packageName = name;
+        }
+
+        String longestPrefixOf(final String nvr) {
+            String longest = null;
+            PackageNameTrie node = this;
+            for (int i = 0; i < nvr.length() && node != null; i++) {
+                if (node.packageName != null && nvr.charAt(i) == '-') {
+                    longest = node.packageName;
+                }
+                node = node.children.get(nvr.charAt(i));
+            }
+            return longest;
+        }
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
     private static class PackageNameCut {
         final String packageName;
         final String tail;
@@ -97,7 +97,7 @@ public class MatrixGenerator {
         }
 
         try {
-            cache = new ConfigCache(settings.getConfigManager());
+            cache = settings.getConfigManager().getConfigCache();
         } catch (StorageException se) {
             throw new RuntimeException(se);
         }
@@ -11,14 +11,21 @@ import org.fakekoji.model.TaskVariant;
 import org.fakekoji.storage.StorageException;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Immutable snapshot of the whole configuration. Use {@link ConfigManager#getConfigCache()} to get shared, up to date
+ * instance instead of reading all the configuration files again.
+ */
 public class ConfigCache {
 
+    private final long generation;
+
     private final Map<String, BuildProvider> buildProviderMap;
     private final Map<String, JDKProject> jdkProjectMap;
     private final Map<String, JDKTestProject> jdkTestProjectMap;
@@ -30,6 +37,11 @@ public class ConfigCache {
 
 
     public ConfigCache(final ConfigManager configManager) throws StorageException {
+        this(configManager, -1);
+    }
+
+    ConfigCache(final ConfigManager configManager, final long generation) throws StorageException {
+        this.generation = generation;
         buildProviderMap = configManager.buildProviderManager
                 .readAll()
                 .stream()
@@ -66,8 +78,12 @@ public class ConfigCache {
 
     }
 
+    public long getGeneration() {
+        return generation;
+    }
+
     public Collection<BuildProvider> getBuildProviders() {
-        return buildProviderMap.values();
+        return Collections.unmodifiableCollection(buildProviderMap.values());
     }
 
     public Optional<BuildProvider> getBuildProvider(final String id) {
@@ -75,7 +91,7 @@ public class ConfigCache {
     }
 
     public Collection<JDKProject> getJdkProjects() {
-        return jdkProjectMap.values();
+        return Collections.unmodifiableCollection(jdkProjectMap.values());
     }
 
     public Optional<JDKProject> getJdkProjects(final String id) {
@@ -83,7 +99,7 @@ public class ConfigCache {
     }
 
     public Collection<JDKTestProject> getJdkTestProjects() {
-        return jdkTestProjectMap.values();
+        return Collections.unmodifiableCollection(jdkTestProjectMap.values());
     }
 
     public Optional<JDKTestProject> getJdkTestProject(final String id) {
@@ -98,7 +114,7 @@ public class ConfigCache {
     }
 
     public Collection<JDKVersion> getJdkVersions() {
-        return jdkVersionMap.values();
+        return Collections.unmodifiableCollection(jdkVersionMap.values());
     }
 
     public Optional<JDKVersion> getJdkVersion(final String id) {
@@ -106,7 +122,7 @@ public class ConfigCache {
     }
 
     public Collection<Platform> getPlatforms() {
-        return platformMap.values();
+        return Collections.unmodifiableCollection(platformMap.values());
     }
 
     public Optional<Platform> getPlatform(final String id) {
@@ -114,7 +130,7 @@ public class ConfigCache {
     }
 
     public Collection<Task> getTasks() {
-        return taskMap.values();
+        return Collections.unmodifiableCollection(taskMap.values());
     }
 
     public Optional<Task> getTask(final String id) {
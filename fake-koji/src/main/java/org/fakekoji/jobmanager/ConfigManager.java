@@ -18,13 +18,17 @@ import org.fakekoji.model.JDKVersion;
 import org.fakekoji.model.Platform;
 import org.fakekoji.model.Task;
 import org.fakekoji.model.TaskVariant;
+import org.fakekoji.storage.CachingDirectoryJsonStorage;
 import org.fakekoji.storage.DirectoryJsonStorage;
 import org.fakekoji.storage.Storage;
 import org.fakekoji.storage.StorageException;
 
+import java.io.File;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 public class ConfigManager {
     public final static String BUILD_PROVIDERS = "buildProviders";
@@ -43,22 +47,26 @@ public class ConfigManager {
     public final JDKTestProjectManager jdkTestProjectManager;
     public final TaskManager taskManager;
 
+    private static final long FINGERPRINT_CHECK_MILLIS = Long.getLong("otool.config.fingerprintCheckMillis", 0);
+    // cached configs are shared by all callers, so the cache is opt in until none of them modifies what it loaded
+    private static final boolean CACHED_STORAGE = Boolean.getBoolean("otool.config.cachedStorage");
+
+    private final List<File> storageRoots = new ArrayList<>();
+    private final List<Storage<?>> storages = new ArrayList<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile ConfigCache configCache;
+    private volatile long storageFingerprint;
+    private volatile long storageFingerprintChecked;
+
     public ConfigManager(final AccessibleSettings settings) {
         final String storagePath = settings.getConfigRoot().getAbsolutePath();
-        Storage<BuildProvider> buildProviderStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, BUILD_PROVIDERS).toFile());
-        Storage<JDKVersion> jdkVersionStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, JDK_VERSIONS).toFile());
-        Storage<TaskVariant> taskVariantStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, TASK_VARIANTS).toFile());
-        Storage<Platform> platformStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, PLATFORMS).toFile());
-        Storage<JDKProject> jdkProjectStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, JDK_PROJECTS).toFile());
-        Storage<JDKTestProject> jdkTestProjectStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, JDK_TEST_PROJECTS).toFile());
-        Storage<Task> taskStorage =
-                new DirectoryJsonStorage<>(Paths.get(storagePath, TASKS).toFile());
+        Storage<BuildProvider> buildProviderStorage = createStorage(storagePath, BUILD_PROVIDERS);
+        Storage<JDKVersion> jdkVersionStorage = createStorage(storagePath, JDK_VERSIONS);
+        Storage<TaskVariant> taskVariantStorage = createStorage(storagePath, TASK_VARIANTS);
+        Storage<Platform> platformStorage = createStorage(storagePath, PLATFORMS);
+        Storage<JDKProject> jdkProjectStorage = createStorage(storagePath, JDK_PROJECTS);
+        Storage<JDKTestProject> jdkTestProjectStorage = createStorage(storagePath, JDK_TEST_PROJECTS);
+        Storage<Task> taskStorage = createStorage(storagePath, TASKS);
 
         buildProviderManager = new BuildProviderManager(buildProviderStorage);
         jdkVersionManager = new JDKVersionManager(jdkVersionStorage);
@@ -73,7 +81,128 @@ public class ConfigManager {
         jdkTestProjectManager = new JDKTestProjectManager(jdkTestProjectStorage);
         taskManager = new TaskManager(taskStorage);
     }
-    
+
+    private <T> Storage<T> createStorage(final String storagePath, final String name) {
+        final File root = Paths.get(storagePath, name).toFile();
+        storageRoots.add(root);
+        final Storage<T> storage = CACHED_STORAGE ? new CachingDirectoryJsonStorage<>(root) : new DirectoryJsonStorage<>(root);
+        storages.add(storage);
+        return new GenerationCountingStorage<>(storage);
+    }
+
+    public List<String> getStorageStatistics() {
+        return storages.stream().map(Object::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Generation of the configuration. It is increased by every write through any of the managers, and by any change
+     * of the configuration files on disk.
+     *
+     * @return current generation
+     */
+    public long getGeneration() {
+        checkStorageFingerprint();
+        return generation.get();
+    }
+
+    /**
+     * Returns snapshot of whole configuration. The snapshot is immutable and shared by all callers until the
+     * configuration changes (see {@link #getGeneration()}), so it is cheap to call this often.
+     *
+     * @return snapshot of the configuration
+     * @throws StorageException if the configuration can not be read
+     */
+    public ConfigCache getConfigCache() throws StorageException {
+        final long currentGeneration = getGeneration();
+        final ConfigCache current = configCache;
+        if (current != null && current.getGeneration() == currentGeneration) {
+            return current;
+        }
+        synchronized (this) {
+            final long loadedGeneration = generation.get();
+            final ConfigCache latest = configCache;
+            if (latest != null && latest.getGeneration() == loadedGeneration) {
+                return latest;
+            }
+            final ConfigCache fresh = new ConfigCache(this, loadedGeneration);
+            configCache = fresh;
+            return fresh;
+        }
+    }
+
+    private void checkStorageFingerprint() {
+        // listing and stat of the config files only, which is much cheaper than parsing them. Can be throttled by
+        // otool.config.fingerprintCheckMillis if even that is too much
+        final long now = System.currentTimeMillis();
+        if (FINGERPRINT_CHECK_MILLIS > 0 && now - storageFingerprintChecked < FINGERPRINT_CHECK_MILLIS) {
+            return;
+        }
+        synchronized (storageRoots) {
+            if (FINGERPRINT_CHECK_MILLIS > 0 && now - storageFingerprintChecked < FINGERPRINT_CHECK_MILLIS) {
+                return;
+            }
+            long fingerprint = 0;
+            for (final File root : storageRoots) {
+                fingerprint = 31 * fingerprint + root.lastModified();
+                final File[] files = root.listFiles();
+                if (files != null) {
+                    for (final File file : files) {
+                        fingerprint = 31 * fingerprint + file.getName().hashCode();
+                        fingerprint = 31 * fingerprint + file.lastModified();
+                        fingerprint = 31 * fingerprint + file.length();
+                    }
+                }
+            }
+            if (fingerprint != storageFingerprint) {
+                storageFingerprint = fingerprint;
+                generation.incrementAndGet();
+            }
+            storageFingerprintChecked = now;
+        }
+    }
+
+    private class GenerationCountingStorage<T> implements Storage<T> {
+
+        private final Storage<T> storage;
+
+        private GenerationCountingStorage(final Storage<T> storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void store(String id, T t) throws StorageException {
+            try {
+                storage.store(id, t);
+            } finally {
+                generation.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void delete(String id) throws StorageException {
+            try {
+                storage.delete(id);
+            } finally {
+                generation.incrementAndGet();
+            }
+        }
+
+        @Override
+        public T load(String id, Class<T> valueType) throws StorageException {
+            return storage.load(id, valueType);
+        }
+
+        @Override
+        public List<T> loadAll(Class<T> valueType) throws StorageException {
+            return storage.loadAll(valueType);
+        }
+
+        @Override
+        public boolean contains(String id) {
+            return storage.contains(id);
+        }
+    }
+
     public Result<List<Project>, OToolError> getProjects(final List<String> projectIds) {
         final List<Project> projects = new ArrayList<>();
         try {
@@ -1,12 +1,27 @@
 package org.fakekoji.jobmanager;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Set;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.sshd.client.SshClient;
@@ -18,6 +33,7 @@ import org.apache.sshd.client.future.OpenFuture;
 import org.apache.sshd.client.session.ClientSession;
 import org.apache.sshd.common.future.CloseFuture;
 import org.apache.sshd.common.util.io.input.NoCloseInputStream;
+import org.apache.sshd.core.CoreModuleProperties;
 import org.fakekoji.core.AccessibleSettings;
 import org.fakekoji.jobmanager.views.JenkinsViewTemplateBuilder;
 import org.fakekoji.xmlrpc.server.JavaServerConstants;
@@ -33,9 +49,23 @@ public class JenkinsCliWrapper {
         originalSettings = accessibleSettings;
     }
 
+    // number of concurrently opened ssh sessions to jenkins; every session runs one command at time
+    private static final int MAX_SESSIONS = Integer.getInteger("otool.jenkins.cli.maxSessions", 4);
+    private static final long KEEP_ALIVE_SECONDS = Long.getLong("otool.jenkins.cli.keepAliveSeconds", 30);
+    // maximal number of jobs handled by one groovy script of batch operations
+    private static final int BATCH_SIZE = Integer.getInteger("otool.jenkins.cli.batchSize", 100);
+    static final String BATCH_OK = "OK ";
+    static final String BATCH_FAILED = "FAILED ";
+
     private final String host;
     private final int port;
     private final UserWithShhKey user;
+    private final Semaphore sessionPermits = new Semaphore(MAX_SESSIONS, true);
+    private final BlockingQueue<ClientSession> idleSessions = new LinkedBlockingQueue<>();
+    private final Map<String, CommandStatistics> statistics = new ConcurrentHashMap<>();
+    private SshClient sshClient;
+    // set once jenkins refused groovy script of batch operation, jobs are then handled one by one
+    private volatile boolean scriptsDenied;
 
     private static final class UserWithShhKey {
         String user = "unused_now";
@@ -161,11 +191,19 @@ public class JenkinsCliWrapper {
     }
 
     public static void setCli(JenkinsCliWrapper c) {
-        Singleton.client = c;
+        replaceCli(c);
     }
 
     public static void killCli() {
-        Singleton.client = new NoOpWrapper();
+        replaceCli(new NoOpWrapper());
+    }
+
+    private static void replaceCli(JenkinsCliWrapper c) {
+        final JenkinsCliWrapper old = Singleton.client;
+        Singleton.client = c;
+        if (old != null && old != c) {
+            old.close();
+        }
     }
 
     public static void reinitCli() {
@@ -173,7 +211,7 @@ public class JenkinsCliWrapper {
             //LOGGER.log(Level.SEVERE, "No settings set, reinit would be futile");
             throw new NullPointerException("No settings set, reinit would be futile");
         } else {
-            Singleton.client = new JenkinsCliWrapper(originalSettings.getJenkinsSshHost(), originalSettings.getJenkinsSshPort(), originalSettings.getJenkinsSshUser(), originalSettings.getJenkinsSshPathToPrivateKey());
+            replaceCli(new JenkinsCliWrapper(originalSettings.getJenkinsSshHost(), originalSettings.getJenkinsSshPort(), originalSettings.getJenkinsSshUser(), originalSettings.getJenkinsSshPathToPrivateKey()));
         }
     }
 
@@ -181,7 +219,7 @@ public class JenkinsCliWrapper {
         return syncSshExec(cmd, null);
     }
 
-    private JenkinsCliWrapper(String host, Integer port, String user, String key) {
+    JenkinsCliWrapper(String host, Integer port, String user, String key) {
         if (host == null) {
             this.host = "localhost";
         } else {
@@ -207,48 +245,207 @@ public class JenkinsCliWrapper {
             return new ClientResponse(0, "no-sout", "no-ser", null, cmd);
         }
 
+        @Override
+        Map<String, ClientResponse> syncBatchExec(BatchAction action, Map<String, String> jobs) {
+            final Map<String, ClientResponse> results = new LinkedHashMap<>();
+            for (String job : jobs.keySet()) {
+                results.put(job, new ClientResponse(0, "no-sout", "no-ser", null, action.describe(job)));
+            }
+            return results;
+        }
+
     }
 
 
 
     ClientResponse syncSshExec(String cmd, InputStream is) throws IOException, InterruptedException {
         LOGGER.log(Level.FINE, toString(cmd));
-        try (SshClient client = SshClient.setUpDefaultClient()) {
-            client.start();
-            HostConfigEntry hce = new HostConfigEntry(".*", host, port, user.user);
-            if (user.pathToKey != null) {
-                hce.addIdentity(user.pathToKey);
+        final long started = System.nanoTime();
+        boolean ok = false;
+        sessionPermits.acquire();
+        try {
+            ClientResponse r;
+            try {
+                r = execOnPooledSession(cmd, is);
+            } catch (BrokenSessionException ex) {
+                // nothing was sent yet, so it is safe to try once more on fresh connection; other idle sessions are
+                // most likely broken the same way (e.g. jenkins restarted), so they are dropped, not tried one by one
+                LOGGER.log(Level.INFO, "Ssh session to " + host + ":" + port + " is broken, reconnecting: " + ex.getMessage());
+                closeIdleSessions();
+                r = execOnPooledSession(cmd, is);
             }
-            ConnectFuture cu = client.connect(hce);
-            cu.await();
-            try (ClientSession session = cu.getSession()) {
-                session.auth().verify();
-
-                try (ChannelExec channel = session.createExecChannel(cmd)) {
-                    if (is == null) {
-                        channel.setIn(new NoCloseInputStream(System.in));
-                    } else {
-                        channel.setIn(is);
-                    }
-                    ByteArrayOutputStream boos = new ByteArrayOutputStream();
-                    channel.setOut(boos);
-                    ByteArrayOutputStream boes = new ByteArrayOutputStream();
-                    channel.setErr(boes);
-                    OpenFuture of = channel.open();
-                    of.await();
-                    Throwable ex = of.getException();
-                    Set<ClientChannelEvent> r = channel.waitFor(Arrays.asList(ClientChannelEvent.CLOSED), -1);
-                    String so = new String(boos.toByteArray(), "utf8");
-                    String se = new String(boes.toByteArray(), "utf8");
-                    Integer res = channel.getExitStatus();
-                    return new ClientResponse(res, so, se, ex, cmd);
-                } finally {
-                    CloseFuture fc = session.close(false);
-                    fc.await();
+            ok = r.sshEngineExeption == null && r.remoteCommandreturnValue == 0;
+            return r;
+        } finally {
+            sessionPermits.release();
+            final long tookMillis = (System.nanoTime() - started) / 1000000;
+            statistics.computeIfAbsent(getVerb(cmd), k -> new CommandStatistics()).record(tookMillis, ok);
+            LOGGER.log(Level.FINE, cmd + " took " + tookMillis + "ms");
+        }
+    }
+
+    private ClientResponse execOnPooledSession(String cmd, InputStream is) throws IOException {
+        final ClientSession session = borrowSession();
+        boolean reusable = false;
+        try {
+            try (ChannelExec channel = createExecChannel(session, cmd)) {
+                if (is == null) {
+                    channel.setIn(new NoCloseInputStream(System.in));
+                } else {
+                    channel.setIn(is);
                 }
-            } finally {
-                client.stop();
+                ByteArrayOutputStream boos = new ByteArrayOutputStream();
+                channel.setOut(boos);
+                ByteArrayOutputStream boes = new ByteArrayOutputStream();
+                channel.setErr(boes);
+                final OpenFuture of;
+                try {
+                    of = channel.open();
+                } catch (IOException ex) {
+                    throw new BrokenSessionException(ex);
+                }
+                of.await();
+                Throwable ex = of.getException();
+                if (ex != null && !isUsable(session)) {
+                    throw new BrokenSessionException(ex);
+                }
+                channel.waitFor(Arrays.asList(ClientChannelEvent.CLOSED), -1);
+                String so = new String(boos.toByteArray(), "utf8");
+                String se = new String(boes.toByteArray(), "utf8");
+                Integer res = channel.getExitStatus();
+                reusable = isUsable(session);
+                return new ClientResponse(res, so, se, ex, cmd);
+            }
+        } finally {
+            if (reusable) {
+                idleSessions.offer(session);
+            } else {
+                closeQuietly(session);
+            }
+        }
+    }
+
+    private static ChannelExec createExecChannel(ClientSession session, String cmd) throws IOException {
+        try {
+            return session.createExecChannel(cmd);
+        } catch (IOException ex) {
+            throw new BrokenSessionException(ex);
+        }
+    }
+
+    private ClientSession borrowSession() throws IOException {
+        ClientSession session;
+        while ((session = idleSessions.poll()) != null) {
+            if (isUsable(session)) {
+                return session;
+            }
+            closeQuietly(session);
+        }
+        return connect();
+    }
+
+    private ClientSession connect() throws IOException {
+        HostConfigEntry hce = new HostConfigEntry(".*", host, port, user.user);
+        if (user.pathToKey != null) {
+            hce.addIdentity(user.pathToKey);
+        }
+        ConnectFuture cu = getSshClient().connect(hce);
+        cu.await();
+        ClientSession session = cu.getSession();
+        if (session == null) {
+            throw new IOException("Unable to connect to " + host + ":" + port, cu.getException());
+        }
+        try {
+            session.auth().verify();
+        } catch (IOException ex) {
+            closeQuietly(session);
+            throw ex;
+        }
+        return session;
+    }
+
+    private synchronized SshClient getSshClient() {
+        if (sshClient == null) {
+            sshClient = SshClient.setUpDefaultClient();
+            // keeps idle pooled sessions from being dropped by firewalls and the server
+            CoreModuleProperties.HEARTBEAT_INTERVAL.set(sshClient, Duration.ofSeconds(KEEP_ALIVE_SECONDS));
+            sshClient.start();
+        }
+        return sshClient;
+    }
+
+    private static boolean isUsable(ClientSession session) {
+        return session.isOpen() && !session.isClosing();
+    }
+
+    private static void closeQuietly(ClientSession session) {
+        try {
+            CloseFuture fc = session.close(false);
+            fc.await();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Closing of ssh session failed", ex);
+        }
+    }
+
+    private static String getVerb(String cmd) {
+        final int space = cmd.indexOf(' ');
+        return space < 0 ? cmd : cmd.substring(0, space);
+    }
+
+    private void closeIdleSessions() {
+        ClientSession session;
+        while ((session = idleSessions.poll()) != null) {
+            closeQuietly(session);
+        }
+    }
+
+    /**
+     * Closes all pooled sessions and stops the ssh client. Wrapper can still be used afterwards, it will connect again.
+     */
+    public synchronized void close() {
+        closeIdleSessions();
+        if (sshClient != null) {
+            sshClient.stop();
+            sshClient = null;
+        }
+    }
+
+    /**
+     * @return count, failures (ssh errors and non zero exit statuses), average and maximal latency of every command
+     * executed by this wrapper
+     */
+    public List<String> getCommandStatistics() {
+        final List<String> lines = new ArrayList<>(statistics.size());
+        for (Map.Entry<String, CommandStatistics> e : new TreeMap<>(statistics).entrySet()) {
+            lines.add(e.getKey() + ": " + e.getValue());
+        }
+        return lines;
+    }
+
+    private static final class CommandStatistics {
+        private long count;
+        private long failures;
+        private long totalMillis;
+        private long maxMillis;
+
+        private synchronized void record(long tookMillis, boolean ok) {
+            count++;
+            if (!ok) {
+                failures++;
             }
+            totalMillis += tookMillis;
+            maxMillis = Math.max(maxMillis, tookMillis);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count: " + count + ", failures: " + failures + ", avg: " + (count == 0 ? 0 : totalMillis / count) + "ms, max: " + maxMillis + "ms";
+        }
+    }
+
+    private static final class BrokenSessionException extends IOException {
+        private BrokenSessionException(Throwable cause) {
+            super(cause);
         }
     }
 
@@ -443,6 +640,245 @@ public class JenkinsCliWrapper {
         }
     }
 
+    /**
+     * Batch variant of {@link #createManuallyUploadedJob(File, String)}. All jobs are created by one groovy script
+     * per {@link #BATCH_SIZE} jobs.
+     *
+     * @return response of every job, in order of given names
+     */
+    public Map<String, ClientResponse> createManuallyUploadedJobs(File dirWithJobs, Collection<String> names) {
+        return batchExecWithConfigs(BatchAction.CREATE, dirWithJobs, names);
+    }
+
+    /**
+     * Batch variant of {@link #updateManuallyUpdatedJob(File, String)}.
+     *
+     * @return response of every job, in order of given names
+     */
+    public Map<String, ClientResponse> updateManuallyUpdatedJobs(File dirWithJobs, Collection<String> names) {
+        return batchExecWithConfigs(BatchAction.UPDATE, dirWithJobs, names);
+    }
+
+    /**
+     * Unlike {@link #deleteJobs(String...)}, reports result of every single job.
+     *
+     * @return response of every job, in order of given names
+     */
+    public Map<String, ClientResponse> deleteJobs(Collection<String> names) {
+        return batchExec(BatchAction.DELETE, withoutConfigs(names));
+    }
+
+    public Map<String, ClientResponse> reloadJobs(Collection<String> names) {
+        return batchExec(BatchAction.RELOAD, withoutConfigs(names));
+    }
+
+    public Map<String, ClientResponse> enableJobs(Collection<String> names) {
+        return batchExec(BatchAction.ENABLE, withoutConfigs(names));
+    }
+
+    public Map<String, ClientResponse> disableJobs(Collection<String> names) {
+        return batchExec(BatchAction.DISABLE, withoutConfigs(names));
+    }
+
+    public Map<String, ClientResponse> scheduleBuilds(Collection<String> names) {
+        return batchExec(BatchAction.SCHEDULE, withoutConfigs(names));
+    }
+
+    private Map<String, ClientResponse> batchExecWithConfigs(BatchAction action, File dirWithJobs, Collection<String> names) {
+        final Map<String, ClientResponse> unreadable = new LinkedHashMap<>();
+        final Map<String, String> jobs = new LinkedHashMap<>();
+        for (String name : names) {
+            final File config = new File(new File(dirWithJobs, name), JenkinsJobUpdater.JENKINS_JOB_CONFIG_FILE);
+            try {
+                jobs.put(name, Base64.getEncoder().encodeToString(Files.readAllBytes(config.toPath())));
+            } catch (IOException ex) {
+                unreadable.put(name, new ClientResponse(-1, "", "", ex, action.describe(name)));
+            }
+        }
+        final Map<String, ClientResponse> executed = batchExec(action, jobs);
+        final Map<String, ClientResponse> results = new LinkedHashMap<>();
+        for (String name : names) {
+            results.put(name, unreadable.containsKey(name) ? unreadable.get(name) : executed.get(name));
+        }
+        return results;
+    }
+
+    private static Map<String, String> withoutConfigs(Collection<String> names) {
+        final Map<String, String> jobs = new LinkedHashMap<>();
+        for (String name : names) {
+            jobs.put(name, "");
+        }
+        return jobs;
+    }
+
+    private Map<String, ClientResponse> batchExec(BatchAction action, Map<String, String> jobs) {
+        final Map<String, ClientResponse> results = new LinkedHashMap<>();
+        final Map<String, String> chunk = new LinkedHashMap<>();
+        for (Map.Entry<String, String> job : jobs.entrySet()) {
+            chunk.put(job.getKey(), job.getValue());
+            if (chunk.size() >= BATCH_SIZE) {
+                results.putAll(syncBatchExec(action, chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.putAll(syncBatchExec(action, chunk));
+        }
+        return results;
+    }
+
+    /**
+     * Sends one groovy script doing the action on all jobs and splits its output to responses of single jobs. If the
+     * script itself fails, every job gets the response of the script. Running scripts needs Overall/RunScripts
+     * permission, if the user does not have it, the jobs are handled by single commands, as before batching.
+     *
+     * @param jobs job names mapped to base64 encoded configs, or empty strings if action does not need config
+     */
+    Map<String, ClientResponse> syncBatchExec(BatchAction action, Map<String, String> jobs) {
+        if (scriptsDenied) {
+            return singleExec(action, jobs);
+        }
+        final String cmd = "groovy =";
+        final Map<String, ClientResponse> results = new LinkedHashMap<>();
+        ClientResponse whole;
+        try {
+            whole = syncSshExec(cmd, new ByteArrayInputStream(action.createScript(jobs).getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException | InterruptedException ex) {
+            whole = new ClientResponse(-1, "", "", ex, cmd);
+        }
+        if (!whole.simpleVerdict() && isScriptDenied(whole)) {
+            LOGGER.log(Level.WARNING, "User " + user.user + " can not run groovy scripts on " + host + ", jobs will be handled one by one");
+            scriptsDenied = true;
+            return singleExec(action, jobs);
+        }
+        if (!whole.simpleVerdict()) {
+            for (String job : jobs.keySet()) {
+                results.put(job, whole);
+            }
+            return results;
+        }
+        // results are reported under base64 encoded names, as names may contain spaces
+        final Map<String, String> lines = new HashMap<>();
+        for (String line : whole.sout.split("\\r?\\n")) {
+            final String prefix = line.startsWith(BATCH_OK) ? BATCH_OK : line.startsWith(BATCH_FAILED) ? BATCH_FAILED : null;
+            if (prefix != null) {
+                final String rest = line.substring(prefix.length());
+                final int space = rest.indexOf(' ');
+                lines.put(space < 0 ? rest : rest.substring(0, space), line);
+            }
+        }
+        for (String job : jobs.keySet()) {
+            final String line = lines.get(BatchAction.encode(job));
+            if (line == null) {
+                results.put(job, new ClientResponse(-1, whole.sout, "no result reported for " + job, null, action.describe(job)));
+            } else if (line.startsWith(BATCH_OK)) {
+                results.put(job, new ClientResponse(0, line, "", null, action.describe(job)));
+            } else {
+                results.put(job, new ClientResponse(1, "", line, null, action.describe(job)));
+            }
+        }
+        return results;
+    }
+
+    private static boolean isScriptDenied(ClientResponseBase response) {
+        return String.valueOf(response.serr).contains("RunScripts") || String.valueOf(response.sout).contains("RunScripts");
+    }
+
+    private Map<String, ClientResponse> singleExec(BatchAction action, Map<String, String> jobs) {
+        final Map<String, ClientResponse> results = new LinkedHashMap<>();
+        for (Map.Entry<String, String> job : jobs.entrySet()) {
+            final String name = job.getKey();
+            switch (action) {
+                case CREATE:
+                    results.put(name, createJob(name, new ByteArrayInputStream(Base64.getDecoder().decode(job.getValue()))));
+                    break;
+                case UPDATE:
+                    results.put(name, updateJob(name, new ByteArrayInputStream(Base64.getDecoder().decode(job.getValue()))));
+                    break;
+                case DELETE:
+                    results.put(name, deleteJobs(name));
+                    break;
+                case RELOAD:
+                    results.put(name, reloadJob(name));
+                    break;
+                case ENABLE:
+                    results.put(name, enableJob(name));
+                    break;
+                case DISABLE:
+                    results.put(name, disableJob(name));
+                    break;
+                case SCHEDULE:
+                    results.put(name, scheduleBuild(name));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown action " + action);
+            }
+        }
+        return results;
+    }
+
+    enum BatchAction {
+        CREATE("create-job", "instance.createProjectFromXML(name, new ByteArrayInputStream(job[1].join('').decodeBase64()))"),
+        UPDATE("update-job", "item(instance, name).updateByXml(new StreamSource(new ByteArrayInputStream(job[1].join('').decodeBase64())))"),
+        DELETE("delete-job", "item(instance, name).delete()"),
+        RELOAD("reload-job", "item(instance, name).doReload()"),
+        ENABLE("enable-job", "item(instance, name).enable()"),
+        DISABLE("disable-job", "item(instance, name).disable()"),
+        SCHEDULE("build", "if (!item(instance, name).scheduleBuild(0, new hudson.model.Cause.UserIdCause())) { throw new IllegalStateException('not scheduled') }");
+
+        // groovy, as java, can't compile longer string constants
+        static final int MAX_LITERAL = 30000;
+
+        private final String command;
+        private final String statement;
+
+        BatchAction(String command, String statement) {
+            this.command = command;
+            this.statement = statement;
+        }
+
+        String describe(String job) {
+            return "groovy = (" + command + " " + job + ")";
+        }
+
+        String createScript(Map<String, String> jobs) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("import javax.xml.transform.stream.StreamSource\n");
+            sb.append("import jenkins.model.Jenkins\n");
+            sb.append("def item(instance, name) {\n");
+            sb.append("  def i = instance.getItemByFullName(name)\n");
+            sb.append("  if (i == null) { throw new IllegalArgumentException('No such job ' + name) }\n");
+            sb.append("  return i\n");
+            sb.append("}\n");
+            sb.append("def instance = Jenkins.get()\n");
+            sb.append("def jobs = [\n");
+            for (Map.Entry<String, String> job : jobs.entrySet()) {
+                // names are encoded as well, so no quoting is needed
+                sb.append("  ['").append(encode(job.getKey())).append("', [");
+                final String config = job.getValue();
+                for (int i = 0; i < config.length(); i += MAX_LITERAL) {
+                    sb.append(i == 0 ? "'" : ", '").append(config, i, Math.min(config.length(), i + MAX_LITERAL)).append("'");
+                }
+                sb.append("]],\n");
+            }
+            sb.append("]\n");
+            sb.append("jobs.each { job ->\n");
+            sb.append("  def name = new String(job[0].decodeBase64(), 'UTF-8')\n");
+            sb.append("  try {\n");
+            sb.append("    ").append(statement).append("\n");
+            sb.append("    println '").append(BATCH_OK).append("' + job[0]\n");
+            sb.append("  } catch (Throwable t) {\n");
+            sb.append("    println '").append(BATCH_FAILED).append("' + job[0] + ' ' + t\n");
+            sb.append("  }\n");
+            sb.append("}\n");
+            return sb.toString();
+        }
+
+        static String encode(String name) {
+            return Base64.getEncoder().encodeToString(name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     public ClientResponse createView(JenkinsViewTemplateBuilder j) {
         String cmd = "create-view";
         try {
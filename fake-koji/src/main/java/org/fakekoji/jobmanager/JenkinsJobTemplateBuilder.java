@@ -28,15 +28,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class JenkinsJobTemplateBuilder {
@@ -456,14 +457,20 @@ public class JenkinsJobTemplateBuilder {
         }
     }
 
-    private static  Map<JenkinsTemplate,String> viewCache = new HashMap<>();
+    // templates are generated by several threads of JobUpdatePipeline at once
+    private static final Map<JenkinsTemplate, String> viewCache = new ConcurrentHashMap<>();
     public static String loadTemplate(JenkinsTemplate jenkinsTemplate) throws IOException {
-        String o = viewCache.get(jenkinsTemplate);
-        if (o == null){
-         o =  Utils.readResource(jenkinsTemplate.getValue());
-         viewCache.put(jenkinsTemplate, o);
+        try {
+            return viewCache.computeIfAbsent(jenkinsTemplate, template -> {
+                try {
+                    return Utils.readResource(template.getValue());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
         }
-        return o;
     }
 
     public enum JenkinsTemplate {
@@ -20,12 +20,16 @@ import org.fakekoji.xmlrpc.server.JavaServerConstants;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -41,6 +45,10 @@ public class JenkinsJobUpdater implements JobUpdater {
 
     private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
     public static final String JENKINS_JOB_CONFIG_FILE = "config.xml";
+    // number of jobs whose templates are generated and whose jenkins cli calls run concurrently; 1 updates jobs one by one
+    private static final int PARALLELISM = Integer.getInteger("otool.jobUpdater.parallelism", 4);
+    // number of jobs published to jenkins by one cli call
+    private static final int BATCH_SIZE = Integer.getInteger("otool.jobUpdater.batchSize", 50);
 
     private final ConfigManager configManager;
     private final JDKProjectParser jdkProjectParser;
@@ -60,6 +68,13 @@ public class JenkinsJobUpdater implements JobUpdater {
         this.jenkinsJobArchiveRoot = jenkinsJobArchiveRoot;
     }
 
+    private final JobUpdatePipeline.Publisher createPublisher = jobNames ->
+            toFailures(JenkinsCliWrapper.getCli().createManuallyUploadedJobs(jenkinsJobsRoot, jobNames));
+    private final JobUpdatePipeline.Publisher updatePublisher = jobNames ->
+            toFailures(JenkinsCliWrapper.getCli().updateManuallyUpdatedJobs(jenkinsJobsRoot, jobNames));
+    private final JobUpdatePipeline.Publisher deletePublisher = jobNames ->
+            toFailures(JenkinsCliWrapper.getCli().deleteJobs(jobNames));
+
     @Override
     public JobUpdateResults regenerate(Project project, String allowlist) throws StorageException, ManagementException {
         final Set<Job> jobs = project == null ? Collections.emptySet() : jdkProjectParser.parse(project);
@@ -84,7 +99,7 @@ public class JenkinsJobUpdater implements JobUpdater {
                         ||
                         ((job instanceof TestJob) && ((TestJob) job).getBuildPlatform().getId().equals(platform.getId()))
         );
-        final List<JobUpdateResult> jobsRewritten = update(platformJobPredicate, jobUpdateFunctionWrapper(getRewriteFunction()));
+        final List<JobUpdateResult> jobsRewritten = update(platformJobPredicate, this::getRewriteStep);
         return new JobUpdateResults(
                 Collections.emptyList(),
                 Collections.emptyList(),
@@ -98,7 +113,7 @@ public class JenkinsJobUpdater implements JobUpdater {
         wakeUpJenkins();
         final Predicate<Job> taskJobPredicate = job ->
                 job instanceof TaskJob && ((TaskJob) job).getTask().getId().equals(task.getId());
-        final List<JobUpdateResult> jobsRewritten = update(taskJobPredicate, jobUpdateFunctionWrapper(getRewriteFunction()));
+        final List<JobUpdateResult> jobsRewritten = update(taskJobPredicate, this::getRewriteStep);
         return new JobUpdateResults(
                 Collections.emptyList(),
                 Collections.emptyList(),
@@ -118,7 +133,7 @@ public class JenkinsJobUpdater implements JobUpdater {
 
     private List<JobUpdateResult> update(
             final Predicate<Job> jobPredicate,
-            final Function<Job, JobUpdateResult> jobUpdateFunction
+            final Function<Job, JobUpdatePipeline.Step> jobUpdateStep
     ) throws StorageException {
 
         final Set<Job> jobs = Stream.of(
@@ -137,10 +152,10 @@ public class JenkinsJobUpdater implements JobUpdater {
                 .flatMap(Collection::stream)
                 .collect(Collectors.toSet());
 
-        return jobs.stream()
+        return runPipeline("Rewriting jobs", jobs.stream()
                 .filter(jobPredicate)
-                .map(jobUpdateFunction)
-                .collect(Collectors.toList());
+                .map(jobUpdateStep)
+                .collect(Collectors.toList()));
     }
 
     /**
@@ -156,13 +171,10 @@ public class JenkinsJobUpdater implements JobUpdater {
             allowlist = ".*";
         }
         Pattern allowlistPattern = Pattern.compile(allowlist);
-        final Function<Job, JobUpdateResult> rewriteFunction = jobUpdateFunctionWrapper(getRewriteFunction());
-        final Function<Job, JobUpdateResult> createFunction = jobUpdateFunctionWrapper(getCreateFunction());
-        final Function<Job, JobUpdateResult> reviveFunction = jobUpdateFunctionWrapper(getReviveFunction());
 
-        final List<JobUpdateResult> jobsCreated = new LinkedList<>();
-        final List<JobUpdateResult> jobsRewritten = new LinkedList<>();
-        final List<JobUpdateResult> jobsRevived = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsCreated = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsRewritten = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsRevived = new LinkedList<>();
 
         final Set<String> archivedJobs = new HashSet<>(Arrays.asList(Objects.requireNonNull(jenkinsJobArchiveRoot.list())));
         final Set<String> existingJobs = new HashSet<>(Arrays.asList(Objects.requireNonNull(jenkinsJobsRoot.list())));
@@ -173,22 +185,17 @@ public class JenkinsJobUpdater implements JobUpdater {
             }
             if (archivedJobs.contains(job.toString()) && existingJobs.contains(job.toString())) {
                 ///very wierd!
-                jobsRewritten.add(rewriteFunction.apply(job));
+                jobsRewritten.add(getRewriteStep(job));
             } else if (archivedJobs.contains(job.toString())) {
-                jobsRevived.add(reviveFunction.apply(job));
+                jobsRevived.add(getReviveStep(job));
             } else if (existingJobs.contains(job.toString())) {
-                jobsRewritten.add(rewriteFunction.apply(job));
+                jobsRewritten.add(getRewriteStep(job));
             } else {
-                jobsCreated.add(createFunction.apply(job));
+                jobsCreated.add(getCreateStep(job));
             }
         }
 
-        return new JobUpdateResults(
-                jobsCreated,
-                new LinkedList<JobUpdateResult>(),
-                jobsRewritten,
-                jobsRevived
-        );
+        return runPipeline("Regenerating jobs", jobsCreated, new LinkedList<>(), jobsRewritten, jobsRevived);
     }
 
     /**
@@ -201,30 +208,25 @@ public class JenkinsJobUpdater implements JobUpdater {
             Manager<T> projectManager,
             String allowlist
     ) throws StorageException, ManagementException {
-        JobUpdateResults sum = new JobUpdateResults();
         JenkinsJobUpdater.wakeUpJenkins();
         final List<T> projects = projectManager.readAll();
+        // jobs of all projects go through one pipeline, so the workers are not drained between projects
+        final Set<Job> jobs = new LinkedHashSet<>();
         for (final Project project : projects) {
             if (projectId == null || project.getId().equals(projectId)) {
-                JobUpdateResults r = regenerate(project, allowlist);
-                sum = sum.add(r);
+                jobs.addAll(jdkProjectParser.parse(project));
             }
 
         }
-        return sum;
+        return regenerate(jobs, allowlist);
     }
 
     JobUpdateResults update(Set<Job> oldJobs, Set<Job> newJobs) {
 
-        final Function<Job, JobUpdateResult> rewriteFunction = jobUpdateFunctionWrapper(getRewriteFunction());
-        final Function<Job, JobUpdateResult> createFunction = jobUpdateFunctionWrapper(getCreateFunction());
-        final Function<Job, JobUpdateResult> archiveFunction = jobUpdateFunctionWrapper(getArchiveFunction());
-        final Function<Job, JobUpdateResult> reviveFunction = jobUpdateFunctionWrapper(getReviveFunction());
-
-        final List<JobUpdateResult> jobsCreated = new LinkedList<>();
-        final List<JobUpdateResult> jobsArchived = new LinkedList<>();
-        final List<JobUpdateResult> jobsRewritten = new LinkedList<>();
-        final List<JobUpdateResult> jobsRevived = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsCreated = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsArchived = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsRewritten = new LinkedList<>();
+        final List<JobUpdatePipeline.Step> jobsRevived = new LinkedList<>();
 
         final Set<String> archivedJobs = new HashSet<>(Arrays.asList(Objects.requireNonNull(jenkinsJobArchiveRoot.list())));
 
@@ -232,12 +234,12 @@ public class JenkinsJobUpdater implements JobUpdater {
 
         for (final Job job : oldJobs) {
             if (newJobs.stream().noneMatch(newJob -> job.toString().equals(newJob.toString()))) {
-                jobsArchived.add(archiveFunction.apply(job));
+                jobsArchived.add(getArchiveStep(job));
             }
         }
         for (final Job job : newJobs) {
             if (archivedJobs.contains(job.toString())) {
-                jobsRevived.add(reviveFunction.apply(job));
+                jobsRevived.add(getReviveStep(job));
                 continue;
             }
             final Optional<Job> optional = oldJobs.stream()
@@ -246,25 +248,56 @@ public class JenkinsJobUpdater implements JobUpdater {
             if (optional.isPresent()) {
                 final Job oldJob = optional.get();
                 if (!oldJob.equals(job)) {
-                    jobsRewritten.add(rewriteFunction.apply(job));
+                    jobsRewritten.add(getRewriteStep(job));
                 }
                 continue;
             }
-            jobsCreated.add(createFunction.apply(job));
+            jobsCreated.add(getCreateStep(job));
         }
+        return runPipeline("Updating jobs", jobsCreated, jobsArchived, jobsRewritten, jobsRevived);
+    }
+
+    private JobUpdateResults runPipeline(
+            final String description,
+            final List<JobUpdatePipeline.Step> jobsCreated,
+            final List<JobUpdatePipeline.Step> jobsArchived,
+            final List<JobUpdatePipeline.Step> jobsRewritten,
+            final List<JobUpdatePipeline.Step> jobsRevived
+    ) {
+        // archivation goes first, as in sequential update, so revived jobs can't collide with jobs being archived
+        final List<JobUpdateResult> archived = runPipeline(description + " (archive)", jobsArchived);
+        final List<JobUpdatePipeline.Step> rest = new ArrayList<>(jobsCreated.size() + jobsRewritten.size() + jobsRevived.size());
+        rest.addAll(jobsCreated);
+        rest.addAll(jobsRewritten);
+        rest.addAll(jobsRevived);
+        final List<JobUpdateResult> results = runPipeline(description, rest);
+        final int rewrittenStart = jobsCreated.size();
+        final int revivedStart = rewrittenStart + jobsRewritten.size();
         return new JobUpdateResults(
-                jobsCreated,
-                jobsArchived,
-                jobsRewritten,
-                jobsRevived
+                new LinkedList<>(results.subList(0, rewrittenStart)),
+                archived,
+                new LinkedList<>(results.subList(rewrittenStart, revivedStart)),
+                new LinkedList<>(results.subList(revivedStart, results.size()))
         );
     }
 
+    private List<JobUpdateResult> runPipeline(final String description, final List<JobUpdatePipeline.Step> steps) {
+        return new JobUpdatePipeline(PARALLELISM, BATCH_SIZE).run(description, steps);
+    }
+
     public JobUpdateResults bump(final Set<JobBump> jobBumps, final JobCollisionAction action) {
+        final Function<JobBump, PlannedBump> planFunction = jobBump -> {
+            try {
+                return planBump(jobBump, action);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, e.getMessage(), e);
+                return new PlannedBump(new JobUpdateResult(jobToString(jobBump), false, e.getMessage()));
+            }
+        };
         return new JobUpdateResults(
-                jobBumps.stream()
-                        .map(jobUpdateFunctionWrapper(getBumpFunction(action)))
-                        .collect(Collectors.toList()),
+                finishBumps(jobBumps.stream()
+                        .map(planFunction)
+                        .collect(Collectors.toList())),
                 Collections.emptyList(),
                 Collections.emptyList(),
                 Collections.emptyList()
@@ -285,17 +318,6 @@ public class JenkinsJobUpdater implements JobUpdater {
         return tuple -> new JobBump(tuple.x, tuple.y, jobNames.contains(tuple.y.getName()));
     }
 
-    private <T> Function<T, JobUpdateResult> jobUpdateFunctionWrapper(JobUpdateFunction<T> updateFunction) {
-        return job -> {
-            try {
-                return updateFunction.apply(job);
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, e.getMessage(), e);
-                return new JobUpdateResult(jobToString(job), false, e.getMessage());
-            }
-        };
-    }
-
     private <T> String jobToString(T job) {
         if (job instanceof Job) {
             return ((Job) job).getName();
@@ -306,124 +328,162 @@ public class JenkinsJobUpdater implements JobUpdater {
         }
     }
 
-    private JobUpdateFunction<Job> getCreateFunction() {
-        return job -> {
-            final String jobName = job.toString();
-            LOGGER.info("Creating job " + jobName);
-            final String jobsRootPath = jenkinsJobsRoot.getAbsolutePath();
-            LOGGER.info("Creating directory " + jobName + " in " + jobsRootPath);
-            final File jobDir = Paths.get(jobsRootPath, jobName).toFile();
-            if (!jobDir.mkdir()) {
-                throw new IOException("Could't create file: " + jobDir.getAbsolutePath());
-            }
-            final String jobDirPath = jobDir.getAbsolutePath();
-            LOGGER.info("Creating file " + JENKINS_JOB_CONFIG_FILE + " in " + jobDirPath);
-            return new PrimaryExceptionThrower<JobUpdateResult>(
-                    () -> {
-                        Utils.writeToFile(
-                                Paths.get(jobDirPath, JENKINS_JOB_CONFIG_FILE),
-                                job.generateTemplate()
-                        );
-                    }, () -> {
-                createManuallyUploadedJob(jobName);
-            }, new JobUpdateResult(jobName, true)).call();
-        };
+    private JobUpdatePipeline.Step getCreateStep(final Job job) {
+        final String jobName = job.toString();
+        final String jobsRootPath = jenkinsJobsRoot.getAbsolutePath();
+        final File jobDir = Paths.get(jobsRootPath, jobName).toFile();
+        return new JobUpdatePipeline.Step(
+                jobName,
+                () -> {
+                    LOGGER.info("Creating job " + jobName);
+                    LOGGER.info("Creating directory " + jobName + " in " + jobsRootPath);
+                    if (!jobDir.mkdir()) {
+                        throw new IOException("Could't create file: " + jobDir.getAbsolutePath());
+                    }
+                },
+                job::generateTemplate,
+                template -> {
+                    final String jobDirPath = jobDir.getAbsolutePath();
+                    LOGGER.info("Creating file " + JENKINS_JOB_CONFIG_FILE + " in " + jobDirPath);
+                    Utils.writeToFile(
+                            Paths.get(jobDirPath, JENKINS_JOB_CONFIG_FILE),
+                            template.generate()
+                    );
+                },
+                createPublisher
+        );
     }
 
-    private JobUpdateFunction<Job> getReviveFunction() {
-        return job -> {
-            final String jobName = job.toString();
-            final File src = Paths.get(jenkinsJobArchiveRoot.getAbsolutePath(), job.toString()).toFile();
-            final File dst = Paths.get(jenkinsJobsRoot.getAbsolutePath(), job.toString()).toFile();
-            LOGGER.info("Reviving job " + jobName);
-            LOGGER.info("Moving directory " + src.getAbsolutePath() + " to " + dst.getAbsolutePath());
-            return new PrimaryExceptionThrower<JobUpdateResult>(
-                    () -> {
-                        Utils.moveDirByConfig(src, dst);
-                        //regenerate conig
-                        LOGGER.info("recreating file " + JENKINS_JOB_CONFIG_FILE + " in " + dst);
-                        Utils.writeToFile(
-                                Paths.get(dst.getAbsolutePath(), JENKINS_JOB_CONFIG_FILE),
-                                job.generateTemplate());
-                    }, () -> {
-                createManuallyUploadedJob(jobName);
-            }, new JobUpdateResult(jobName, true)).call();
-        };
+    private JobUpdatePipeline.Step getReviveStep(final Job job) {
+        final String jobName = job.toString();
+        final File src = Paths.get(jenkinsJobArchiveRoot.getAbsolutePath(), job.toString()).toFile();
+        final File dst = Paths.get(jenkinsJobsRoot.getAbsolutePath(), job.toString()).toFile();
+        return new JobUpdatePipeline.Step(
+                jobName,
+                null,
+                job::generateTemplate,
+                template -> {
+                    LOGGER.info("Reviving job " + jobName);
+                    LOGGER.info("Moving directory " + src.getAbsolutePath() + " to " + dst.getAbsolutePath());
+                    Utils.moveDirByConfig(src, dst);
+                    //regenerate conig
+                    LOGGER.info("recreating file " + JENKINS_JOB_CONFIG_FILE + " in " + dst);
+                    Utils.writeToFile(
+                            Paths.get(dst.getAbsolutePath(), JENKINS_JOB_CONFIG_FILE),
+                            template.generate());
+                },
+                createPublisher
+        );
     }
 
-    private JobUpdateFunction<Job> getArchiveFunction() {
-        return job -> {
-            final String jobName = job.toString();
-            final File src = Paths.get(jenkinsJobsRoot.getAbsolutePath(), job.toString()).toFile();
-            final File dst = Paths.get(jenkinsJobArchiveRoot.getAbsolutePath(), job.toString()).toFile();
-            LOGGER.info("Archiving job " + jobName);
-            LOGGER.info("Moving directory " + src.getAbsolutePath() + " to " + dst.getAbsolutePath());
-            Utils.moveDirByConfig(src, dst);
-            //we delte only if archivation suceed
-            JenkinsCliWrapper.getCli().deleteJobs(jobName).throwIfNecessary();
-            return new JobUpdateResult(jobName, true);
-        };
+    private JobUpdatePipeline.Step getArchiveStep(final Job job) {
+        final String jobName = job.toString();
+        final File src = Paths.get(jenkinsJobsRoot.getAbsolutePath(), job.toString()).toFile();
+        final File dst = Paths.get(jenkinsJobArchiveRoot.getAbsolutePath(), job.toString()).toFile();
+        return new JobUpdatePipeline.Step(
+                jobName,
+                () -> {
+                    LOGGER.info("Archiving job " + jobName);
+                    LOGGER.info("Moving directory " + src.getAbsolutePath() + " to " + dst.getAbsolutePath());
+                    Utils.moveDirByConfig(src, dst);
+                },
+                null,
+                null,
+                //we delte only if archivation suceed
+                deletePublisher
+        );
     }
 
-    private JobUpdateFunction<Job> getRewriteFunction() {
-        return job -> {
-            final String jobName = job.toString();
-            final File jobConfig = Paths.get(jenkinsJobsRoot.getAbsolutePath(), jobName, JENKINS_JOB_CONFIG_FILE).toFile();
-            LOGGER.info("Rewriting job " + jobName);
-            LOGGER.info("Writing to file " + jobConfig.getAbsolutePath());
-            return new PrimaryExceptionThrower<JobUpdateResult>(
-                    () -> {
-                        Utils.writeToFile(jobConfig, job.generateTemplate());
-                    }, () -> {
-                updateManuallyUpdatedJob(jobName);
-            }, new JobUpdateResult(jobName, true)).call();
-        };
+    private JobUpdatePipeline.Step getRewriteStep(final Job job) {
+        final String jobName = job.toString();
+        final File jobConfig = Paths.get(jenkinsJobsRoot.getAbsolutePath(), jobName, JENKINS_JOB_CONFIG_FILE).toFile();
+        return new JobUpdatePipeline.Step(
+                jobName,
+                null,
+                job::generateTemplate,
+                template -> {
+                    LOGGER.info("Rewriting job " + jobName);
+                    LOGGER.info("Writing to file " + jobConfig.getAbsolutePath());
+                    Utils.writeToFile(jobConfig, template.generate());
+                },
+                updatePublisher
+        );
     }
 
     JobUpdateFunction<JobBump> getBumpFunction(final JobCollisionAction action) {
-        return jobBump -> {
-            final boolean isCollision = jobBump.isCollision;
-            final String fromName = jobBump.from.getName();
-            final String toName = jobBump.to.getName();
-            final File fromDir = Paths.get(jenkinsJobsRoot.getAbsolutePath(), fromName).toFile();
-            final File toDir = Paths.get(jenkinsJobsRoot.getAbsolutePath(), toName).toFile();
-            LOGGER.info("Bumping job " + fromName + " to " + toName);
-            if (isCollision) {
-                LOGGER.info("Collision: job " + toName + " already exists");
-                switch (action) {
-                    case KEEP_EXISTING:
-                        LOGGER.info("Keeping the existing job");
-                        archive(fromDir);
-                        final Result<Void, String> deleteJobResult = deleteJenkinsJob(fromName);
-                        final String message = "Collision: the existing config was kept";
-                        final String finalMessage;
-                        final boolean isSuccess;
-                        if (deleteJobResult.isError()) {
-                            finalMessage = message + ", Error: " + deleteJobResult.getError();
-                            isSuccess = false;
-                        } else {
-                            finalMessage = message;
-                            isSuccess = true;
-                        }
-                        return new JobUpdateResult(
-                                toName,
-                                isSuccess,
-                                finalMessage
-                        );
-                    case KEEP_BUMPED:
-                        LOGGER.info("Keeping the bumped job");
-                        archive(toDir);
-                        break;
-                    case STOP:
-                        return new JobUpdateResult(toName, false, "Collision: no changes done");
+        return jobBump -> finishBumps(Collections.singletonList(planBump(jobBump, action))).get(0);
+    }
+
+    /**
+     * Moves job directories of the bump and rewrites its config. Jenkins is not touched here, deletion of the old
+     * job and creation of the new one are left to {@link #finishBumps(List)}, so they can be sent in batches.
+     */
+    private PlannedBump planBump(final JobBump jobBump, final JobCollisionAction action) throws IOException {
+        final boolean isCollision = jobBump.isCollision;
+        final String fromName = jobBump.from.getName();
+        final String toName = jobBump.to.getName();
+        final File fromDir = Paths.get(jenkinsJobsRoot.getAbsolutePath(), fromName).toFile();
+        final File toDir = Paths.get(jenkinsJobsRoot.getAbsolutePath(), toName).toFile();
+        LOGGER.info("Bumping job " + fromName + " to " + toName);
+        if (isCollision) {
+            LOGGER.info("Collision: job " + toName + " already exists");
+            switch (action) {
+                case KEEP_EXISTING:
+                    LOGGER.info("Keeping the existing job");
+                    archive(fromDir);
+                    return new PlannedBump(fromName, toName, true, null);
+                case KEEP_BUMPED:
+                    LOGGER.info("Keeping the bumped job");
+                    archive(toDir);
+                    break;
+                case STOP:
+                    return new PlannedBump(new JobUpdateResult(toName, false, "Collision: no changes done"));
+            }
+        }
+        Utils.moveDirByMvDefault(fromDir, toDir); //just move, not copying, should be the same mount in all cases, and it is huge speedup. If exception is thrown from here, better to die with it
+        return new PlannedBump(fromName, toName, false, updateJenkinsJob(jobBump.to));
+    }
+
+    private List<JobUpdateResult> finishBumps(final List<PlannedBump> bumps) {
+        final List<String> toDelete = new ArrayList<>();
+        final List<String> toCreate = new ArrayList<>();
+        for (final PlannedBump bump : bumps) {
+            if (bump.done == null) {
+                toDelete.add(bump.fromName);
+                if (!bump.keepExisting) {
+                    toCreate.add(bump.toName);
+                }
+            }
+        }
+        final Map<String, JenkinsCliWrapper.ClientResponse> deleted = toDelete.isEmpty()
+                ? Collections.emptyMap()
+                : JenkinsCliWrapper.getCli().deleteJobs(toDelete);
+        final Map<String, JenkinsCliWrapper.ClientResponse> created = toCreate.isEmpty()
+                ? Collections.emptyMap()
+                : JenkinsCliWrapper.getCli().createManuallyUploadedJobs(jenkinsJobsRoot.getAbsoluteFile(), toCreate);
+        final List<JobUpdateResult> results = new ArrayList<>(bumps.size());
+        for (final PlannedBump bump : bumps) {
+            if (bump.done != null) {
+                results.add(bump.done);
+                continue;
+            }
+            final String fromName = bump.fromName;
+            final String toName = bump.toName;
+            final Result<Void, String> deleteJobResult = toResult(deleted.get(fromName));
+            if (bump.keepExisting) {
+                final String message = "Collision: the existing config was kept";
+                if (deleteJobResult.isError()) {
+                    results.add(new JobUpdateResult(toName, false, message + ", Error: " + deleteJobResult.getError()));
+                } else {
+                    results.add(new JobUpdateResult(toName, true, message));
                 }
+                continue;
             }
-            Utils.moveDirByMvDefault(fromDir, toDir); //just move, not copying, should be the same mount in all cases, and it is huge speedup. If exception is thrown from here, better to die with it
-            final Result<Void, String> deleteJobResult = deleteJenkinsJob(fromName);
-            final Result<Void, String> updateJobConfigResult = updateJenkinsJob(jobBump.to);
-            final Result<Void, String> createJobResult = createJenkinsJob(toName);
+            final Result<Void, String> updateJobConfigResult = bump.updateJobConfigResult;
+            final Result<Void, String> createJobResult = toResult(created.get(toName));
             if (deleteJobResult.isOk() && updateJobConfigResult.isOk() && createJobResult.isOk()) {
-                return new JobUpdateResult(toName, true, "bumped from " + fromName + " to " + toName);
+                results.add(new JobUpdateResult(toName, true, "bumped from " + fromName + " to " + toName));
+                continue;
             }
             final StringBuilder errorMessage = new StringBuilder("Exception(s) on the fly:");
             if (deleteJobResult.isError()) {
@@ -435,12 +495,13 @@ public class JenkinsJobUpdater implements JobUpdater {
             if (createJobResult.isError()) {
                 errorMessage.append(" 3) createJobException ").append(createJobResult.getError());
             }
-            return new JobUpdateResult(
+            results.add(new JobUpdateResult(
                     toName,
                     false,
                     "bump from " + fromName + " to " + toName + " failed. See logs. " + errorMessage
-            );
-        };
+            ));
+        }
+        return results;
     }
 
     void archive(final File file) throws IOException {
@@ -455,9 +516,9 @@ public class JenkinsJobUpdater implements JobUpdater {
         Utils.moveDirByConfig(file, archiveFile);
     }
 
-    private Result<Void, String> deleteJenkinsJob(final String jobName) {
+    private static Result<Void, String> toResult(final JenkinsCliWrapper.ClientResponse response) {
         try {
-            JenkinsCliWrapper.getCli().deleteJobs(jobName).throwIfNecessary();
+            response.throwIfNecessary();
             return Result.ok(null);
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
@@ -465,16 +526,16 @@ public class JenkinsJobUpdater implements JobUpdater {
         }
     }
 
-    private Result<Void, String> createJenkinsJob(final String jobName) {
-        try {
-            JenkinsCliWrapper.getCli()
-                    .createManuallyUploadedJob(jenkinsJobsRoot.getAbsoluteFile(), jobName)
-                    .throwIfNecessary();
-            return Result.ok(null);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, e.getMessage(), e);
-            return Result.err(e.getMessage());
+    private static Map<String, Exception> toFailures(final Map<String, JenkinsCliWrapper.ClientResponse> responses) {
+        final Map<String, Exception> failures = new HashMap<>();
+        for (final Map.Entry<String, JenkinsCliWrapper.ClientResponse> response : responses.entrySet()) {
+            try {
+                response.getValue().throwIfNecessary();
+            } catch (IOException e) {
+                failures.put(response.getKey(), e);
+            }
         }
+        return failures;
     }
 
     private Result<Void, String> updateJenkinsJob(final Job job) {
@@ -494,14 +555,31 @@ public class JenkinsJobUpdater implements JobUpdater {
         }
     }
 
-    private void createManuallyUploadedJob(final String jobName) throws Exception {
-        JenkinsCliWrapper.getCli().createManuallyUploadedJob(jenkinsJobsRoot, jobName).throwIfNecessary();
-        ;
-    }
+    private static class PlannedBump {
+
+        private final String fromName;
+        private final String toName;
+        // only the old job is removed from jenkins, the existing target job stays as it is
+        private final boolean keepExisting;
+        private final Result<Void, String> updateJobConfigResult;
+        // result of bump which needs no more work
+        private final JobUpdateResult done;
+
+        private PlannedBump(String fromName, String toName, boolean keepExisting, Result<Void, String> updateJobConfigResult) {
+            this.fromName = fromName;
+            this.toName = toName;
+            this.keepExisting = keepExisting;
+            this.updateJobConfigResult = updateJobConfigResult;
+            this.done = null;
+        }
 
-    private void updateManuallyUpdatedJob(final String jobName) throws Exception {
-        JenkinsCliWrapper.getCli().updateManuallyUpdatedJob(jenkinsJobsRoot, jobName).throwIfNecessary();
-        ;
+        private PlannedBump(JobUpdateResult done) {
+            this.fromName = null;
+            this.toName = null;
+            this.keepExisting = false;
+            this.updateJobConfigResult = null;
+            this.done = done;
+        }
     }
 
     interface JobUpdateFunction<T> {
@@ -0,0 +1,254 @@
+package org.fakekoji.jobmanager;
+
+import org.fakekoji.jobmanager.model.JobUpdateResult;
+import org.fakekoji.xmlrpc.server.JavaServerConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs job updates in three stages: generation of templates, changes of job directories together with writes of
+ * config files, and calls of jenkins cli. Templates are generated and cli calls are made by pools of
+ * {@code parallelism} threads, the file system is changed by single thread. With parallelism of one, all stages run
+ * on the calling thread, one job after another. Consecutive steps with the same {@link Publisher} are published
+ * together, up to {@code batchSize} jobs per call. Results are returned in order of given steps.
+ */
+class JobUpdatePipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(JavaServerConstants.FAKE_KOJI_LOGGER);
+
+    private final int parallelism;
+    private final int batchSize;
+    private final AtomicLong generateNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong publishNanos = new AtomicLong();
+
+    JobUpdatePipeline(int parallelism, int batchSize) {
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    List<JobUpdateResult> run(final String description, final List<Step> steps) {
+        final List<JobUpdateResult> results = new ArrayList<>(steps.size());
+        if (steps.isEmpty()) {
+            return results;
+        }
+        final long started = System.nanoTime();
+        final boolean concurrent = parallelism > 1;
+        final ExecutorService generators = concurrent ? Executors.newFixedThreadPool(parallelism) : null;
+        final ExecutorService writer = concurrent ? Executors.newSingleThreadExecutor() : null;
+        final ExecutorService publishers = concurrent ? Executors.newFixedThreadPool(parallelism) : null;
+        try {
+            final List<CompletableFuture<List<JobUpdateResult>>> futures = new ArrayList<>();
+            List<Step> batch = new ArrayList<>();
+            List<State> states = new ArrayList<>();
+            List<CompletableFuture<Void>> written = new ArrayList<>();
+            for (final Step step : steps) {
+                if (!batch.isEmpty() && (batch.size() >= batchSize || batch.get(0).publisher != step.publisher)) {
+                    futures.add(publishWhenWritten(batch, states, written, publishers));
+                    batch = new ArrayList<>();
+                    states = new ArrayList<>();
+                    written = new ArrayList<>();
+                }
+                final State state = new State();
+                batch.add(step);
+                states.add(state);
+                written.add(CompletableFuture
+                        .runAsync(() -> generate(step, state), executor(generators))
+                        .thenRunAsync(() -> write(step, state), executor(writer)));
+            }
+            futures.add(publishWhenWritten(batch, states, written, publishers));
+            for (final CompletableFuture<List<JobUpdateResult>> future : futures) {
+                results.addAll(future.join());
+            }
+        } finally {
+            shutdown(generators);
+            shutdown(writer);
+            shutdown(publishers);
+        }
+        LOGGER.info(description + ": " + steps.size() + " jobs in " + toMillis(System.nanoTime() - started)
+                + "ms with parallelism " + parallelism
+                + "; templates: " + toMillis(generateNanos.get())
+                + "ms, config writes: " + toMillis(writeNanos.get())
+                + "ms, jenkins cli: " + toMillis(publishNanos.get()) + "ms");
+        return results;
+    }
+
+    private void generate(final Step step, final State state) {
+        if (step.template == null) {
+            return;
+        }
+        final long started = System.nanoTime();
+        try {
+            state.template = step.template.generate();
+        } catch (Exception e) {
+            state.templateFailure = e;
+        } finally {
+            generateNanos.addAndGet(System.nanoTime() - started);
+        }
+    }
+
+    private void write(final Step step, final State state) {
+        final long started = System.nanoTime();
+        try {
+            if (step.prepare != null) {
+                step.prepare.rum();
+            }
+        } catch (Exception e) {
+            state.failure = e;
+            state.skipPublish = true;
+            writeNanos.addAndGet(System.nanoTime() - started);
+            return;
+        }
+        try {
+            if (step.writer != null) {
+                step.writer.write(() -> {
+                    if (state.templateFailure != null) {
+                        throw state.templateFailure;
+                    }
+                    return state.template;
+                });
+            }
+        } catch (Exception e) {
+            state.failure = e;
+        } finally {
+            writeNanos.addAndGet(System.nanoTime() - started);
+        }
+    }
+
+    private CompletableFuture<List<JobUpdateResult>> publishWhenWritten(
+            final List<Step> batch,
+            final List<State> states,
+            final List<CompletableFuture<Void>> written,
+            final ExecutorService publishers
+    ) {
+        return CompletableFuture
+                .allOf(written.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> publish(batch, states), executor(publishers));
+    }
+
+    private List<JobUpdateResult> publish(final List<Step> batch, final List<State> states) {
+        final Publisher publisher = batch.get(0).publisher;
+        final List<String> jobNames = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (!states.get(i).skipPublish) {
+                jobNames.add(batch.get(i).jobName);
+            }
+        }
+        Map<String, Exception> failures = Collections.emptyMap();
+        Exception batchFailure = null;
+        if (publisher != null && !jobNames.isEmpty()) {
+            final long started = System.nanoTime();
+            try {
+                failures = publisher.publish(jobNames);
+            } catch (Exception e) {
+                batchFailure = e;
+            } finally {
+                publishNanos.addAndGet(System.nanoTime() - started);
+            }
+        }
+        final List<JobUpdateResult> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            final Step step = batch.get(i);
+            final State state = states.get(i);
+            Exception saved = state.failure;
+            if (!state.skipPublish && publisher != null) {
+                final Exception secondary = batchFailure != null ? batchFailure : failures.get(step.jobName);
+                if (secondary != null) {
+                    if (saved != null) {
+                        LOGGER.log(Level.SEVERE, secondary.getMessage(), secondary);
+                    } else {
+                        saved = secondary;
+                    }
+                }
+            }
+            if (saved != null) {
+                LOGGER.log(Level.SEVERE, saved.getMessage(), saved);
+                results.add(new JobUpdateResult(step.jobName, false, saved.getMessage()));
+            } else {
+                results.add(step.result);
+            }
+        }
+        return results;
+    }
+
+    private static Executor executor(ExecutorService pool) {
+        if (pool == null) {
+            return Runnable::run;
+        }
+        return pool;
+    }
+
+    private static void shutdown(ExecutorService pool) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    interface TemplateGenerator {
+
+        String generate() throws Exception;
+    }
+
+    interface TemplateWriter {
+
+        void write(TemplateGenerator template) throws Exception;
+    }
+
+    interface Publisher {
+
+        /**
+         * @return failures of jobs which were not published, by job name
+         */
+        Map<String, Exception> publish(List<String> jobNames) throws Exception;
+    }
+
+    /**
+     * Update of single job. Failure of {@code prepare} ends the update, failure of template generation or
+     * {@code writer} is reported, but {@code publisher} is still called, so jenkins reloads whatever is on disk.
+     */
+    static class Step {
+
+        private final String jobName;
+        private final JenkinsJobUpdater.Rummable prepare;
+        private final TemplateGenerator template;
+        private final TemplateWriter writer;
+        private final Publisher publisher;
+        private final JobUpdateResult result;
+
+        Step(
+                String jobName,
+                JenkinsJobUpdater.Rummable prepare,
+                TemplateGenerator template,
+                TemplateWriter writer,
+                Publisher publisher
+        ) {
+            this.jobName = jobName;
+            this.prepare = prepare;
+            this.template = template;
+            this.writer = writer;
+            this.publisher = publisher;
+            this.result = new JobUpdateResult(jobName, true);
+        }
+    }
+
+    private static class State {
+        private String template;
+        private Exception templateFailure;
+        private Exception failure;
+        private boolean skipPublish;
+    }
+}
@@ -40,7 +40,6 @@ import java.util.stream.Collectors;
 
 public class JDKProjectParser implements Parser<Project, Set<Job>> {
 
-    private JobBuilder jobBuilder;
     private final ConfigManager configManager;
     private final File repositoriesRoot;
     private final File scriptsRoot;
@@ -56,9 +55,10 @@ public class JDKProjectParser implements Parser<Project, Set<Job>> {
     }
 
     @Override
-    public synchronized Set<Job> parse(Project project) throws ManagementException, StorageException {
-        final ConfigCache configCache = new ConfigCache(configManager);
-        jobBuilder = new JobBuilder(configCache, project.getType());
+    public Set<Job> parse(Project project) throws ManagementException, StorageException {
+        // shared snapshot and builder per call, so projects can be parsed concurrently
+        final ConfigCache configCache = configManager.getConfigCache();
+        final JobBuilder jobBuilder = new JobBuilder(configCache, project.getType());
         final Optional<JDKVersion> jdkVersionOptional = configCache.getJdkVersion(project.getProduct().getJdk());
         if (!jdkVersionOptional.isPresent()) {
             throw new ManagementException("Unknown product: " + project.getProduct());
@@ -85,63 +85,63 @@ public class JDKProjectParser implements Parser<Project, Set<Job>> {
 
         switch (project.getType()) {
             case JDK_PROJECT:
-                return parse((JDKProject) project);
+                return parse(jobBuilder, (JDKProject) project);
             case JDK_TEST_PROJECT:
-                return parse((JDKTestProject) project);
+                return parse(jobBuilder, (JDKTestProject) project);
         }
         return Collections.emptySet();
     }
 
-    private synchronized Set<Job> parse(JDKProject project) {
-        project.getJobConfiguration().getPlatforms().forEach(getPlatformsConsumer());
+    private Set<Job> parse(JobBuilder jobBuilder, JDKProject project) {
+        project.getJobConfiguration().getPlatforms().forEach(getPlatformsConsumer(jobBuilder));
 
         jobBuilder.buildPullJob(project.getUrl());
         return jobBuilder.getJobs();
     }
 
-    private synchronized Set<Job> parse(JDKTestProject project) {
+    private Set<Job> parse(JobBuilder jobBuilder, JDKTestProject project) {
         jobBuilder.subpackageDenylist = project.getSubpackageDenylist();
         jobBuilder.subpackageAllowlist = project.getSubpackageAllowlist();
         jobBuilder.buildTask = new Task();
-        project.getJobConfiguration().getPlatforms().forEach(getBuildPlatformConsumer());
+        project.getJobConfiguration().getPlatforms().forEach(getBuildPlatformConsumer(jobBuilder));
         return jobBuilder.getJobs();
     }
 
-    private synchronized Consumer<BuildPlatformConfig> getBuildPlatformConsumer() {
+    private Consumer<BuildPlatformConfig> getBuildPlatformConsumer(JobBuilder jobBuilder) {
         return ManagementUtils.managementConsumerWrapper(
                 (BuildPlatformConfig config) -> {
                     jobBuilder.setPlatform(config);
-                    config.getVariants().forEach(getVariantsConsumer());
+                    config.getVariants().forEach(getVariantsConsumer(jobBuilder));
                     jobBuilder.resetPlatform();
                 }
         );
     }
 
-    private synchronized Consumer<PlatformConfig> getPlatformsConsumer() {
+    private Consumer<PlatformConfig> getPlatformsConsumer(JobBuilder jobBuilder) {
         return ManagementUtils.managementConsumerWrapper(
                 (PlatformConfig platformConfig) -> {
                     jobBuilder.setPlatform(platformConfig);
-                    platformConfig.getTasks().forEach(getTasksConsumer());
+                    platformConfig.getTasks().forEach(getTasksConsumer(jobBuilder));
                     jobBuilder.resetPlatform();
                 }
         );
     }
 
-    private synchronized Consumer<TaskConfig> getTasksConsumer() {
+    private Consumer<TaskConfig> getTasksConsumer(JobBuilder jobBuilder) {
         return ManagementUtils.managementConsumerWrapper(
                 (TaskConfig taskConfig) -> {
                     jobBuilder.setTask(taskConfig.getId());
-                    taskConfig.getVariants().forEach(getVariantsConsumer());
+                    taskConfig.getVariants().forEach(getVariantsConsumer(jobBuilder));
                     jobBuilder.resetTask();
                 }
         );
     }
 
-    private synchronized Consumer<VariantsConfig> getVariantsConsumer() {
+    private Consumer<VariantsConfig> getVariantsConsumer(JobBuilder jobBuilder) {
         return ManagementUtils.managementConsumerWrapper(
                 (VariantsConfig variantsConfig) -> {
                     jobBuilder.setVariants(variantsConfig.getMap());
-                    variantsConfig.getPlatforms().forEach(getPlatformsConsumer());
+                    variantsConfig.getPlatforms().forEach(getPlatformsConsumer(jobBuilder));
                     jobBuilder.resetVariants();
                 }
         );
@@ -0,0 +1,158 @@
+package org.fakekoji.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache over {@link DirectoryJsonStorage}. Parsed objects are kept by id and are reused as long as
+ * modification time and size of their file did not change. Set of ids is kept in memory and listed again only when
+ * the directory changes. Writes go directly to the directory.
+ * <p>
+ * The cached objects are shared by all callers, so they must not be modified.
+ */
+public class CachingDirectoryJsonStorage<T> implements Storage<T> {
+
+    private static final String SUFFIX = ".json";
+    // files changed within this time before they were read may be changed again without change of their mtime
+    private static final long MTIME_GRANULARITY_MILLIS = 2000;
+
+    private final File storageFile;
+    private final DirectoryJsonStorage<T> storage;
+    private final Map<String, CachedValue<T>> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile Ids ids;
+
+    public CachingDirectoryJsonStorage(File storageFile) {
+        this.storageFile = storageFile;
+        this.storage = new DirectoryJsonStorage<>(storageFile);
+    }
+
+    @Override
+    public void store(String id, T t) throws StorageException {
+        try {
+            storage.store(id, t);
+        } finally {
+            cache.remove(id);
+            ids = null;
+        }
+    }
+
+    @Override
+    public void delete(String id) throws StorageException {
+        try {
+            storage.delete(id);
+        } finally {
+            cache.remove(id);
+            ids = null;
+        }
+    }
+
+    @Override
+    public T load(String id, Class<T> valueType) throws StorageException {
+        final File file = new File(storageFile, id + SUFFIX);
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        final CachedValue<T> cached = cache.get(id);
+        if (cached != null && cached.isValid(lastModified, length)) {
+            hits.incrementAndGet();
+            return cached.value;
+        }
+        misses.incrementAndGet();
+        final T value = storage.load(id, valueType);
+        cache.put(id, new CachedValue<>(value, lastModified, length));
+        return value;
+    }
+
+    @Override
+    public List<T> loadAll(Class<T> valueType) throws StorageException {
+        final Set<String> currentIds = getIds();
+        final List<T> list = new ArrayList<>(currentIds.size());
+        for (final String id : currentIds) {
+            list.add(load(id, valueType));
+        }
+        cache.keySet().retainAll(currentIds);
+        return list;
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return getIds().contains(id);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return storageFile.getName() + ": hits: " + getHits() + ", misses: " + getMisses() + ", cached: " + cache.size();
+    }
+
+    private Set<String> getIds() {
+        final long lastModified = storageFile.lastModified();
+        final Ids current = ids;
+        if (current != null && current.isValid(lastModified)) {
+            return current.ids;
+        }
+        final Set<String> listed = new LinkedHashSet<>();
+        final File[] files = storageFile.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.getName().endsWith(SUFFIX)) {
+                    listed.add(file.getName().replace(SUFFIX, ""));
+                }
+            }
+        }
+        final Ids fresh = new Ids(Collections.unmodifiableSet(listed), lastModified);
+        ids = fresh;
+        return fresh.ids;
+    }
+
+    private static boolean isSettled(long lastModified, long readTime) {
+        return readTime - lastModified > MTIME_GRANULARITY_MILLIS;
+    }
+
+    private static class CachedValue<T> {
+        private final T value;
+        private final long lastModified;
+        private final long length;
+        private final long readTime = System.currentTimeMillis();
+
+        private CachedValue(T value, long lastModified, long length) {
+            this.value = value;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        private boolean isValid(long lastModified, long length) {
+            return this.lastModified == lastModified && this.length == length && isSettled(lastModified, readTime);
+        }
+    }
+
+    private static class Ids {
+        private final Set<String> ids;
+        private final long lastModified;
+        private final long readTime = System.currentTimeMillis();
+
+        private Ids(Set<String> ids, long lastModified) {
+            this.ids = ids;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isValid(long lastModified) {
+            return this.lastModified == lastModified && isSettled(lastModified, readTime);
+        }
+    }
+}
@@ -69,6 +69,11 @@ public class DirectoryJsonStorage<T> implements Storage<T> {
         return list;
     }
 
+    @Override
+    public String toString() {
+        return storageFile.getName() + ": not cached";
+    }
+
     @Override
     public boolean contains(String id) {
         final String fileName = id + SUFFIX;
@@ -25,14 +25,25 @@ package hudson.plugins.scm.koji.client.tools;
 
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+
+import hudson.plugins.scm.koji.Constants;
+import hudson.plugins.scm.koji.model.Build;
 
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.XmlRpcHandler;
 import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
 import org.apache.xmlrpc.server.XmlRpcHandlerMapping;
 import org.apache.xmlrpc.server.XmlRpcServerConfigImpl;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
 import org.apache.xmlrpc.webserver.WebServer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -204,5 +215,196 @@ public class XmlRpcHelperTest {
         Assertions.assertNotNull(thrown);
     }
 
+    @Test
+    public void clientIsSharedBySameUrlAndTimeout() throws IOException {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        String url = "http://localhost:" + port + "/RPC2/";
+        TimeoutingXmlRpcServer w = new TimeoutingXmlRpcServer(port, 1);
+        w.start();
+        try {
+            Assertions.assertEquals(8, new XmlRpcHelper.XmlRpcExecutioner(url).execute(defaultSumHelper));
+            XmlRpcClient client = XmlRpcHelper.CLIENTS.get(url + "#" + 60000);
+            Assertions.assertNotNull(client);
+            Assertions.assertEquals(8, new XmlRpcHelper.XmlRpcExecutioner(url).execute(defaultSumHelper));
+            Assertions.assertSame(client, XmlRpcHelper.CLIENTS.get(url + "#" + 60000));
+            // configuration of shared client can not change, so other timeout needs other client
+            XmlRpcHelper.XmlRpcExecutioner other = new XmlRpcHelper.XmlRpcExecutioner(url);
+            other.setTimeout(2000);
+            Assertions.assertEquals(8, other.execute(defaultSumHelper));
+            Assertions.assertNotSame(client, XmlRpcHelper.CLIENTS.get(url + "#" + 2000));
+            Assertions.assertEquals(2, XmlRpcHelper.CLIENTS.keySet().stream().filter(k -> k.startsWith(url + "#")).count());
+        } finally {
+            w.stop();
+        }
+    }
+
+    @Test
+    public void callWaitsForFreePermitOfItsHost() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        TimeoutingXmlRpcServer w = new TimeoutingXmlRpcServer(port, 1);
+        Semaphore permits = XmlRpcHelper.IN_FLIGHT.computeIfAbsent("localhost", k -> new Semaphore(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST, true));
+        w.start();
+        permits.acquire(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST);
+        try {
+            // other host has permits of its own
+            XmlRpcHelper.XmlRpcExecutioner otherHost = new XmlRpcHelper.XmlRpcExecutioner("http://127.0.0.1:" + port + "/RPC2/");
+            otherHost.setTimeout(1000);
+            Assertions.assertEquals(8, otherHost.execute(defaultSumHelper));
+
+            Thread release = new Thread(() -> {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                permits.release();
+            });
+            XmlRpcHelper.XmlRpcExecutioner a = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/");
+            a.setTimeout(5000);
+            long started = System.currentTimeMillis();
+            release.start();
+            Assertions.assertEquals(8, a.execute(defaultSumHelper));
+            Assertions.assertTrue(System.currentTimeMillis() - started >= 500);
+            release.join();
+            // the permit is returned once the call is done
+            Assertions.assertEquals(1, permits.availablePermits());
+        } finally {
+            permits.release(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST - 1);
+            w.stop();
+        }
+        Assertions.assertEquals(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST, permits.availablePermits());
+    }
+
+    @Test
+    public void callTimeoutsWhenNoPermitIsFree() throws Exception {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        Semaphore permits = XmlRpcHelper.IN_FLIGHT.computeIfAbsent("localhost", k -> new Semaphore(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST, true));
+        permits.acquire(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST);
+        Exception thrown = null;
+        // nothing listens on the port, but the call must not get that far
+        XmlRpcHelper.XmlRpcExecutioner a = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/");
+        a.setTimeout(300);
+        try {
+            a.execute(defaultSumHelper);
+        } catch (Exception ex) {
+            thrown = ex;
+        } finally {
+            permits.release(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST);
+        }
+        Assertions.assertNotNull(thrown);
+        Assertions.assertTrue(thrown.getCause() instanceof TimeoutException, String.valueOf(thrown.getCause()));
+        Assertions.assertEquals(XmlRpcHelper.MAX_IN_FLIGHT_PER_HOST, permits.availablePermits());
+    }
+
+    private static class ListBuildsXmlRpcParam implements XmlRpcRequestParams {
+
+        @Override
+        public Object[] toXmlRpcParams() {
+            return new Object[]{1};
+        }
+
+        @Override
+        public String getMethodName() {
+            return Constants.listBuilds;
+        }
+
+    }
+
+    private static WebServer startListBuildsServer(int port, boolean fail) throws IOException {
+        WebServer webServer = new WebServer(port);
+        XmlRpcServerConfigImpl config = new XmlRpcServerConfigImpl();
+        config.setEnabledForExtensions(true);
+        webServer.getXmlRpcServer().setConfig(config);
+        webServer.getXmlRpcServer().setHandlerMapping(string -> xrr -> {
+            if (fail) {
+                throw new XmlRpcException(42, "no such package");
+            }
+            Object[] builds = new Object[2];
+            for (int i = 0; i < builds.length; i++) {
+                Map<String, Object> extra = new HashMap<>();
+                extra.put("source", Collections.singletonMap("original_url", "git://somewhere"));
+                Map<String, Object> build = new HashMap<>();
+                build.put(Constants.build_id, i);
+                build.put(Constants.name, "java");
+                build.put(Constants.version, "11");
+                build.put(Constants.release, "" + i);
+                build.put(Constants.nvr, "java-11-" + i);
+                build.put(Constants.completion_time, "2020-01-0" + (i + 1) + " 10:00:00");
+                build.put("extra", extra);
+                build.put("tags", new Object[]{"a", "b"});
+                build.put("size", 5000000000L);
+                build.put("volume_name", null);
+                builds[i] = build;
+            }
+            return builds;
+        });
+        webServer.start();
+        return webServer;
+    }
+
+    @Test
+    public void listBuildsIsDecodedWhileParsed() throws IOException {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        Object result;
+        WebServer w = startListBuildsServer(port, false);
+        try {
+            result = new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/").execute(new ListBuildsXmlRpcParam());
+        } finally {
+            w.shutdown();
+        }
+        Object[] objects = (Object[]) result;
+        Assertions.assertEquals(2, objects.length);
+        Assertions.assertTrue(objects[0] instanceof Build);
+        List<Build> builds = BuildList.create(result).getValue();
+        Assertions.assertEquals(Integer.valueOf(1), builds.get(1).getId());
+        Assertions.assertEquals("java-11-1", builds.get(1).getNvr());
+        Assertions.assertEquals("2020-01-02 10:00:00", builds.get(1).getCompletionTime());
+    }
+
+    @Test
+    public void mixedAnswerIsConvertedPerElement() {
+        Build decoded = new Build(1, "java", "11", "1", "java-11-1", "2020-01-02 10:00:00", null, null, null, null);
+        // struct without nvr stays map even when decoded while parsed
+        Map<String, Object> generic = new HashMap<>();
+        generic.put(Constants.build_id, 2);
+        generic.put(Constants.name, "java");
+        List<Build> builds = BuildList.create(new Object[]{decoded, generic}).getValue();
+        Assertions.assertEquals(2, builds.size());
+        Assertions.assertSame(decoded, builds.get(0));
+        Assertions.assertEquals(Integer.valueOf(2), builds.get(1).getId());
+        Assertions.assertNull(builds.get(1).getNvr());
+    }
+
+    @Test
+    public void faultIsReportedWhenDecoding() throws IOException {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        Exception thrown = null;
+        WebServer w = startListBuildsServer(port, true);
+        try {
+            new XmlRpcHelper.XmlRpcExecutioner("http://localhost:" + port + "/RPC2/").execute(new ListBuildsXmlRpcParam());
+        } catch (Exception ex) {
+            thrown = ex;
+        } finally {
+            w.shutdown();
+        }
+        Assertions.assertNotNull(thrown);
+        Assertions.assertTrue(thrown.getCause() instanceof XmlRpcException);
+        Assertions.assertEquals(42, ((XmlRpcException) thrown.getCause()).code);
+    }
 
 }
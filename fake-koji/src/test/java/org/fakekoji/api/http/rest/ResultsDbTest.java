@@ -225,57 +225,57 @@ public class ResultsDbTest {
             String a = db.getSet("aa", "bb", "1", "100000000", getMessage(), getAuthor());
         }
         //x rewrites of same item, no save
-        long l1 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l1 = compactedLength(folderHolder);
         System.out.println("1)"+l1);
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getSet("a", "b", "1", "" + i, getMessage(), getAuthor());
         }
         //now updating item
-        long l2 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l2 = compactedLength(folderHolder);
         System.out.println("2)"+l2);
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getSet("a", "b", "" + i, "0", getMessage(), getAuthor());
         }
         //now adding items
-        long l3 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l3 = compactedLength(folderHolder);
         System.out.println("3)"+l3);
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getSet("a", "b" + i, "1", "0", getMessage(), getAuthor());
         }
-        long l4 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l4 = compactedLength(folderHolder);
         System.out.println("4)"+l4);
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getSet("a" + i, "b", "1", "100000000", getMessage(), getAuthor());
         }
-        long l5 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l5 = compactedLength(folderHolder);
         System.out.println("5)"+l5);
         //removal of mising item;
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getDel("aa","bb","1", "100000000");
         }
-        long l6 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l6 = compactedLength(folderHolder);
         System.out.println("6)"+l6);
         //removal of same item;
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getSet("a", "b", "1", "" + i, getMessage(), getAuthor());
         }
-        long l7 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l7 = compactedLength(folderHolder);
         System.out.println("7)"+l7);
         //real remval of items
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getDel("a","b",""+i, "0");
         }
-        long l8 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l8 = compactedLength(folderHolder);
         System.out.println("8)"+l8);
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getDel("a","b"+i,"1", "0");
         }
-        long l9 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l9 = compactedLength(folderHolder);
         System.out.println("9)"+l9);
         for(int i = 0; i <= ResultsDb.LIMIT_TO_SAVE; i++){
             String a = db.getDel("a"+i,"b","1", "100000000");
         }
-        long l0 = DataGenerator.getSettings(folderHolder).getResultsFile().length();
+        long l0 = compactedLength(folderHolder);
         System.out.println("0)"+l0);
         //878 is minimal growth of file
         Assertions.assertTrue(l1 + MIN_SIZE < l2);
@@ -289,6 +289,36 @@ public class ResultsDbTest {
         Assertions.assertTrue(l9 > l0 + MIN_SIZE);
     }
 
+    private long compactedLength(DataGenerator.FolderHolder folderHolder) {
+        db.compact();
+        return DataGenerator.getSettings(folderHolder).getResultsFile().length();
+    }
+
+    @Test
+    public void journalIsReplayedAfterCrash() throws IOException {
+        JenkinsCliWrapper.killCli();
+        final File oTool = Files.createTempDirectory("oTool").toFile();
+        final DataGenerator.FolderHolder folderHolder = DataGenerator.initFoldersOnFileRoot(oTool.toPath());
+        final File results = DataGenerator.getSettings(folderHolder).getResultsFile();
+        results.createNewFile();
+        db = new ResultsDb(DataGenerator.getSettings(folderHolder));
+        db.getSet("job", "nvr", "1", "1", Optional.empty(), Optional.empty());
+        db.getSet("job", "nvr", "1", "2", Optional.empty(), Optional.empty());
+        db.getSet("job", "nvr", "2", "3", Optional.empty(), Optional.empty());
+        db.getDel("job", "nvr", "1", "1");
+        //nothing compacted yet, the changes are only in journal
+        Assertions.assertEquals(0, results.length());
+        final ResultsDb recovered = new ResultsDb(DataGenerator.getSettings(folderHolder));
+        Assertions.assertEquals(db.getScore(null, null, null), recovered.getScore(null, null, null));
+        Assertions.assertTrue(recovered.getScore("nvr", "job", "1").startsWith("2;"));
+        Assertions.assertTrue(results.length() > 0);
+        Assertions.assertFalse(new File(results.getParentFile(), results.getName() + ".journal").exists());
+        recovered.getSet("job", "nvr", "3", "4", Optional.empty(), Optional.empty());
+        final long beforeClose = results.length();
+        recovered.close();
+        Assertions.assertTrue(results.length() > beforeClose);
+    }
+
     @Test
     public void checkSaveLoad() throws IOException {
         JenkinsCliWrapper.killCli();
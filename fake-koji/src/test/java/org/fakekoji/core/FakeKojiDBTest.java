@@ -8,6 +8,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
@@ -21,10 +22,11 @@ public class FakeKojiDBTest {
     static Path temporaryFolder;
 
     private FakeKojiDB db;
+    private DataGenerator.FolderHolder folderHolder;
 
     @BeforeEach
     public void setup() throws IOException {
-        final DataGenerator.FolderHolder folderHolder = DataGenerator.initFoldersFromTmpFolder(temporaryFolder.toFile());
+        folderHolder = DataGenerator.initFoldersFromTmpFolder(temporaryFolder.toFile());
         DataGenerator.initBuildsRoot(folderHolder.buildsRoot);
         db = new FakeKojiDB(DataGenerator.getSettings(folderHolder));
     }
@@ -149,6 +151,19 @@ public class FakeKojiDBTest {
         Assertions.assertTrue(builds.stream().allMatch(containsArch("f29.x86_64")));
     }
 
+    @Test
+    public void refreshPicksUpNewAndRemovedReleases() throws IOException {
+        final int original = db.getIndexSize();
+        final File release = new File(folderHolder.buildsRoot, "newProject/1.0/1.el8");
+        Assertions.assertTrue(new File(release, "x86_64").mkdirs());
+        Assertions.assertEquals(original + 1, db.refresh().getIndexSize());
+        Assertions.assertNotNull(db.getPkgId("newProject"));
+        Assertions.assertEquals(original + 1, db.refresh().getIndexSize());
+        Assertions.assertTrue(new File(release, "x86_64").delete());
+        Assertions.assertTrue(release.delete());
+        Assertions.assertEquals(original, db.refresh().getIndexSize());
+    }
+
     private Predicate<Build> containsArch(final String arch) {
         return build -> build.getRpms().stream().anyMatch(rpm -> rpm.getArch().equals(arch));
     }
@@ -0,0 +1,43 @@
+package org.fakekoji.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class IsFailedBuildTest {
+
+    @Test
+    public void verdictIsReusedUntilDirectoryChangesOrIsInvalidated(@TempDir Path temporaryFolder) throws IOException {
+        final File build = temporaryFolder.resolve("build").toFile();
+        final File logs = new File(build, "logs");
+        Assertions.assertTrue(logs.mkdirs());
+        final File log = new File(logs, "build.log");
+        Files.write(log.toPath(), new byte[100]);
+        Assertions.assertFalse(new IsFailedBuild(build).check().getLastResult());
+
+        // rewriting file deeper in the tree changes neither the directory nor its direct children
+        Files.write(log.toPath(), new byte[2]);
+        Assertions.assertFalse(new IsFailedBuild(build).check().getLastResult());
+        Assertions.assertTrue(new IsFailedBuild(build).reCheck().getLastResult());
+
+        IsFailedBuild.invalidate(log);
+        Assertions.assertTrue(new IsFailedBuild(build).check().getLastResult());
+    }
+
+    @Test
+    public void verdictIsNotReusedWhenChildChanges(@TempDir Path temporaryFolder) throws IOException {
+        final File build = temporaryFolder.resolve("build").toFile();
+        Assertions.assertTrue(build.mkdirs());
+        final File log = new File(build, "build.log");
+        Files.write(log.toPath(), new byte[100]);
+        Assertions.assertFalse(new IsFailedBuild(build).check().getLastResult());
+
+        Files.write(log.toPath(), new byte[2]);
+        Assertions.assertTrue(new IsFailedBuild(build).check().getLastResult());
+    }
+}
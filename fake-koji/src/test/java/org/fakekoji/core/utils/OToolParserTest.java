@@ -276,4 +276,21 @@ public class OToolParserTest {
         Assertions.assertEquals("some-nice-name/some.version/some.release.os/arch", nvr.getFullPath());
     }
 
+    @Test
+    public void parseBuildIsMemoized() {
+        final String nvr = VALID_NAME_VERSION + "-" + VALID_RELEASE_WITH_CHAOS;
+        Assertions.assertSame(parser.parseBuild(nvr), parser.parseBuild(nvr));
+        final String invalid = INVALID_PACKAGE_NAME + "-" + VERSION + "-" + VALID_RELEASE;
+        Assertions.assertSame(parser.parseBuild(invalid), parser.parseBuild(invalid));
+    }
+
+    @Test
+    public void sharedParserIsReusedForEqualConfiguration() {
+        final OToolParser shared = OToolParser.shared(jdkProjects, jdkVersions, buildVariants);
+        Assertions.assertSame(
+                shared,
+                OToolParser.shared(new ArrayList<>(jdkProjects), new ArrayList<>(jdkVersions), new ArrayList<>(buildVariants))
+        );
+        Assertions.assertNotSame(shared, OToolParser.shared(new ArrayList<>(), jdkVersions, buildVariants));
+    }
 }
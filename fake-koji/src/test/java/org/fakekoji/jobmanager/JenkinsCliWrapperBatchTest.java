@@ -0,0 +1,112 @@
+package org.fakekoji.jobmanager;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JenkinsCliWrapperBatchTest {
+
+    private static class RecordingWrapper extends JenkinsCliWrapper {
+
+        private final List<String> commands = new ArrayList<>();
+        private final String batchSout;
+        private final String batchSerr;
+        private final int batchResult;
+
+        RecordingWrapper(int batchResult, String batchSout, String batchSerr) {
+            super("nothing", 666, "noOne", null);
+            this.batchResult = batchResult;
+            this.batchSout = batchSout;
+            this.batchSerr = batchSerr;
+        }
+
+        @Override
+        ClientResponse syncSshExec(String cmd, InputStream is) throws IOException, InterruptedException {
+            commands.add(cmd);
+            if (cmd.startsWith("groovy")) {
+                return new ClientResponse(batchResult, batchSout, batchSerr, null, cmd);
+            }
+            return new ClientResponse(0, "", "", null, cmd);
+        }
+    }
+
+    private static Map<String, String> jobs(String... names) {
+        final Map<String, String> jobs = new LinkedHashMap<>();
+        for (String name : names) {
+            jobs.put(name, "");
+        }
+        return jobs;
+    }
+
+    private static String encode(String name) {
+        return Base64.getEncoder().encodeToString(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void scriptSplitsLongConfigsAndEncodesNames() {
+        final StringBuilder config = new StringBuilder();
+        for (int i = 0; i < 2 * JenkinsCliWrapper.BatchAction.MAX_LITERAL + 5; i++) {
+            config.append('A');
+        }
+        final Map<String, String> jobs = new LinkedHashMap<>();
+        jobs.put("job with 'quotes' and spaces", config.toString());
+        final String script = JenkinsCliWrapper.BatchAction.CREATE.createScript(jobs);
+
+        Assertions.assertFalse(script.contains("quotes"));
+        Assertions.assertTrue(script.contains("['" + encode("job with 'quotes' and spaces") + "', ['"));
+        final String literal = "'" + config.substring(0, JenkinsCliWrapper.BatchAction.MAX_LITERAL) + "'";
+        Assertions.assertTrue(script.contains(literal + ", " + literal + ", 'AAAAA']]"));
+        Assertions.assertTrue(script.contains("println '" + JenkinsCliWrapper.BATCH_OK + "' + job[0]"));
+    }
+
+    @Test
+    public void outputIsSplitToJobs() {
+        final String sout = JenkinsCliWrapper.BATCH_OK + encode("ok job") + "\n"
+                + "some other output\n"
+                + JenkinsCliWrapper.BATCH_FAILED + encode("failed job") + " java.lang.IllegalArgumentException: No such job\n";
+        final RecordingWrapper cli = new RecordingWrapper(0, sout, "");
+        final Map<String, JenkinsCliWrapper.ClientResponse> results
+                = cli.syncBatchExec(JenkinsCliWrapper.BatchAction.ENABLE, jobs("ok job", "failed job", "missing job"));
+
+        Assertions.assertEquals(1, cli.commands.size());
+        Assertions.assertTrue(results.get("ok job").simpleVerdict());
+        Assertions.assertFalse(results.get("failed job").simpleVerdict());
+        Assertions.assertTrue(results.get("failed job").serr.contains("No such job"));
+        Assertions.assertFalse(results.get("missing job").simpleVerdict());
+        Assertions.assertTrue(results.get("missing job").serr.contains("no result reported"));
+    }
+
+    @Test
+    public void failedScriptFailsAllJobs() {
+        final RecordingWrapper cli = new RecordingWrapper(1, "", "groovy: compilation failed");
+        final Map<String, JenkinsCliWrapper.ClientResponse> results
+                = cli.syncBatchExec(JenkinsCliWrapper.BatchAction.DISABLE, jobs("a", "b"));
+        Assertions.assertFalse(results.get("a").simpleVerdict());
+        Assertions.assertFalse(results.get("b").simpleVerdict());
+        Assertions.assertEquals(1, cli.commands.size());
+    }
+
+    @Test
+    public void jobsAreHandledOneByOneWithoutScriptPermission() {
+        final RecordingWrapper cli = new RecordingWrapper(6, "", "ERROR: noOne is missing the Overall/RunScripts permission");
+        final Map<String, JenkinsCliWrapper.ClientResponse> results
+                = cli.syncBatchExec(JenkinsCliWrapper.BatchAction.DISABLE, jobs("a", "b"));
+        Assertions.assertTrue(results.get("a").simpleVerdict());
+        Assertions.assertTrue(results.get("b").simpleVerdict());
+        Assertions.assertEquals(3, cli.commands.size());
+        Assertions.assertEquals("disable-job b", cli.commands.get(2));
+
+        // script is not tried again
+        cli.syncBatchExec(JenkinsCliWrapper.BatchAction.SCHEDULE, jobs("c"));
+        Assertions.assertEquals("build c", cli.commands.get(3));
+        Assertions.assertEquals(4, cli.commands.size());
+    }
+}
@@ -41,6 +41,9 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.fakekoji.jobmanager.JenkinsJobUpdater.JENKINS_JOB_CONFIG_FILE;
 
@@ -179,6 +182,53 @@ public class JenkinsJobUpdaterTest {
         });
     }
 
+    @Test
+    public void pipelineKeepsOrderAndPublishesAfterFailedWrite() {
+        final List<String> published = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+        final JobUpdatePipeline.Publisher publisher = jobNames -> {
+            batches.add(jobNames.size());
+            published.addAll(jobNames);
+            return Collections.emptyMap();
+        };
+        final List<JobUpdatePipeline.Step> steps = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final String name = "job" + i;
+            final boolean failWrite = i == 5;
+            final boolean failPrepare = i == 7;
+            steps.add(new JobUpdatePipeline.Step(
+                    name,
+                    () -> {
+                        if (failPrepare) {
+                            throw new IOException("prepare " + name);
+                        }
+                    },
+                    () -> name,
+                    template -> {
+                        if (failWrite) {
+                            throw new IOException("write " + template.generate());
+                        }
+                    },
+                    publisher
+            ));
+        }
+        final List<JobUpdateResult> results = new JobUpdatePipeline(4, 3).run("test", steps);
+        Assertions.assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals("job" + i, results.get(i).jobName);
+            Assertions.assertEquals(i != 5 && i != 7, results.get(i).success);
+        }
+        Assertions.assertEquals("write job5", results.get(5).message);
+        Assertions.assertEquals("prepare job7", results.get(7).message);
+        Assertions.assertEquals(19, published.size());
+        Assertions.assertTrue(published.contains("job5"));
+        Assertions.assertFalse(published.contains("job7"));
+        Assertions.assertEquals(7, batches.size());
+        for (final Integer batch : batches) {
+            Assertions.assertTrue(batch <= 3);
+        }
+    }
+
     @Test
     public void regenerateAllJDKProject() throws ManagementException, StorageException {
         JenkinsCliWrapper.killCli();
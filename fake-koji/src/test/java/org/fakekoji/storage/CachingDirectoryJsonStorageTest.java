@@ -0,0 +1,54 @@
+package org.fakekoji.storage;
+
+import org.fakekoji.model.BuildProvider;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+public class CachingDirectoryJsonStorageTest {
+
+    @TempDir
+    Path temporaryFolder;
+
+    private static final BuildProvider PROVIDER = new BuildProvider("provider", "label", "top", "download", "info");
+
+    private static void settle(File file) {
+        Assertions.assertTrue(file.setLastModified(System.currentTimeMillis() - 60_000));
+    }
+
+    @Test
+    public void settledFilesAreReadOnce() throws StorageException {
+        final File root = temporaryFolder.toFile();
+        final CachingDirectoryJsonStorage<BuildProvider> storage = new CachingDirectoryJsonStorage<>(root);
+        storage.store(PROVIDER.getId(), PROVIDER);
+        settle(new File(root, PROVIDER.getId() + ".json"));
+        settle(root);
+
+        Assertions.assertTrue(storage.contains(PROVIDER.getId()));
+        Assertions.assertFalse(storage.contains("unknown"));
+        Assertions.assertEquals(PROVIDER, storage.load(PROVIDER.getId(), BuildProvider.class));
+        Assertions.assertEquals(PROVIDER, storage.loadAll(BuildProvider.class).get(0));
+        Assertions.assertEquals(1, storage.getMisses());
+        Assertions.assertEquals(1, storage.getHits());
+    }
+
+    @Test
+    public void writesInvalidateCache() throws StorageException {
+        final File root = temporaryFolder.toFile();
+        final CachingDirectoryJsonStorage<BuildProvider> storage = new CachingDirectoryJsonStorage<>(root);
+        storage.store(PROVIDER.getId(), PROVIDER);
+        settle(new File(root, PROVIDER.getId() + ".json"));
+        Assertions.assertEquals(PROVIDER, storage.load(PROVIDER.getId(), BuildProvider.class));
+
+        final BuildProvider changed = new BuildProvider(PROVIDER.getId(), "other label", "top", "download", "info");
+        storage.store(PROVIDER.getId(), changed);
+        Assertions.assertEquals(changed, storage.load(PROVIDER.getId(), BuildProvider.class));
+
+        storage.delete(PROVIDER.getId());
+        Assertions.assertFalse(storage.contains(PROVIDER.getId()));
+        Assertions.assertTrue(storage.loadAll(BuildProvider.class).isEmpty());
+    }
+}
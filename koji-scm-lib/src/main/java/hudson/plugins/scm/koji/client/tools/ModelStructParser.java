@@ -0,0 +1,188 @@
+package hudson.plugins.scm.koji.client.tools;
+
+import hudson.plugins.scm.koji.Constants;
+import org.apache.xmlrpc.parser.TypeParserImpl;
+import org.fakekoji.xmlrpc.server.xmlrpcresponse.BuildList;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Parses struct of koji answer directly into model object, while the answer is being read. Only scalar members
+ * known to {@link Decoder} are kept, all other members, including nested structs and arrays, are skipped without
+ * being materialized. Struct without key member of the decoder is returned as map of kept members.
+ */
+class ModelStructParser extends TypeParserImpl {
+
+    private static final Set<String> SCALARS = new HashSet<>(Arrays.asList(
+            "string", "int", "i4", "i8", "boolean", "double", "nil"
+    ));
+
+    private final Decoder decoder;
+    private final StringBuilder name = new StringBuilder();
+    private final StringBuilder text = new StringBuilder();
+    private Map<String, Object> members;
+    private int level;
+    private String memberName;
+    private String valueType;
+    private boolean inName;
+    private boolean inValue;
+    private boolean skipping;
+
+    ModelStructParser(Decoder decoder) {
+        this.decoder = decoder;
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        level = 0;
+        members = new HashMap<>();
+        inName = inValue = skipping = false;
+    }
+
+    @Override
+    public void startElement(String pURI, String pLocalName, String pQName, Attributes pAttrs) throws SAXException {
+        switch (level++) {
+            case 0:
+                if (!"struct".equals(pLocalName)) {
+                    throw new SAXParseException("Expected struct, got " + pLocalName, getDocumentLocator());
+                }
+                break;
+            case 1:
+                memberName = null;
+                inName = inValue = false;
+                break;
+            case 2:
+                if ("name".equals(pLocalName)) {
+                    inName = true;
+                    name.setLength(0);
+                } else if ("value".equals(pLocalName)) {
+                    inValue = true;
+                    valueType = null;
+                    text.setLength(0);
+                    skipping = memberName == null || !decoder.members.contains(memberName);
+                }
+                break;
+            case 3:
+                if (inValue) {
+                    valueType = pLocalName;
+                    text.setLength(0);
+                    skipping |= !SCALARS.contains(pLocalName);
+                }
+                break;
+            default:
+                // content of skipped struct or array
+                break;
+        }
+    }
+
+    @Override
+    public void endElement(String pURI, String pLocalName, String pQName) throws SAXException {
+        switch (--level) {
+            case 0:
+                setResult(decoder.create(members));
+                break;
+            case 2:
+                if (inName) {
+                    memberName = name.toString().trim();
+                    inName = false;
+                } else if (inValue) {
+                    if (!skipping) {
+                        members.put(memberName, decode(valueType, text.toString()));
+                    }
+                    inValue = false;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void characters(char[] pChars, int pOffset, int pLength) throws SAXException {
+        if (inName && level == 3) {
+            name.append(pChars, pOffset, pLength);
+        } else if (inValue && !skipping && level == (valueType == null ? 3 : 4)) {
+            text.append(pChars, pOffset, pLength);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] pChars, int pOffset, int pLength) throws SAXException {
+    }
+
+    private Object decode(String type, String value) throws SAXException {
+        try {
+            if (type == null || "string".equals(type)) {
+                return value;
+            }
+            switch (type) {
+                case "int":
+                case "i4":
+                    return Integer.valueOf(value.trim());
+                case "i8":
+                    return Long.valueOf(value.trim());
+                case "boolean":
+                    return "1".equals(value.trim());
+                case "double":
+                    return Double.valueOf(value.trim());
+                case "nil":
+                    return null;
+                default:
+                    return value;
+            }
+        } catch (NumberFormatException ex) {
+            throw new SAXParseException("Failed to parse " + type + " member " + memberName + ": " + value, getDocumentLocator(), ex);
+        }
+    }
+
+    /**
+     * Says which members of struct are read, and how they are turned into model object.
+     */
+    static final class Decoder {
+
+        static final Decoder BUILD = new Decoder(
+                Constants.nvr,
+                BuildList::parseBuildMap,
+                Constants.build_id, Constants.name, Constants.version, Constants.release, Constants.nvr, Constants.completion_time
+        );
+
+        private final String keyMember;
+        private final Function<Map<String, Object>, Object> factory;
+        private final Set<String> members;
+
+        private Decoder(String keyMember, Function<Map<String, Object>, Object> factory, String... members) {
+            this.keyMember = keyMember;
+            this.factory = factory;
+            this.members = new HashSet<>(Arrays.asList(members));
+        }
+
+        /**
+         * Answer of listRPMs is parsed generically, as all its members are saved as metadata of downloaded build.
+         *
+         * @return decoder of structs in answer of given method, or null if the answer is parsed generically
+         */
+        static Decoder forMethod(String methodName) {
+            switch (methodName) {
+                case Constants.listBuilds:
+                    return BUILD;
+                default:
+                    return null;
+            }
+        }
+
+        private Object create(Map<String, Object> members) {
+            if (!members.containsKey(keyMember)) {
+                return members;
+            }
+            return factory.apply(members);
+        }
+    }
+}
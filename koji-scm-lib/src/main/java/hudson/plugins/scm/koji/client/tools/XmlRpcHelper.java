@@ -24,6 +24,16 @@
 package hudson.plugins.scm.koji.client.tools;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import hudson.plugins.scm.koji.Constants;
 
 import org.apache.ws.commons.util.NamespaceContextImpl;
 import org.apache.xmlrpc.client.XmlRpcClient;
@@ -48,6 +58,15 @@ import org.xml.sax.SAXParseException;
  */
 public class XmlRpcHelper {
 
+    static final int MAX_IN_FLIGHT_PER_HOST = Integer.getInteger(XmlRpcHelper.class.getName() + ".maxInFlightPerHost", 8);
+    // asks hub to compress its answers, big listBuilds and listRPMs compress very well
+    private static final boolean GZIP_RESPONSES = !Boolean.getBoolean(XmlRpcHelper.class.getName() + ".noGzipResponses");
+    // not every hub accepts compressed requests, and ours are small anyway
+    private static final boolean GZIP_REQUESTS = Boolean.getBoolean(XmlRpcHelper.class.getName() + ".gzipRequests");
+    static final Map<String, XmlRpcClient> CLIENTS = new ConcurrentHashMap<>();
+    static final Map<String, Semaphore> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Decoding> DECODING = new ThreadLocal<>();
+
     public static class XmlRpcExecutioner {
 
         private final String currentURL ;
@@ -63,17 +82,86 @@ public class XmlRpcHelper {
 
         public Object execute(XmlRpcRequestParams params) {
             try {
-                final XmlRpcClient client = createClient();
-                return client.execute(params.getMethodName(), params.toXmlRpcParams());
+                return call(params.getMethodName(), params.toXmlRpcParams(), ModelStructParser.Decoder.forMethod(params.getMethodName()));
             } catch (Exception ex) {
                 throw new RuntimeException("Exception while executing " + params.getMethodName(), ex);
             }
         }
 
-        private XmlRpcClient createClient() throws Exception {
+        /**
+         * Sends all requests in one {@link Constants#multicall} call.
+         *
+         * @return results in order of given params
+         * @throws RuntimeException if whole call or any of the requests failed
+         */
+        public List<Object> executeMulticall(List<XmlRpcRequestParams> params) {
+            final Object[] calls = new Object[params.size()];
+            for (int i = 0; i < params.size(); i++) {
+                final Map<String, Object> call = new HashMap<>();
+                call.put(Constants.methodName, params.get(i).getMethodName());
+                call.put(Constants.params, params.get(i).toXmlRpcParams());
+                calls[i] = call;
+            }
+            final Object response;
+            try {
+                response = call(Constants.multicall, new Object[]{calls}, null);
+            } catch (Exception ex) {
+                throw new RuntimeException("Exception while executing " + Constants.multicall + " of " + params.size() + " calls", ex);
+            }
+            if (!(response instanceof Object[]) || ((Object[]) response).length != params.size()) {
+                throw new RuntimeException("Unexpected response of " + Constants.multicall + " of " + params.size() + " calls: " + response);
+            }
+            final Object[] responses = (Object[]) response;
+            final List<Object> results = new ArrayList<>(responses.length);
+            for (int i = 0; i < responses.length; i++) {
+                // successful call is wrapped in array of single item, failed one is a fault struct
+                if (responses[i] instanceof Object[] && ((Object[]) responses[i]).length == 1) {
+                    results.add(((Object[]) responses[i])[0]);
+                } else if (responses[i] instanceof Map) {
+                    final Map<?, ?> fault = (Map<?, ?>) responses[i];
+                    throw new RuntimeException("Exception while executing " + XmlRpcRequestParams.toNiceString(params.get(i))
+                            + " in " + Constants.multicall + ": " + fault.get(Constants.faultCode) + " " + fault.get(Constants.faultString));
+                } else {
+                    throw new RuntimeException("Unexpected response of " + XmlRpcRequestParams.toNiceString(params.get(i))
+                            + " in " + Constants.multicall + ": " + responses[i]);
+                }
+            }
+            return results;
+        }
+
+        /**
+         * @param decoder if not null, structs in array of the answer are parsed into model objects while reading
+         */
+        private Object call(String methodName, Object[] params, ModelStructParser.Decoder decoder) throws Exception {
+            final URL url = new URL(currentURL);
+            final Semaphore permits = IN_FLIGHT.computeIfAbsent(url.getHost(), k -> new Semaphore(MAX_IN_FLIGHT_PER_HOST, true));
+            if (timeout == null) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("More than " + MAX_IN_FLIGHT_PER_HOST + " requests to " + url.getHost() + " in flight for " + timeout + "ms");
+            }
+            try {
+                final XmlRpcClient client = CLIENTS.computeIfAbsent(currentURL + "#" + timeout, k -> createClient(url));
+                // answer is parsed on calling thread, so the type factory finds the decoder here
+                DECODING.set(decoder == null ? null : new Decoding(decoder));
+                return client.execute(methodName, params);
+            } finally {
+                DECODING.remove();
+                permits.release();
+            }
+        }
+
+        /**
+         * Client is shared by all executioners of same url and timeout, so its configuration must not change once
+         * created. Connections are kept alive by the default transport, the number of idle connections per host is
+         * driven by the http.maxConnections system property.
+         */
+        private XmlRpcClient createClient(URL url) {
             XmlRpcClientConfigImpl xmlRpcConfig = new XmlRpcClientConfigImpl();
             xmlRpcConfig.setEnabledForExtensions(true);
-            xmlRpcConfig.setServerURL(new URL(currentURL));
+            xmlRpcConfig.setServerURL(url);
+            xmlRpcConfig.setGzipRequesting(GZIP_RESPONSES);
+            xmlRpcConfig.setGzipCompressing(GZIP_REQUESTS);
             if (timeout != null) {
                 xmlRpcConfig.setConnectionTimeout(timeout);
                 xmlRpcConfig.setReplyTimeout(timeout);
@@ -95,11 +183,23 @@ public class XmlRpcHelper {
 
         @Override
         public TypeParser getParser(XmlRpcStreamConfig pConfig, NamespaceContextImpl pContext, String pURI, String pLocalName) {
+            final Decoding decoding = DECODING.get();
             switch (pLocalName) {
                 case "nil":
                     return new NilParser();
                 case I8Serializer.I8_TAG:
                     return new I8Parser();
+                case "array":
+                    if (decoding != null) {
+                        decoding.inArray = true;
+                    }
+                    return super.getParser(pConfig, pContext, pURI, pLocalName);
+                case "struct":
+                    // fault struct is not in array, it must be parsed generically
+                    if (decoding != null && decoding.inArray) {
+                        return new ModelStructParser(decoding.decoder);
+                    }
+                    return super.getParser(pConfig, pContext, pURI, pLocalName);
                 default:
                     return super.getParser(pConfig, pContext, pURI, pLocalName);
             }
@@ -118,6 +218,16 @@ public class XmlRpcHelper {
 
     }
 
+    private static class Decoding {
+
+        private final ModelStructParser.Decoder decoder;
+        private boolean inArray;
+
+        private Decoding(ModelStructParser.Decoder decoder) {
+            this.decoder = decoder;
+        }
+    }
+
     private static class NilParser extends AtomicParser {
 
         @Override
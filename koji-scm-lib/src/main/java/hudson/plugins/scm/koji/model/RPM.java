@@ -25,6 +25,10 @@ public class RPM implements java.io.Serializable {
     private final String filename;
     private String url;
     private String hashSum;
+    // as known to koji, null if unknown
+    private Long size;
+    private String checksumType;
+    private String checksum;
 
     public RPM(String name, String version, String release, String nvr, String arch, String filename) {
         this.name = name;
@@ -114,6 +118,30 @@ public class RPM implements java.io.Serializable {
         return hashSum;
     }
 
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return name of algorithm of {@link #getChecksum()}, as used by koji (md5, sha1, sha256...)
+     */
+    public String getChecksumType() {
+        return checksumType;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(String checksumType, String checksum) {
+        this.checksumType = checksumType;
+        this.checksum = checksum;
+    }
+
     public static enum Suffix {
         INSTANCE;
 
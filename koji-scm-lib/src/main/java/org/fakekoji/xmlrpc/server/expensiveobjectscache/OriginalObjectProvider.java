@@ -2,7 +2,24 @@ package org.fakekoji.xmlrpc.server.expensiveobjectscache;
 
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface OriginalObjectProvider {
 
     Object obtainOriginal(String url, XmlRpcRequestParams params);
+
+    /**
+     * Obtains results of several requests to same url. Providers able to send them together (eg. by
+     * system.multicall) should override this, default implementation asks for each of them separately.
+     *
+     * @return results in order of given params
+     */
+    default List<Object> obtainOriginals(String url, List<XmlRpcRequestParams> params) {
+        final List<Object> results = new ArrayList<>(params.size());
+        for (final XmlRpcRequestParams param : params) {
+            results.add(obtainOriginal(url, param));
+        }
+        return results;
+    }
 }
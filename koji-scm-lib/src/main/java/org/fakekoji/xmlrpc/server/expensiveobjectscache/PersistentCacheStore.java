@@ -0,0 +1,193 @@
+package org.fakekoji.xmlrpc.server.expensiveobjectscache;
+
+import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped stream of serialized records, so the cache survives restart of jenkins. Each record is url, request,
+ * time of its creation and result. The file is written to temporary file first and then renamed, so it is never
+ * read half written.
+ */
+class PersistentCacheStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PersistentCacheStore.class);
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    PersistentCacheStore(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    interface RecordConsumer {
+
+        void accept(URL url, XmlRpcRequestParams params, long dateCreated, Object result);
+    }
+
+    interface RecordFilter {
+
+        boolean accept(String host, String methodName, long dateCreated);
+    }
+
+    /**
+     * @return number of saved records
+     */
+    int save(Map<String, SingleUrlResponseCache> caches, RecordFilter filter) throws IOException {
+        final File tmp = new File(file.getAbsolutePath() + ".tmp");
+        int saved = 0;
+        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))) {
+            oos.writeInt(VERSION);
+            for (Map.Entry<String, SingleUrlResponseCache> cache : caches.entrySet()) {
+                final String host = cache.getValue().getId().getHost();
+                final List<Map.Entry<XmlRpcRequestParams, SingleUrlResponseCache.ResultWithTimeStamp>> records = cache.getValue().getContent();
+                for (Map.Entry<XmlRpcRequestParams, SingleUrlResponseCache.ResultWithTimeStamp> record : records) {
+                    final long dateCreated = record.getValue().getDateCreated().getTime();
+                    if (!filter.accept(host, record.getKey().getMethodName(), dateCreated)) {
+                        continue;
+                    }
+                    oos.writeBoolean(true);
+                    oos.writeUTF(cache.getKey());
+                    oos.writeObject(record.getKey());
+                    oos.writeLong(dateCreated);
+                    oos.writeObject(record.getValue().getResult());
+                    // records are independent, do not keep back references to all of them
+                    oos.reset();
+                    saved++;
+                }
+            }
+            oos.writeBoolean(false);
+        } catch (IOException | RuntimeException ex) {
+            if (!tmp.delete()) {
+                LOG.warn("Failed to delete " + tmp.getAbsolutePath());
+            }
+            throw ex;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return saved;
+    }
+
+    /**
+     * @return number of loaded records, records refused by filter are not counted
+     */
+    int load(RecordFilter filter, RecordConsumer consumer) throws IOException, ClassNotFoundException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int loaded = 0;
+        try (ObjectInputStream ois = new PluginObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            final int version = ois.readInt();
+            if (version != VERSION) {
+                LOG.warn("Ignoring " + file.getAbsolutePath() + " of unknown version " + version);
+                return 0;
+            }
+            while (ois.readBoolean()) {
+                final String url = ois.readUTF();
+                final XmlRpcRequestParams params = (XmlRpcRequestParams) ois.readObject();
+                final long dateCreated = ois.readLong();
+                final Object result = ois.readObject();
+                final URL u = new URL(url);
+                if (filter.accept(u.getHost(), params.getMethodName(), dateCreated)) {
+                    consumer.accept(u, params, dateCreated, result);
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Resolves classes by loader of this plugin first, as the stream may be read from thread of other plugin. Only
+     * classes which the cache itself stores may be read: request params, results of xml-rpc calls and model of
+     * builds. Anything else means the file was not written by this class, and is refused before it is instantiated.
+     */
+    private static class PluginObjectInputStream extends ObjectInputStream {
+
+        private static final Set<String> ALLOWED = new HashSet<>(Arrays.asList(
+                // not serializable itself, just component of Object[]
+                "java.lang.Object",
+                "java.lang.String",
+                "java.lang.Number",
+                "java.lang.Boolean",
+                "java.lang.Byte",
+                "java.lang.Character",
+                "java.lang.Short",
+                "java.lang.Integer",
+                "java.lang.Long",
+                "java.lang.Float",
+                "java.lang.Double",
+                "java.util.Date",
+                "java.util.HashMap",
+                "java.util.LinkedHashMap",
+                "java.util.ArrayList",
+                "java.util.Arrays$ArrayList",
+                "java.util.HashSet",
+                "java.util.LinkedHashSet",
+                "java.util.Collections$EmptyList",
+                "java.util.Collections$EmptySet",
+                "java.util.Collections$EmptyMap",
+                "java.net.URL",
+                "hudson.plugins.scm.koji.model.Build",
+                "hudson.plugins.scm.koji.model.BuildProvider",
+                "hudson.plugins.scm.koji.model.RPM"
+        ));
+
+        PluginObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(desc.getName(), false, PersistentCacheStore.class.getClassLoader());
+            } catch (ClassNotFoundException ex) {
+                clazz = super.resolveClass(desc);
+            }
+            if (!isAllowed(clazz)) {
+                throw new InvalidClassException(desc.getName(), "not allowed in " + PersistentCacheStore.class.getSimpleName());
+            }
+            return clazz;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException(Arrays.toString(interfaces), "proxy not allowed in " + PersistentCacheStore.class.getSimpleName());
+        }
+
+        static boolean isAllowed(Class<?> clazz) {
+            if (clazz.isArray()) {
+                return isAllowed(clazz.getComponentType());
+            }
+            return clazz.isPrimitive()
+                    || ALLOWED.contains(clazz.getName())
+                    || XmlRpcRequestParams.class.isAssignableFrom(clazz);
+        }
+    }
+}
@@ -36,6 +36,39 @@ public class RemoteRequestCacheConfigKeys {
      * If set to 0, items remains in cache forever
      */
     public static final String CACHE_RELEASE_TIMEOUT_MULTIPLIER = "cacheReleaseTimeout";
+    /**
+     * Time in minutes, for which expired record is still returned, while it is refreshed in background. Only if the
+     * record is older than its timeout plus this time, caller waits for new value.
+     * If set to 0 (default), expired record is refreshed by first caller, and others get the expired one meanwhile
+     */
+    public static final String CACHE_MAX_STALENESS_MINUTES = "cacheMaxStalenessMinutes";
+    /**
+     * N. If cacheMaxStalenessMinutes is set, records which were already read from cache again, are refreshed in
+     * background once they are read in the last N percent of their timeout, so they do not expire at all.
+     * If set to 0 (default), records are refreshed only after they expire
+     */
+    public static final String CACHE_REFRESH_AHEAD_PERCENT = "cacheRefreshAheadPercent";
+    /**
+     * Maximal number of records cached for single url. Least recently used records are removed first.
+     * If set to 0 (default), number of records is not limited
+     */
+    public static final String CACHE_MAX_ENTRIES_PER_URL = "cacheMaxEntriesPerUrl";
+    /**
+     * Maximal estimated size of records cached for single url, in megabytes. Least recently used records are
+     * removed first. If set to 0 (default), size is not limited
+     */
+    public static final String CACHE_MAX_MEGABYTES_PER_URL = "cacheMaxMegabytesPerUrl";
+    /**
+     * Maximal estimated size of all cached records, in megabytes, 256 by default. Least recently used records of
+     * any url are removed first. If set to 0, size is not limited
+     */
+    public static final String CACHE_MAX_MEGABYTES = "cacheMaxMegabytes";
+    /**
+     * If true, records are saved to file next to config file (with .store suffix) whenever config is reloaded,
+     * and loaded from it in background after restart. Records which would be already released are not saved nor loaded.
+     * False by default
+     */
+    public static final String CACHE_PERSISTENT = "cachePersistent";
     /**
      * space separated list of regexex of  urls
      * matching urls are NOT cached
@@ -71,6 +104,15 @@ public class RemoteRequestCacheConfigKeys {
                     + CACHE_REFRESH_RATE_MINUTES + "cacheRefreshRateMinutes=0\n"
                     + "# hopefully there is a lot of ram on hydra\n"
                     + CACHE_RELEASE_TIMEOUT_MULTIPLIER + "=10\n"
+                    + "# serve expired records for up to one day while refreshing them in background\n"
+                    + "#" + CACHE_MAX_STALENESS_MINUTES + "=1440\n"
+                    + "#" + CACHE_REFRESH_AHEAD_PERCENT + "=10\n"
+                    + "# estimated sizes, the cached answers of listBuilds may be huge\n"
+                    + "#" + CACHE_MAX_ENTRIES_PER_URL + "=10000\n"
+                    + "#" + CACHE_MAX_MEGABYTES_PER_URL + "=128\n"
+                    + CACHE_MAX_MEGABYTES + "=256\n"
+                    + "# keep records over restart of jenkins, so hubs are not flooded by first polling\n"
+                    + "#" + CACHE_PERSISTENT + "=true\n"
                     + "\n"
                     + "# although  hydra is quick enough, it keeps reading FS, lower this  rate at least a bit\n"
                     + "#" + BLACK_LISTED_URLS_LIST + "=.*" + NEW_API_MACHINE + ".*\n"
@@ -23,6 +23,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -33,18 +44,36 @@ public class RemoteRequestsCache {
     private static final Logger LOG = LoggerFactory.getLogger(RemoteRequestsCache.class);
     private static final long minutesToMillis = 60l * 1000l;
 
-    private final Map<String, SingleUrlResponseCache> cache = Collections.synchronizedMap(new HashMap<>());
+    private final Map<String, SingleUrlResponseCache> cache = new ConcurrentHashMap<>();
     private final File config;
     private static final long CONFIG_DEFAULT = 10;
-    private long configRefreshRateMinutes = CONFIG_DEFAULT;
     static final long CACHE_DEFAULT = 60 * 6;
-    private long cacheRefreshRateMinutes = CACHE_DEFAULT;
     static final long RELEASE_DEFAULT = CACHE_DEFAULT * 5;
-    private long cacheReleaseRate = RELEASE_DEFAULT;
     private Properties propRaw = new Properties();
+    // readers take this reference once and use it without locking, writers replace it by new one
+    private volatile Settings settings = new Settings(propRaw, false, null);
     private final OriginalObjectProvider originalProvider;
-    private List<Pattern> denyListedUrlsList = new ArrayList<>();
-    private boolean loaded = false;
+    private volatile boolean loaded = false;
+    private static final int REFRESH_THREADS = 2;
+    private static final int REFRESH_QUEUE = 100;
+    private final ThreadPoolExecutor refresher;
+    private final AtomicInteger refreshing = new AtomicInteger();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong refreshedAhead = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    // misses being obtained from original provider; other callers missing the same record wait for them
+    private final Map<CacheKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    static final long MAX_MEGABYTES_DEFAULT = 256;
+    // only one thread evicts globally at a time, others do not wait for it
+    private final ReentrantLock evicting = new ReentrantLock();
+    private final AtomicLong globalEvictions = new AtomicLong();
+    private final PersistentCacheStore store;
+    private final AtomicBoolean restored = new AtomicBoolean();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong restoredCount = new AtomicLong();
+    private final AtomicLong savedCount = new AtomicLong();
 
     public Object obtain(String url, XmlRpcRequestParams params) {
         URL u = null;
@@ -53,22 +82,142 @@ public class RemoteRequestsCache {
         } catch (MalformedURLException ex) {
             throw new RuntimeException(ex);
         }
+        final Object cached = this.get(u, params);
+        if (cached != null) {
+            return cached;
+        }
+        final CacheKey key = new CacheKey(u, params);
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
         try {
-            final Object cached = this.get(u, params);
-            if (cached != null) {
-                return cached;
-            } else {
-                Object answer = originalProvider.obtainOriginal(url, params);
-                this.put(answer, u, params);
-                return answer;
+            // other caller may have put the record after it was missed by this one, but before this one registered
+            final Object recheck = this.peekValid(u, params);
+            if (recheck != null) {
+                mine.complete(recheck);
+                return recheck;
             }
+            Object answer = originalProvider.obtainOriginal(url, params);
+            this.put(answer, u, params);
+            mine.complete(answer);
+            return answer;
         } catch (Exception ex) {
             LOG.error("Cache obtain failed! Removing: " + ex.toString() + "[" + params.getMethodName() + ": " + Arrays.stream(params.toXmlRpcParams()).map(a -> a.toString()).collect(Collectors.joining(", ")) + "]");
             this.remove(u, params);
+            mine.completeExceptionally(ex);
+            throw new RuntimeException(ex);
+        } catch (Error err) {
+            // waiting callers have no timeout, so they have to be released in any case
+            mine.completeExceptionally(err);
+            throw err;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Same as {@link #obtain(String, XmlRpcRequestParams)} for several requests to same url. Each request is cached
+     * on its own, only those not found in cache are passed to the original provider, all at once.
+     *
+     * @return results in order of given params
+     */
+    public List<Object> obtainAll(String url, List<XmlRpcRequestParams> params) {
+        URL u = null;
+        try {
+            u = new URL(url);
+        } catch (MalformedURLException ex) {
+            throw new RuntimeException(ex);
+        }
+        final List<Object> results = new ArrayList<>(params.size());
+        final List<Integer> missingIndexes = new ArrayList<>();
+        final List<XmlRpcRequestParams> missing = new ArrayList<>();
+        final List<CompletableFuture<Object>> mine = new ArrayList<>();
+        final Map<Integer, CompletableFuture<Object>> running = new HashMap<>();
+        for (int i = 0; i < params.size(); i++) {
+            final Object cached = this.get(u, params.get(i));
+            results.add(cached);
+            if (cached == null) {
+                final CacheKey key = new CacheKey(u, params.get(i));
+                final CompletableFuture<Object> future = new CompletableFuture<>();
+                final CompletableFuture<Object> other = inFlight.putIfAbsent(key, future);
+                if (other != null) {
+                    coalesced.incrementAndGet();
+                    running.put(i, other);
+                    continue;
+                }
+                // other caller may have put the record after it was missed by this one, but before this one registered
+                final Object recheck = this.peekValid(u, params.get(i));
+                if (recheck != null) {
+                    results.set(i, recheck);
+                    future.complete(recheck);
+                    inFlight.remove(key, future);
+                } else {
+                    missingIndexes.add(i);
+                    missing.add(params.get(i));
+                    mine.add(future);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            try {
+                final List<Object> answers = originalProvider.obtainOriginals(url, missing);
+                if (answers.size() != missing.size()) {
+                    throw new RuntimeException("Expected " + missing.size() + " answers, got " + answers.size());
+                }
+                for (int i = 0; i < missing.size(); i++) {
+                    this.put(answers.get(i), u, missing.get(i));
+                    results.set(missingIndexes.get(i), answers.get(i));
+                    mine.get(i).complete(answers.get(i));
+                }
+            } catch (Exception ex) {
+                LOG.error("Cache obtainAll failed! Removing " + missing.size() + " requests: " + ex.toString() + "[" + missing.stream().map(XmlRpcRequestParams::toNiceString).collect(Collectors.joining(", ")) + "]");
+                for (int i = 0; i < missing.size(); i++) {
+                    this.remove(u, missing.get(i));
+                    mine.get(i).completeExceptionally(ex);
+                }
+                throw new RuntimeException(ex);
+            } catch (Error err) {
+                for (CompletableFuture<Object> future : mine) {
+                    future.completeExceptionally(err);
+                }
+                throw err;
+            } finally {
+                for (int i = 0; i < missing.size(); i++) {
+                    inFlight.remove(new CacheKey(u, missing.get(i)), mine.get(i));
+                }
+            }
+        }
+        for (Map.Entry<Integer, CompletableFuture<Object>> other : running.entrySet()) {
+            results.set(other.getKey(), await(other.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * Waits for the same request sent by other caller.
+     */
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
         }
     }
 
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getRestoredCount() {
+        return restoredCount.get();
+    }
+
     protected boolean isLoaded() {
         return loaded;
     }
@@ -86,6 +235,7 @@ public class RemoteRequestsCache {
         public void run() {
             while (alive) {
                 try {
+                    restoreOnce();
                     try {
                         Thread.sleep(getConfigRefreshRateMilis());
                     } catch (Exception e) {
@@ -118,6 +268,11 @@ public class RemoteRequestsCache {
                 } catch (Exception ex) {
                     LOG.warn("Failed to clear old items from cache", ex);
                 }
+                try {
+                    persist();
+                } catch (Exception ex) {
+                    LOG.warn("Failed to save cache to " + store.getFile().getAbsolutePath(), ex);
+                }
             }
         }
 
@@ -127,8 +282,8 @@ public class RemoteRequestsCache {
         return time * minutesToMillis;
     }
 
-    protected synchronized long getConfigRefreshRateMilis() {
-        return toUnits(configRefreshRateMinutes);
+    protected long getConfigRefreshRateMilis() {
+        return toUnits(settings.configRefreshRateMinutes);
     }
 
     protected synchronized void setProperties(Properties prop) {
@@ -140,67 +295,78 @@ public class RemoteRequestsCache {
         propRaw = propNew;
     }
 
-    private synchronized void freeOldItems() {
-        if (cacheReleaseRate > 0) {
+    private void freeOldItems() {
+        final Settings s = settings;
+        if (s.cacheReleaseRate > 0) {
             Date now = new Date();
             Collection<SingleUrlResponseCache> caches = cache.values();
             for (SingleUrlResponseCache cache : caches) {
-                Set<Map.Entry<XmlRpcRequestParams, SingleUrlResponseCache.ResultWithTimeStamp>> kvs = cache.getContent();
+                List<Map.Entry<XmlRpcRequestParams, SingleUrlResponseCache.ResultWithTimeStamp>> kvs = cache.getContent();
                 for (Map.Entry<XmlRpcRequestParams, SingleUrlResponseCache.ResultWithTimeStamp> kv : kvs) {
-                    long t = getPerMethodValidnesMilis(kv.getKey().getMethodName(), cache.getId().getHost());
-                    if (now.getTime() - kv.getValue().getDateCreated().getTime() > t * cacheReleaseRate) {
-                        cache.remove(kv.getKey());
+                    long t = getPerMethodValidnesMilis(s, kv.getKey().getMethodName(), cache.getId().getHost());
+                    if (now.getTime() - kv.getValue().getDateCreated().getTime() > t * s.cacheReleaseRate) {
+                        cache.remove(kv.getKey(), kv.getValue());
                     }
                 }
             }
         }
     }
 
-    private synchronized void apply() {
-        String configRefreshRateMinutesS = propRaw.getProperty(RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES);
-        String cacheRefreshRateMinutesS = propRaw.getProperty(RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES);
-        String cacheReleaseS = propRaw.getProperty(RemoteRequestCacheConfigKeys.CACHE_RELEASE_TIMEOUT_MULTIPLIER);
-        String denyListedUrlsListS = propRaw.getProperty(RemoteRequestCacheConfigKeys.BLACK_LISTED_URLS_LIST);
-        if (configRefreshRateMinutesS != null) {
-            try {
-                configRefreshRateMinutes = Long.parseLong(configRefreshRateMinutesS);
-            } catch (Exception ex) {
-                LOG.warn("Failed to read or apply custom value  of (" + configRefreshRateMinutesS + ") for " + RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES + "", ex);
-            }
-        } else {
-            configRefreshRateMinutes = CONFIG_DEFAULT;
+    /**
+     * Loads records saved before restart. Runs only once, on background thread, so startup is not delayed. Records
+     * obtained meanwhile are newer, and are not replaced.
+     */
+    private void restoreOnce() {
+        final Settings s = settings;
+        if (store == null || !s.persistent || !restored.compareAndSet(false, true)) {
+            return;
         }
-        if (cacheRefreshRateMinutesS != null) {
-            try {
-                cacheRefreshRateMinutes = Long.parseLong(cacheRefreshRateMinutesS);
-            } catch (Exception ex) {
-                LOG.warn("Failed to read or apply custom value  of (" + cacheRefreshRateMinutesS + ") for " + RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES, ex);
-            }
-        } else {
-            if (config != null && !config.exists()) {
-                cacheRefreshRateMinutes = 0;
-            } else {
-                cacheRefreshRateMinutes = CACHE_DEFAULT;
-            }
+        try {
+            long started = System.currentTimeMillis();
+            int loaded = store.load(
+                    (host, methodName, dateCreated) -> isWorthKeeping(s, host, methodName, dateCreated),
+                    (u, params, dateCreated, result) -> {
+                        if (ensure(u).restore(result, params, new Date(dateCreated))) {
+                            restoredCount.incrementAndGet();
+                        }
+                    });
+            LOG.info("Loaded " + loaded + " cached records from " + store.getFile().getAbsolutePath() + " in " + (System.currentTimeMillis() - started) + "ms");
+            evictGlobally(toBytes(s.cacheMaxMegabytes));
+        } catch (Exception ex) {
+            LOG.warn("Failed to load cache from " + store.getFile().getAbsolutePath() + ", starting empty", ex);
         }
-        if (cacheReleaseS != null) {
-            try {
-                cacheReleaseRate = Long.parseLong(cacheReleaseS);
-            } catch (Exception ex) {
-                LOG.warn("Failed to read or apply custom value  of (" + cacheReleaseS + ") for " + RemoteRequestCacheConfigKeys.CACHE_RELEASE_TIMEOUT_MULTIPLIER, ex);
-            }
-        } else {
-            cacheReleaseRate = CACHE_DEFAULT;
+    }
+
+    /**
+     * Saves records, if they changed since last save. Nothing is saved before saved records were loaded, so they are
+     * not overwritten.
+     */
+    private void persist() throws IOException {
+        final Settings s = settings;
+        if (store == null || !s.persistent || !restored.get() || !dirty.getAndSet(false)) {
+            return;
         }
-        if (denyListedUrlsListS != null && denyListedUrlsListS.trim().length() > 0) {
-            try {
-                denyListedUrlsList = Arrays.stream(denyListedUrlsListS.split("\\s+")).map(Pattern::compile).collect(Collectors.toList());
-            } catch (Exception ex) {
-                LOG.warn("Failed to read or apply custom value  of (" + configRefreshRateMinutesS + ") for " + RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES + "", ex);
-            }
-        } else {
-            denyListedUrlsList = new ArrayList<>();
+        try {
+            savedCount.set(store.save(cache, (host, methodName, dateCreated) -> isWorthKeeping(s, host, methodName, dateCreated)));
+        } catch (IOException | RuntimeException ex) {
+            dirty.set(true);
+            throw ex;
         }
+    }
+
+    /**
+     * @return false for records of disabled methods and records which would be released anyway
+     */
+    private boolean isWorthKeeping(Settings s, String host, String methodName, long dateCreated) {
+        long ttl = getPerMethodValidnesMilis(s, methodName, host);
+        if (ttl == 0) {
+            return false;
+        }
+        return s.cacheReleaseRate <= 0 || new Date().getTime() - dateCreated <= ttl * s.cacheReleaseRate;
+    }
+
+    private synchronized void apply() {
+        settings = new Settings(propRaw, config != null && !config.exists(), settings);
         if ("true".equals(propRaw.getProperty(RemoteRequestCacheConfigKeys.CACHE_CLEAN_COMMAND))) {
             cache.clear();
         }
@@ -211,29 +377,112 @@ public class RemoteRequestsCache {
         setLoaded(true);
     }
 
+    /**
+     * Parsed configuration. It is never changed, new configuration is applied by replacing whole instance, so
+     * lookups read consistent values without locking.
+     */
+    private static final class Settings {
+        private final Properties propRaw;
+        private final long configRefreshRateMinutes;
+        private final long cacheRefreshRateMinutes;
+        private final long cacheReleaseRate;
+        private final long cacheMaxStalenessMinutes;
+        private final long cacheRefreshAheadPercent;
+        private final long cacheMaxEntriesPerUrl;
+        private final long cacheMaxMegabytesPerUrl;
+        private final long cacheMaxMegabytes;
+        private final List<Pattern> denyListedUrlsList;
+        private final boolean persistent;
+
+        /**
+         * @param previous values of invalid keys are kept from previous configuration, if any
+         */
+        private Settings(Properties propRaw, boolean configMissing, Settings previous) {
+            this.propRaw = propRaw;
+            this.configRefreshRateMinutes = parse(propRaw, RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES,
+                    CONFIG_DEFAULT, previous == null ? CONFIG_DEFAULT : previous.configRefreshRateMinutes);
+            final long cacheDefault = configMissing ? 0 : CACHE_DEFAULT;
+            this.cacheRefreshRateMinutes = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES,
+                    cacheDefault, previous == null ? CACHE_DEFAULT : previous.cacheRefreshRateMinutes);
+            this.cacheReleaseRate = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_RELEASE_TIMEOUT_MULTIPLIER,
+                    CACHE_DEFAULT, previous == null ? RELEASE_DEFAULT : previous.cacheReleaseRate);
+            this.cacheMaxStalenessMinutes = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_MAX_STALENESS_MINUTES, 0, 0);
+            this.cacheRefreshAheadPercent = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_REFRESH_AHEAD_PERCENT, 0, 0);
+            this.cacheMaxEntriesPerUrl = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_MAX_ENTRIES_PER_URL, 0, 0);
+            this.cacheMaxMegabytesPerUrl = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_MAX_MEGABYTES_PER_URL, 0, 0);
+            this.cacheMaxMegabytes = parse(propRaw, RemoteRequestCacheConfigKeys.CACHE_MAX_MEGABYTES,
+                    MAX_MEGABYTES_DEFAULT, MAX_MEGABYTES_DEFAULT);
+            String denyListedUrlsListS = propRaw.getProperty(RemoteRequestCacheConfigKeys.BLACK_LISTED_URLS_LIST);
+            List<Pattern> denyList = previous == null ? Collections.emptyList() : previous.denyListedUrlsList;
+            if (denyListedUrlsListS != null && denyListedUrlsListS.trim().length() > 0) {
+                try {
+                    denyList = Collections.unmodifiableList(Arrays.stream(denyListedUrlsListS.split("\\s+")).map(Pattern::compile).collect(Collectors.toList()));
+                } catch (Exception ex) {
+                    LOG.warn("Failed to read or apply custom value  of (" + denyListedUrlsListS + ") for " + RemoteRequestCacheConfigKeys.BLACK_LISTED_URLS_LIST + "", ex);
+                }
+            } else {
+                denyList = Collections.emptyList();
+            }
+            this.denyListedUrlsList = denyList;
+            this.persistent = "true".equals(propRaw.getProperty(RemoteRequestCacheConfigKeys.CACHE_PERSISTENT));
+        }
+
+        private static long parse(Properties propRaw, String key, long defaultValue, long invalidValue) {
+            String value = propRaw.getProperty(key);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (Exception ex) {
+                LOG.warn("Failed to read or apply custom value  of (" + value + ") for " + key, ex);
+                return invalidValue;
+            }
+        }
+    }
+
     @SuppressFBWarnings(value = "REC_CATCH_EXCEPTION", justification = "We really do not wont to kill main thread")
-    synchronized void dump(File dumpFile) {
+    void dump(File dumpFile) {
+        final Settings s = settings;
         try {
             try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dumpFile), "utf-8"))) {
                 bw.write(this.getClass().getName() + " dump at " + new Date().toString());
                 bw.newLine();
                 bw.write("  config: " + config);
                 bw.newLine();
-                bw.write("  configRefreshRateMinutes: " + configRefreshRateMinutes);
+                bw.write("  configRefreshRateMinutes: " + s.configRefreshRateMinutes);
+                bw.newLine();
+                bw.write("  cacheRefreshRateMinutes: " + s.cacheRefreshRateMinutes);
+                bw.newLine();
+                bw.write("  cacheReleaseRate: " + s.cacheReleaseRate);
+                bw.newLine();
+                bw.write("  cacheMaxStalenessMinutes: " + s.cacheMaxStalenessMinutes);
+                bw.newLine();
+                bw.write("  cacheRefreshAheadPercent: " + s.cacheRefreshAheadPercent);
+                bw.newLine();
+                bw.write("  staleServed: " + staleServed.get() + ", refreshedAhead: " + refreshedAhead.get()
+                        + ", refreshes: " + refreshes.get() + ", refreshFailures: " + refreshFailures.get()
+                        + ", refreshing: " + refreshing.get());
+                bw.newLine();
+                bw.write("  coalesced: " + coalesced.get() + ", inFlight: " + inFlight.size());
                 bw.newLine();
-                bw.write("  cacheRefreshRateMinutes: " + cacheRefreshRateMinutes);
+                bw.write("  cacheMaxEntriesPerUrl: " + s.cacheMaxEntriesPerUrl + ", cacheMaxMegabytesPerUrl: " + s.cacheMaxMegabytesPerUrl
+                        + ", cacheMaxMegabytes: " + s.cacheMaxMegabytes);
                 bw.newLine();
-                bw.write("  cacheReleaseRate: " + cacheReleaseRate);
+                bw.write("  estimated bytes: " + getBytes() + ", global evictions: " + globalEvictions.get());
+                bw.newLine();
+                bw.write("  persistent: " + s.persistent + ", store: " + (store == null ? null : store.getFile())
+                        + ", restored: " + restoredCount.get() + ", saved: " + savedCount.get());
                 bw.newLine();
                 bw.write("  originalProvider: " + originalProvider.getClass().getName());
                 bw.newLine();
-                bw.write("  denyListedUrlsList: " + denyListedUrlsList.stream().map(Pattern::pattern).collect(Collectors.joining(",")));
+                bw.write("  denyListedUrlsList: " + s.denyListedUrlsList.stream().map(Pattern::pattern).collect(Collectors.joining(",")));
                 bw.newLine();
                 bw.write("  loaded: " + isLoaded());
                 bw.newLine();
                 bw.write("  propRaw: ");
                 bw.newLine();
-                Set<Map.Entry<Object, Object>> raws = propRaw.entrySet();
+                Set<Map.Entry<Object, Object>> raws = s.propRaw.entrySet();
                 for (Map.Entry<Object, Object> raw : raws) {
                     bw.write("    " + raw.getKey() + "=" + raw.getValue());
                     bw.newLine();
@@ -257,46 +506,98 @@ public class RemoteRequestsCache {
     public RemoteRequestsCache(final File config, OriginalObjectProvider originalObjectProvider) {
         this.config = config;
         this.originalProvider = originalObjectProvider;
+        this.store = config == null ? null : new PersistentCacheStore(new File(config.getAbsolutePath() + ".store"));
+        this.refresher = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE), runnable -> {
+            Thread refreshThread = new Thread(runnable, "expensiveobjectscacheRemoteRequestsCacheRefresh");
+            refreshThread.setDaemon(true);
+            return refreshThread;
+        });
+        this.refresher.allowCoreThreadTimeOut(true);
         ConfigRefresh r = new ConfigRefresh();
         r.read();
-        LOG.info("Cache started - " + RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES + " is " + cacheRefreshRateMinutes + " (0==disabled). Set config is: " + getConfigString());
+        LOG.info("Cache started - " + RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES + " is " + settings.cacheRefreshRateMinutes + " (0==disabled). Set config is: " + getConfigString());
         Thread t = new Thread(r, "expensiveobjectscacheRemoteRequestsCache");
         t.setDaemon(true);
         t.start();
     }
 
-    private synchronized String getConfigString() {
+    private String getConfigString() {
         if (config == null) {
             return "null";
         } else {
-            return config.getAbsolutePath() + "/" + config.exists() + " " + RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES + "=" + configRefreshRateMinutes;
+            return config.getAbsolutePath() + "/" + config.exists() + " " + RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES + "=" + settings.configRefreshRateMinutes;
         }
     }
 
 
     private SingleUrlResponseCache ensure(final URL u) {
         //we can not use URL as key, becasue it includes resolved IP in hash. That can differ in reqests to same URL
-        SingleUrlResponseCache sux = cache.get(u.toExternalForm());
-        if (sux == null) {
-            sux = new SingleUrlResponseCache(u);
-            cache.put(u.toExternalForm(), sux);
-        }
-        return sux;
+        return cache.computeIfAbsent(u.toExternalForm(), key -> new SingleUrlResponseCache(u));
     }
 
     public void put(final Object result, final URL u, XmlRpcRequestParams params) {
-        ensure(u).put(result, params);
+        final Settings s = settings;
+        final SingleUrlResponseCache sux = ensure(u);
+        sux.put(result, params);
+        dirty.set(true);
+        sux.evict(s.cacheMaxEntriesPerUrl, toBytes(s.cacheMaxMegabytesPerUrl));
+        evictGlobally(toBytes(s.cacheMaxMegabytes));
+    }
+
+    private static long toBytes(long megabytes) {
+        return megabytes * 1024 * 1024;
+    }
+
+    long getBytes() {
+        long bytes = 0;
+        for (SingleUrlResponseCache sux : cache.values()) {
+            bytes += sux.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Once maxBytes is exceeded, removes least recently used records of all urls, until their estimated size fits
+     * to {@link SingleUrlResponseCache#lowWater(long)} of it, so all records are not listed and sorted again on
+     * every following put. The most recently used record is always kept. Zero means no limit. If other thread is already evicting, returns
+     * immediately, so the limit may be exceeded for a while.
+     */
+    private void evictGlobally(long maxBytes) {
+        if (maxBytes <= 0 || getBytes() <= maxBytes || !evicting.tryLock()) {
+            return;
+        }
+        try {
+            final List<SingleUrlResponseCache.EvictionCandidate> byAccess = new ArrayList<>();
+            long bytes = 0;
+            for (SingleUrlResponseCache sux : cache.values()) {
+                bytes += sux.getBytes();
+                sux.addEvictionCandidates(byAccess);
+            }
+            byAccess.sort(SingleUrlResponseCache.EvictionCandidate.BY_ACCESS);
+            final long lowBytes = SingleUrlResponseCache.lowWater(maxBytes);
+            for (int i = 0; i < byAccess.size() - 1 && bytes > lowBytes; i++) {
+                final long freed = byAccess.get(i).evict();
+                if (freed > 0) {
+                    bytes -= freed;
+                    globalEvictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
     }
 
     public void remove(final URL u, XmlRpcRequestParams params) {
         ensure(u).remove(params);
     }
 
-    private synchronized Object get(final URL u, XmlRpcRequestParams params) {
-        if (cacheRefreshRateMinutes == 0) {
+    private Object get(final URL u, XmlRpcRequestParams params) {
+        final Settings s = settings;
+        if (s.cacheRefreshRateMinutes == 0) {
             return null;
         }
-        if (isDenylisted(u)) {
+        if (isDenylisted(s, u)) {
             return null;
         }
         SingleUrlResponseCache cached = cache.get(u.toExternalForm());
@@ -307,16 +608,33 @@ public class RemoteRequestsCache {
         if (cachedResult == null) {
             return null;
         } else {
-            Boolean validity = isValid(cachedResult, params.getMethodName(), u.getHost());
+            final long ttl = getPerMethodValidnesMilis(s, params.getMethodName(), u.getHost());
+            Boolean validity = isValid(cachedResult, ttl);
             if (validity == null) {
                 return null; //disbaled by global or by method
             }
+            final long age = new Date().getTime() - cachedResult.getDateCreated().getTime();
             if (validity) {
+                cachedResult.hit();
+                if (s.cacheMaxStalenessMinutes > 0 && s.cacheRefreshAheadPercent > 0 && cachedResult.getHits() > 1
+                        && age > ttl - ttl * s.cacheRefreshAheadPercent / 100) {
+                    //hot record, refresh it before it expires
+                    if (refreshInBackground(u, params)) {
+                        refreshedAhead.incrementAndGet();
+                    }
+                }
                 return cachedResult.getResult();
+            } else if (s.cacheMaxStalenessMinutes > 0) {
+                if (age - ttl < toUnits(s.cacheMaxStalenessMinutes)) {
+                    //stale while revalidate
+                    refreshInBackground(u, params);
+                    staleServed.incrementAndGet();
+                    return cachedResult.getResult();
+                }
+                return null; //too old to be served, caller must wait for new one
             } else {
                 //if the  objkect is already being replaced, we do not check the time and return it as valid, as we know, it will already be refreshed
-                if (cachedResult.isNotBeingReplaced()) {
-                    cachedResult.flagBeingReplaced();
+                if (cachedResult.flagBeingReplaced()) {
                     return null;
                 } else {
                     return cachedResult.getResult();
@@ -325,9 +643,69 @@ public class RemoteRequestsCache {
         }
     }
 
-    private boolean isDenylisted(URL u) {
+    /**
+     * @return record if it is cached and still valid, null otherwise; unlike {@link #get(URL, XmlRpcRequestParams)}
+     * it has no side effects, so the record is neither counted as hit, nor refreshed, nor marked as being replaced
+     */
+    private Object peekValid(final URL u, XmlRpcRequestParams params) {
+        final Settings s = settings;
+        if (s.cacheRefreshRateMinutes == 0 || isDenylisted(s, u)) {
+            return null;
+        }
+        final SingleUrlResponseCache cached = cache.get(u.toExternalForm());
+        final SingleUrlResponseCache.ResultWithTimeStamp cachedResult = cached == null ? null : cached.peek(params);
+        if (cachedResult == null) {
+            return null;
+        }
+        final Boolean validity = isValid(cachedResult, getPerMethodValidnesMilis(s, params.getMethodName(), u.getHost()));
+        return Boolean.TRUE.equals(validity) ? cachedResult.getResult() : null;
+    }
+
+    /**
+     * Obtains new value of record by background thread. The refresh is registered as in flight request, so the record
+     * is refreshed only once at a time, and callers missing it meanwhile wait for the refresh instead of sending the
+     * same request. When too many records are waiting for refresh, the request is dropped and record is refreshed on
+     * some later read.
+     *
+     * @return true if refresh was scheduled
+     */
+    private boolean refreshInBackground(final URL u, final XmlRpcRequestParams params) {
+        final CacheKey key = new CacheKey(u, params);
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return false;
+        }
+        try {
+            refresher.execute(() -> {
+                refreshing.incrementAndGet();
+                try {
+                    Object answer = originalProvider.obtainOriginal(u.toExternalForm(), params);
+                    this.put(answer, u, params);
+                    refreshes.incrementAndGet();
+                    mine.complete(answer);
+                } catch (Throwable ex) {
+                    refreshFailures.incrementAndGet();
+                    LOG.warn("Background refresh failed, keeping old value: " + ex.toString() + "[" + XmlRpcRequestParams.toNiceString(params) + "]");
+                    mine.completeExceptionally(ex);
+                    if (ex instanceof Error) {
+                        throw (Error) ex;
+                    }
+                } finally {
+                    inFlight.remove(key, mine);
+                    refreshing.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(ex);
+            return false;
+        }
+    }
+
+    private static boolean isDenylisted(Settings s, URL u) {
         String url = u.toExternalForm();
-        for (Pattern p : denyListedUrlsList) {
+        for (Pattern p : s.denyListedUrlsList) {
             if (p.matcher(url).matches()) {
                 return true;
             }
@@ -335,15 +713,52 @@ public class RemoteRequestsCache {
         return false;
     }
 
-    protected long getDefaultValidnesMilis() {
+    /**
+     * Identity of record - url (by its external form, see {@link #ensure(URL)}) and params.
+     */
+    private static final class CacheKey {
+        private final String url;
+        private final XmlRpcRequestParams params;
+
+        private CacheKey(URL u, XmlRpcRequestParams params) {
+            this.url = u.toExternalForm();
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return url.equals(that.url) && params.equals(that.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * url.hashCode() + params.hashCode();
+        }
+    }
+
+    /**
+     * @param cacheRefreshRateMinutes of settings the caller works with, so it does not mix two configurations
+     */
+    protected long getDefaultValidnesMilis(long cacheRefreshRateMinutes) {
         return toUnits(cacheRefreshRateMinutes);
     }
 
     long getPerMethodValidnesMilis(String methodName, String host) {
+        return getPerMethodValidnesMilis(settings, methodName, host);
+    }
+
+    private long getPerMethodValidnesMilis(Settings s, String methodName, String host) {
         // for method names:
         //See: hudson.plugins.scm.koji.Constants for methods
         //See: XmlRpcRequestParams getMethodName() vaues
-        String rawCustomTimePerMethodPerHost = propRaw.getProperty(methodFromUrl(methodName, host));
+        String rawCustomTimePerMethodPerHost = s.propRaw.getProperty(methodFromUrl(methodName, host));
         long customTimeoutPerMethod;
         if (rawCustomTimePerMethodPerHost != null) {
             try {
@@ -353,7 +768,7 @@ public class RemoteRequestsCache {
                 LOG.warn("Failed to read or apply custom method (" + methodFromUrl(methodName, host) + ") timeout (" + rawCustomTimePerMethodPerHost + ")", ex);
             }
         }
-        String rawCustomTimePerMethod = propRaw.getProperty(methodName);
+        String rawCustomTimePerMethod = s.propRaw.getProperty(methodName);
         if (rawCustomTimePerMethod != null) {
             try {
                 customTimeoutPerMethod = toUnits(Long.parseLong(rawCustomTimePerMethod));
@@ -362,7 +777,7 @@ public class RemoteRequestsCache {
                 LOG.warn("Failed to read or apply custom method (" + methodName + ") timeout (" + rawCustomTimePerMethod + ")", ex);
             }
         }
-        return getDefaultValidnesMilis();
+        return getDefaultValidnesMilis(s.cacheRefreshRateMinutes);
     }
 
     private String methodFromUrl(String methodName, String host) {
@@ -371,7 +786,11 @@ public class RemoteRequestsCache {
 
     @SuppressFBWarnings(value = "NP_BOOLEAN_RETURN_NULL", justification = "private single usage method")
     Boolean isValid(final SingleUrlResponseCache.ResultWithTimeStamp temptedResult, String methodName, String host) {
-        long timeForThisMethodOrDefault = getPerMethodValidnesMilis(methodName, host);
+        return isValid(temptedResult, getPerMethodValidnesMilis(methodName, host));
+    }
+
+    @SuppressFBWarnings(value = "NP_BOOLEAN_RETURN_NULL", justification = "private single usage method")
+    private static Boolean isValid(final SingleUrlResponseCache.ResultWithTimeStamp temptedResult, long timeForThisMethodOrDefault) {
         if (timeForThisMethodOrDefault == 0) {
             return null;
         } else {
@@ -9,12 +9,16 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import edu.umd.cs.findbugs.annotations.*;
 
@@ -22,7 +26,15 @@ public class SingleUrlResponseCache {
 
 
     private final URL id;
-    private final Map<XmlRpcRequestParams, ResultWithTimeStamp> cache = Collections.synchronizedMap(new HashMap<>());
+    private final Map<XmlRpcRequestParams, ResultWithTimeStamp> cache = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong evictions = new AtomicLong();
+    // only one thread evicts at a time, others do not wait for it
+    private final ReentrantLock evicting = new ReentrantLock();
+    // once a limit is exceeded, records are evicted down to this percent of it
+    static final int LOW_WATER_PERCENT = 90;
 
 
     public SingleUrlResponseCache(final URL u) {
@@ -30,15 +42,149 @@ public class SingleUrlResponseCache {
     }
 
     public ResultWithTimeStamp get(final XmlRpcRequestParams params) {
+        ResultWithTimeStamp result = cache.get(params);
+        if (result == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            result.touch();
+        }
+        return result;
+    }
+
+    /**
+     * As {@link #get(XmlRpcRequestParams)}, but neither counted nor marked as used.
+     */
+    ResultWithTimeStamp peek(final XmlRpcRequestParams params) {
         return cache.get(params);
     }
 
     public void put(final Object result, XmlRpcRequestParams params) {
-        cache.put(params, new ResultWithTimeStamp(result));
+        ResultWithTimeStamp added = new ResultWithTimeStamp(result);
+        ResultWithTimeStamp replaced = cache.put(params, added);
+        bytes.addAndGet(added.size - (replaced == null ? 0 : replaced.size));
+    }
+
+    /**
+     * Adds record loaded from disk, unless there is already newer one.
+     *
+     * @return true if the record was added
+     */
+    boolean restore(final Object result, XmlRpcRequestParams params, Date dateCreated) {
+        ResultWithTimeStamp restored = new ResultWithTimeStamp(result, dateCreated);
+        if (cache.putIfAbsent(params, restored) == null) {
+            bytes.addAndGet(restored.size);
+            return true;
+        }
+        return false;
     }
 
     public void remove(XmlRpcRequestParams key) {
-        cache.remove(key);
+        ResultWithTimeStamp removed = cache.remove(key);
+        if (removed != null) {
+            bytes.addAndGet(-removed.size);
+        }
+    }
+
+    /**
+     * Removes the record only if it was not replaced meanwhile.
+     *
+     * @return true if the record was removed
+     */
+    boolean remove(XmlRpcRequestParams key, ResultWithTimeStamp value) {
+        if (cache.remove(key, value)) {
+            bytes.addAndGet(-value.size);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Once maxEntries or maxBytes is exceeded, removes least recently used records, until both number and estimated
+     * size of the rest are at their {@link #lowWater(long)}, so the records are not listed and sorted again on every
+     * following put. The most recently used record is always kept. Zero means no limit. If other thread is already
+     * evicting, returns immediately, so the limits may be exceeded for a while.
+     */
+    public void evict(long maxEntries, long maxBytes) {
+        if (!isOver(maxEntries, maxBytes) || !evicting.tryLock()) {
+            return;
+        }
+        try {
+            final long lowEntries = lowWater(maxEntries);
+            final long lowBytes = lowWater(maxBytes);
+            List<EvictionCandidate> byAccess = new ArrayList<>(cache.size());
+            addEvictionCandidates(byAccess);
+            byAccess.sort(EvictionCandidate.BY_ACCESS);
+            for (EvictionCandidate eldest : byAccess) {
+                if (cache.size() <= 1 || !isOver(lowEntries, lowBytes)) {
+                    break;
+                }
+                eldest.evict();
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    /**
+     * @return {@link #LOW_WATER_PERCENT} of the limit, rounded up, so very small limits are kept exactly
+     */
+    static long lowWater(long limit) {
+        return limit - limit * (100 - LOW_WATER_PERCENT) / 100;
+    }
+
+    private boolean isOver(long maxEntries, long maxBytes) {
+        return (maxEntries > 0 && cache.size() > maxEntries) || (maxBytes > 0 && bytes.get() > maxBytes);
+    }
+
+    void addEvictionCandidates(List<EvictionCandidate> candidates) {
+        for (Map.Entry<XmlRpcRequestParams, ResultWithTimeStamp> entry : cache.entrySet()) {
+            candidates.add(new EvictionCandidate(this, entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Record with time of its last access at the time it was listed, so the candidates can be sorted while the
+     * records are still being read.
+     */
+    static final class EvictionCandidate {
+
+        static final Comparator<EvictionCandidate> BY_ACCESS = Comparator.comparingLong(c -> c.lastAccess);
+
+        private final SingleUrlResponseCache owner;
+        private final XmlRpcRequestParams key;
+        private final ResultWithTimeStamp value;
+        private final long lastAccess;
+
+        private EvictionCandidate(SingleUrlResponseCache owner, XmlRpcRequestParams key, ResultWithTimeStamp value) {
+            this.owner = owner;
+            this.key = key;
+            this.value = value;
+            this.lastAccess = value.lastAccess;
+        }
+
+        /**
+         * @return estimated size of removed record, 0 if it was already removed or replaced
+         */
+        long evict() {
+            if (owner.remove(key, value)) {
+                owner.evictions.incrementAndGet();
+                return value.size;
+            }
+            return 0;
+        }
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
     }
 
     public URL getId() {
@@ -66,8 +212,10 @@ public class SingleUrlResponseCache {
         WRAPPER_TYPE_MAP.put(String.class, String.class);
     }
 
-    public synchronized void dump(String preffix, BufferedWriter bw, RemoteRequestsCache validator) throws IOException {
-        List<Map.Entry<XmlRpcRequestParams, ResultWithTimeStamp>> entries = new ArrayList(cache.entrySet());
+    public void dump(String preffix, BufferedWriter bw, RemoteRequestsCache validator) throws IOException {
+        bw.write(preffix + "entries: " + cache.size() + ", estimated bytes: " + bytes.get() + ", hits: " + hits.sum() + ", misses: " + misses.sum() + ", evictions: " + evictions.get());
+        bw.newLine();
+        List<Map.Entry<XmlRpcRequestParams, ResultWithTimeStamp>> entries = getContent();
         entries.sort((o1, o2) -> o1.getKey().getMethodName().compareTo(o2.getKey().getMethodName()));
         for (Map.Entry<XmlRpcRequestParams, ResultWithTimeStamp> entry : entries) {
             bw.write(preffix + XmlRpcRequestParams.toNiceString(entry.getKey()) + ": ");
@@ -76,6 +224,10 @@ public class SingleUrlResponseCache {
             bw.newLine();
             bw.write(preffix + "  notBeingRepalced: " + entry.getValue().notBeingRepalced);
             bw.newLine();
+            bw.write(preffix + "  hits: " + entry.getValue().hits);
+            bw.newLine();
+            bw.write(preffix + "  estimated bytes: " + entry.getValue().size);
+            bw.newLine();
             bw.write(preffix + "  validity: " + validator.isValid(entry.getValue(), entry.getKey().getMethodName(), id.getHost()));
             bw.newLine();
             long ttl = validator.getPerMethodValidnesMilis(entry.getKey().getMethodName(), id.getHost());
@@ -103,11 +255,24 @@ public class SingleUrlResponseCache {
 
         private final Date dateCreated;
         private final Object result;
-        private boolean notBeingRepalced = true;
+        private volatile boolean notBeingRepalced = true;
+        private volatile int hits;
+        private volatile long lastAccess;
+        private final long size;
 
         public ResultWithTimeStamp(final Object result) {
-            this.dateCreated = new Date();
+            this(result, new Date());
+        }
+
+        ResultWithTimeStamp(final Object result, final Date dateCreated) {
+            this.dateCreated = dateCreated;
             this.result = result;
+            this.lastAccess = System.nanoTime();
+            this.size = estimateSize(result);
+        }
+
+        private void touch() {
+            lastAccess = System.nanoTime();
         }
 
         public Date getDateCreated() {
@@ -122,8 +287,22 @@ public class SingleUrlResponseCache {
             return notBeingRepalced;
         }
 
-        public void flagBeingReplaced() {
+        /**
+         * @return true if this call flagged the record, false if it was already being replaced
+         */
+        public synchronized boolean flagBeingReplaced() {
+            boolean flagged = notBeingRepalced;
             this.notBeingRepalced = false;
+            return flagged;
+        }
+
+        public int getHits() {
+            return hits;
+        }
+
+        @SuppressFBWarnings(value = "VO_VOLATILE_INCREMENT", justification = "approximate count is enough")
+        public void hit() {
+            hits++;
         }
 
         public void dump(String preffix, BufferedWriter bw) throws IOException {
@@ -229,7 +408,59 @@ public class SingleUrlResponseCache {
         }
     }
 
-    Set<Map.Entry<XmlRpcRequestParams, ResultWithTimeStamp>> getContent() {
-        return cache.entrySet();
+    /**
+     * @return copy of records, so they can be removed while iterating
+     */
+    List<Map.Entry<XmlRpcRequestParams, ResultWithTimeStamp>> getContent() {
+        return new ArrayList<>(cache.entrySet());
+    }
+
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE = 8;
+    private static final int MAP_ENTRY = 32;
+
+    /**
+     * Rough estimate of memory taken by result of xmlrpc call, walks the same types as {@link ResultWithTimeStamp#dump}.
+     */
+    static long estimateSize(Object o) {
+        if (o == null) {
+            return 0;
+        }
+        if (o instanceof String) {
+            return OBJECT_HEADER + 24 + 2L * ((String) o).length();
+        }
+        if (o instanceof Map) {
+            long size = OBJECT_HEADER + 48;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) o).entrySet()) {
+                size += MAP_ENTRY + estimateSize(e.getKey()) + estimateSize(e.getValue());
+            }
+            return size;
+        }
+        if (o instanceof Object[]) {
+            long size = OBJECT_HEADER + (long) REFERENCE * ((Object[]) o).length;
+            for (Object e : (Object[]) o) {
+                size += estimateSize(e);
+            }
+            return size;
+        }
+        if (o.getClass().isArray()) {
+            Class<?> component = o.getClass().getComponentType();
+            long item = component == long.class || component == double.class ? 8
+                    : component == int.class || component == float.class ? 4
+                    : component == short.class || component == char.class ? 2 : 1;
+            return OBJECT_HEADER + item * Array.getLength(o);
+        }
+        if (o instanceof Iterable) {
+            long size = OBJECT_HEADER + 32;
+            for (Object e : (Iterable<?>) o) {
+                size += REFERENCE + estimateSize(e);
+            }
+            return size;
+        }
+        if (WRAPPER_TYPE_MAP.containsKey(o.getClass())) {
+            return OBJECT_HEADER + 8;
+        }
+        // model objects, like decoded builds, hold a few strings
+        return OBJECT_HEADER + 256;
     }
 }
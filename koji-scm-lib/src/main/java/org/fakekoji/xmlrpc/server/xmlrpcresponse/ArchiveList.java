@@ -1,9 +1,11 @@
 package org.fakekoji.xmlrpc.server.xmlrpcresponse;
 
 import hudson.plugins.scm.koji.Constants;
+import hudson.plugins.scm.koji.model.RPM;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -11,10 +13,19 @@ import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.
 
 public class ArchiveList implements XmlRpcResponse<List<String>> {
 
+    // koji's enumeration of checksum types
+    private static final String[] CHECKSUM_TYPES = {"md5", "sha1", "sha256", "sha512"};
+
     private final List<String> archives;
+    private final Map<String, Map<String, Object>> details;
 
     public ArchiveList(List<String> archives) {
+        this(archives, Collections.emptyMap());
+    }
+
+    private ArchiveList(List<String> archives, Map<String, Map<String, Object>> details) {
         this.archives = archives;
+        this.details = details;
     }
 
     @Override
@@ -31,15 +42,27 @@ public class ArchiveList implements XmlRpcResponse<List<String>> {
         return archives;
     }
 
-    private static List<String> parseArchiveMaps(List<Map<String, Object>> maps) {
-        if (maps == null) {
-            return Collections.emptyList();
+    /**
+     * Sets size and checksum of the archive, as known to koji, so the download can be verified.
+     */
+    public void describe(RPM archive) {
+        final Map<String, Object> map = details.get(archive.getFilename(""));
+        if (map == null) {
+            return;
         }
-        final List<String> archives = new ArrayList<>(maps.size());
-        for (Map<String, Object> map : maps) {
-            archives.add(parseArchiveMap(map));
+        archive.setSize(toLong(map.get(Constants.size)));
+        final Object checksum = map.get(Constants.checksum);
+        final Long type = toLong(map.get(Constants.checksum_type));
+        if (checksum instanceof String && type != null && type >= 0 && type < CHECKSUM_TYPES.length) {
+            archive.setChecksum(CHECKSUM_TYPES[type.intValue()], (String) checksum);
         }
-        return archives;
+    }
+
+    static Long toLong(Object o) {
+        if (o instanceof Number) {
+            return ((Number) o).longValue();
+        }
+        return null;
     }
 
     private static String parseArchiveMap(Map<String, Object> map) {
@@ -47,6 +70,17 @@ public class ArchiveList implements XmlRpcResponse<List<String>> {
     }
 
     public static ArchiveList create(Object object) {
-        return new ArchiveList(parseArchiveMaps(toMaps(object)));
+        final List<Map<String, Object>> maps = toMaps(object);
+        if (maps == null) {
+            return new ArchiveList(Collections.emptyList());
+        }
+        final List<String> archives = new ArrayList<>(maps.size());
+        final Map<String, Map<String, Object>> details = new HashMap<>(maps.size());
+        for (Map<String, Object> map : maps) {
+            final String filename = parseArchiveMap(map);
+            archives.add(filename);
+            details.put(filename, map);
+        }
+        return new ArchiveList(archives, details);
     }
 }
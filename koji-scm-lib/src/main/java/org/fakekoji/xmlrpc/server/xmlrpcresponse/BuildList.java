@@ -9,8 +9,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestUtils.toMaps;
-
 public class BuildList implements XmlRpcResponse<List<Build>> {
 
     private final List<Build> builds;
@@ -29,18 +27,7 @@ public class BuildList implements XmlRpcResponse<List<Build>> {
         return builds;
     }
 
-    private static List<Build> parseBuildMaps(List<Map<String, Object>> maps) {
-        if (maps == null) {
-            return Collections.emptyList();
-        }
-        final List<Build> builds = new ArrayList<>(maps.size());
-        for (Map<String, Object> map : maps) {
-            builds.add(parseBuildMap(map));
-        }
-        return builds;
-    }
-
-    private static Build parseBuildMap(Map<String, Object> map) {
+    public static Build parseBuildMap(Map<String, Object> map) {
         return new Build(
                 (Integer) map.get(Constants.build_id),
                 (String) map.get(Constants.name),
@@ -75,7 +62,23 @@ public class BuildList implements XmlRpcResponse<List<Build>> {
         return map;
     }
 
+    /**
+     * Accepts both generic answer (array of maps) and answer already decoded while parsed (array of {@link Build}).
+     * Each element is converted on its own, as struct without nvr is kept as map even by decoding parser.
+     */
     public static BuildList create(Object object) {
-        return new BuildList(parseBuildMaps(toMaps(object)));
+        final Object[] objects = (Object[]) object;
+        if (objects == null) {
+            return new BuildList(Collections.emptyList());
+        }
+        final List<Build> builds = new ArrayList<>(objects.length);
+        for (Object o : objects) {
+            if (o instanceof Build) {
+                builds.add((Build) o);
+            } else {
+                builds.add(parseBuildMap((Map<String, Object>) o));
+            }
+        }
+        return new BuildList(builds);
     }
 }
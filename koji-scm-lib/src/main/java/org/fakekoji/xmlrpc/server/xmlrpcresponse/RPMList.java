@@ -40,8 +40,12 @@ public class RPMList implements XmlRpcResponse<List<RPM>> {
         return rpms;
     }
 
+    /**
+     * Koji's payloadhash covers only payload of the RPM, not the whole file, so only size can be verified after
+     * download.
+     */
     private static RPM parseRpmMap(Map<String, Object> map) {
-        return new RPM(
+        final RPM rpm = new RPM(
                 (String) map.get(Constants.name),
                 (String) map.get(Constants.version),
                 (String) map.get(Constants.release),
@@ -49,6 +53,8 @@ public class RPMList implements XmlRpcResponse<List<RPM>> {
                 (String) map.get(Constants.arch),
                 (String) map.get(Constants.filename)
         );
+        rpm.setSize(ArchiveList.toLong(map.get(Constants.size)));
+        return rpm;
     }
 
     private List<Map<String, Object>> parseRpms() {
@@ -1,8 +1,12 @@
 package org.fakekoji.xmlrpc.server.expensiveobjectscache;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.ArrayList;
@@ -12,8 +16,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.BuildProvider;
+import hudson.plugins.scm.koji.model.RPM;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -119,7 +128,7 @@ public class RemoteRequestsCacheTest {
         DummyOriginalObjectProvider provider = new DummyOriginalObjectProvider();
         RemoteRequestsCache cache = new RemoteRequestsCache(null, provider) {
             @Override
-            protected long getDefaultValidnesMilis() {
+            protected long getDefaultValidnesMilis(long cacheRefreshRateMinutes) {
                 return 0;
             }
         };
@@ -230,7 +239,7 @@ public class RemoteRequestsCacheTest {
         DummyOriginalObjectProvider provider = new DummyOriginalObjectProvider();
         AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider) {
             @Override
-            protected long getDefaultValidnesMilis() {
+            protected long getDefaultValidnesMilis(long cacheRefreshRateMinutes) {
                 return necessarryTimeout[0];
             }
         };
@@ -325,7 +334,7 @@ public class RemoteRequestsCacheTest {
         DummyOriginalObjectProvider provider = new DummyOriginalObjectProvider();
         AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider) {
             @Override
-            protected long getDefaultValidnesMilis() {
+            protected long getDefaultValidnesMilis(long cacheRefreshRateMinutes) {
                 return necessarryTimeout[0];
             }
         };
@@ -755,9 +764,10 @@ public class RemoteRequestsCacheTest {
         l2.start();
         l1.join();
         l2.join();
-        //both attempted to get null fromdb, hard to say which was first
-        Assertions.assertTrue((1 == l1.getR()) ^ (1 == l2.getR()));
-        Assertions.assertTrue((2 == l1.getR()) ^ (2 == l2.getR()));
+        //both attempted to get null fromdb, the second one waited for answer of first one
+        Assertions.assertEquals(1, l1.getR());
+        Assertions.assertEquals(1, l2.getR());
+        Assertions.assertEquals(1, cache.getCoalescedCount());
         Thread.sleep(1000);//timeout the value
         l1 = new LongReturningThread(new DummyRequestparam("m1", new Object[]{"p1"}), cache);
         l2 = new LongReturningThread(new DummyRequestparam("m1", new Object[]{"p1"}), cache);
@@ -770,8 +780,8 @@ public class RemoteRequestsCacheTest {
         l1.join();
         l2.join();
         //both attempting cached value, first have to wait for new one, invalidating result, but second get old vlaue again
-        Assertions.assertEquals(3, l1.getR()); //new value
-        Assertions.assertTrue(2 == l2.getR() || 1 == l2.getR()); //no guarantee which result was added to db; cached value obtained anyway
+        Assertions.assertEquals(2, l1.getR()); //new value
+        Assertions.assertEquals(1, l2.getR()); //cached value obtained anyway
         dump(cache);
     }
 
@@ -910,9 +920,9 @@ public class RemoteRequestsCacheTest {
         l2.start();
         l1.join();
         l2.join();
-        //both attempted to get null fromdb, hard to say which was first
-        Assertions.assertTrue((1 == l1.getR()) ^ (1 == l2.getR()));
-        Assertions.assertTrue((2 == l1.getR()) ^ (2 == l2.getR()));
+        //both attempted to get null fromdb, the second one waited for answer of first one
+        Assertions.assertEquals(1, l1.getR());
+        Assertions.assertEquals(1, l2.getR());
         Thread.sleep(300);//timeout the value so much, it get actually errased from cache
         l1 = new LongReturningThread(new DummyRequestparam("m1", new Object[]{"p1"}), cache);
         l2 = new LongReturningThread(new DummyRequestparam("m1", new Object[]{"p1"}), cache);
@@ -925,8 +935,8 @@ public class RemoteRequestsCacheTest {
         l1.join();
         l2.join();
         //both are again trying value, which was removed from cache
-        Assertions.assertEquals(3, l1.getR()); //so both get new value
-        Assertions.assertEquals(4, l2.getR()); //so both get new value, compare with lazyRefreshWorks
+        Assertions.assertEquals(2, l1.getR()); //so both get new value
+        Assertions.assertEquals(2, l2.getR()); //so both get new value, shared with first one, compare with lazyRefreshWorks
         dump(cache);
     }
 
@@ -1093,5 +1103,361 @@ public class RemoteRequestsCacheTest {
 
     }
 
-}
+    @Test
+    public void obtainAllCachesEachRequest() {
+        final List<List<XmlRpcRequestParams>> batches = new ArrayList<>();
+        OriginalObjectProvider provider = new OriginalObjectProvider() {
+            @Override
+            public Object obtainOriginal(String url, XmlRpcRequestParams params) {
+                throw new RuntimeException("single calls not expected");
+            }
+
+            @Override
+            public List<Object> obtainOriginals(String url, List<XmlRpcRequestParams> params) {
+                batches.add(params);
+                List<Object> r = new ArrayList<>();
+                for (XmlRpcRequestParams param : params) {
+                    r.add(param.toXmlRpcParams()[0] + "-result");
+                }
+                return r;
+            }
+        };
+        RemoteRequestsCache cache = new RemoteRequestsCache(null, provider);
+        List<Object> r1 = cache.obtainAll("http://url:1/path", Arrays.asList(
+                new DummyRequestparam("m1", new Object[]{"p1"}),
+                new DummyRequestparam("m1", new Object[]{"p2"})));
+        Assertions.assertEquals(Arrays.asList("p1-result", "p2-result"), r1);
+        List<Object> r2 = cache.obtainAll("http://url:1/path", Arrays.asList(
+                new DummyRequestparam("m1", new Object[]{"p2"}),
+                new DummyRequestparam("m1", new Object[]{"p3"}),
+                new DummyRequestparam("m1", new Object[]{"p1"})));
+        Assertions.assertEquals(Arrays.asList("p2-result", "p3-result", "p1-result"), r2);
+        Assertions.assertEquals(2, batches.size());
+        Assertions.assertEquals(Collections.singletonList(new DummyRequestparam("m1", new Object[]{"p3"})), batches.get(1));
+        Assertions.assertEquals("p1-result", cache.obtain("http://url:1/path", new DummyRequestparam("m1", new Object[]{"p1"})));
+        Assertions.assertEquals(2, batches.size());
+    }
+
+    private static Properties staleWhileRevalidateProperties() {
+        Properties p = new Properties();
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES, "100");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_MAX_STALENESS_MINUTES, "100000");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_RELEASE_TIMEOUT_MULTIPLIER, "0");
+        return p;
+    }
+
+    @Test
+    public void staleWhileRevalidateWorks() throws InterruptedException {
+        DummyOriginalObjectProvider provider = new DummyOriginalObjectProvider();
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider) {
+            @Override
+            protected long toUnits(long time) {
+                return time;
+            }
+        };
+        cache.setProperties(staleWhileRevalidateProperties());
+        DummyRequestparam param = new DummyRequestparam("m1", new Object[]{"p1"});
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", param));
+        Thread.sleep(150);
+        //expired, but served, while refreshed in background
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", param));
+        long r = 1;
+        for (int i = 0; i < 100 && r == 1; i++) {
+            Thread.sleep(20);
+            r = (long) cache.obtain("http://url:1/path", param);
+        }
+        Assertions.assertEquals(2, r);
+        Assertions.assertEquals(2, provider.i.get());
+        dump(cache);
+    }
+
+    @Test
+    public void failedBackgroundRefreshKeepsOldValue() throws InterruptedException {
+        final AtomicLong attempts = new AtomicLong();
+        OriginalObjectProvider provider = (url, params) -> {
+            if (attempts.incrementAndGet() > 1) {
+                throw new RuntimeException("hub is down");
+            }
+            return "first";
+        };
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider) {
+            @Override
+            protected long toUnits(long time) {
+                return time;
+            }
+        };
+        cache.setProperties(staleWhileRevalidateProperties());
+        DummyRequestparam param = new DummyRequestparam("m1", new Object[]{"p1"});
+        Assertions.assertEquals("first", cache.obtain("http://url:1/path", param));
+        Thread.sleep(150);
+        for (int i = 0; i < 100 && attempts.get() < 3; i++) {
+            Assertions.assertEquals("first", cache.obtain("http://url:1/path", param));
+            Thread.sleep(20);
+        }
+        //each failed refresh is forgotten, so next read tries again
+        Assertions.assertTrue(attempts.get() >= 3);
+        dump(cache);
+    }
 
+    @Test
+    public void missDuringBackgroundRefreshWaitsForIt() throws Exception {
+        final AtomicLong calls = new AtomicLong();
+        final CountDownLatch release = new CountDownLatch(1);
+        OriginalObjectProvider provider = (url, params) -> {
+            long call = calls.incrementAndGet();
+            if (call > 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return call;
+        };
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider) {
+            @Override
+            protected long toUnits(long time) {
+                return time;
+            }
+        };
+        cache.setProperties(staleWhileRevalidateProperties());
+        DummyRequestparam param = new DummyRequestparam("m1", new Object[]{"p1"});
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", param));
+        Thread.sleep(150);
+        //expired, served, refresh is started and hangs
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", param));
+        for (int i = 0; i < 100 && calls.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        //record is gone meanwhile, so next caller misses it
+        cache.remove(new URL("http://url:1/path"), param);
+        LongReturningThread waiting = new LongReturningThread(param, cache);
+        waiting.start();
+        Thread.sleep(100);
+        Assertions.assertTrue(waiting.isAlive());
+        release.countDown();
+        waiting.join();
+        Assertions.assertEquals(2, waiting.getR());
+        Assertions.assertEquals(2, calls.get());
+        Assertions.assertEquals(1, cache.getCoalescedCount());
+        dump(cache);
+    }
+
+    @Test
+    public void concurrentMissesAreCoalesced() throws InterruptedException {
+        SlowOriginalObjectProvider provider = new SlowOriginalObjectProvider();
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider);
+        LongReturningThread[] threads = new LongReturningThread[20];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new LongReturningThread(new DummyRequestparam("m1", new Object[]{"p1"}), cache);
+            threads[i].start();
+        }
+        for (LongReturningThread thread : threads) {
+            thread.join();
+        }
+        for (LongReturningThread thread : threads) {
+            Assertions.assertEquals(1, thread.getR());
+        }
+        Assertions.assertEquals(1, provider.i.get());
+        Assertions.assertEquals(threads.length - 1, cache.getCoalescedCount());
+        dump(cache);
+    }
+
+    @Test
+    public void waitingCallersAreReleasedWhenProviderThrowsError() throws InterruptedException {
+        OriginalObjectProvider provider = (url, params) -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+            throw new NoClassDefFoundError("broken plugin");
+        };
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider);
+        DummyRequestparam param = new DummyRequestparam("m1", new Object[]{"p1"});
+        Throwable[] thrown = new Throwable[2];
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    cache.obtain("http://url:1/path", param);
+                } catch (Throwable t) {
+                    thrown[index] = t;
+                }
+            });
+            threads[i].start();
+            Thread.sleep(50);
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+            Assertions.assertFalse(thread.isAlive());
+        }
+        Assertions.assertTrue(thrown[0] instanceof NoClassDefFoundError);
+        Assertions.assertTrue(thrown[1].getCause() instanceof NoClassDefFoundError);
+        Assertions.assertEquals(1, cache.getCoalescedCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedRecordIsEvicted() {
+        DummyOriginalObjectProvider provider = new DummyOriginalObjectProvider();
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider);
+        Properties p = new Properties();
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES, "100");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_MAX_ENTRIES_PER_URL, "2");
+        cache.setProperties(p);
+        DummyRequestparam p1 = new DummyRequestparam("m1", new Object[]{"p1"});
+        DummyRequestparam p2 = new DummyRequestparam("m1", new Object[]{"p2"});
+        DummyRequestparam p3 = new DummyRequestparam("m1", new Object[]{"p3"});
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", p1));
+        Assertions.assertEquals(2L, cache.obtain("http://url:1/path", p2));
+        //p1 is now more recently used than p2
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", p1));
+        Assertions.assertEquals(3L, cache.obtain("http://url:1/path", p3));
+        Assertions.assertEquals(1L, cache.obtain("http://url:1/path", p1));
+        Assertions.assertEquals(3L, cache.obtain("http://url:1/path", p3));
+        Assertions.assertEquals(3, provider.i.get());
+        //p2 was evicted
+        Assertions.assertEquals(4L, cache.obtain("http://url:1/path", p2));
+        Assertions.assertEquals(4, provider.i.get());
+        dump(cache);
+    }
+
+    @Test
+    public void evictionGoesDownToLowWaterMark() {
+        DummyOriginalObjectProvider provider = new DummyOriginalObjectProvider();
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider);
+        Properties p = new Properties();
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES, "100");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_MAX_ENTRIES_PER_URL, "20");
+        cache.setProperties(p);
+        for (int i = 0; i <= 20; i++) {
+            cache.obtain("http://url:1/path", new DummyRequestparam("m1", new Object[]{"p" + i}));
+        }
+        Assertions.assertEquals(21, provider.i.get());
+        //over the limit of 20, so evicted down to 18 most recently used ones
+        for (int i = 3; i <= 20; i++) {
+            cache.obtain("http://url:1/path", new DummyRequestparam("m1", new Object[]{"p" + i}));
+        }
+        Assertions.assertEquals(21, provider.i.get());
+        cache.obtain("http://url:1/path", new DummyRequestparam("m1", new Object[]{"p2"}));
+        Assertions.assertEquals(22, provider.i.get());
+        dump(cache);
+    }
+
+    @Test
+    public void manyThreadsReadAndEvictConcurrently() throws InterruptedException {
+        OriginalObjectProvider provider = (url, params) -> params.toXmlRpcParams()[0] + "-result";
+        AccessibleRemoteRequestsCache cache = new AccessibleRemoteRequestsCache(null, provider);
+        Properties p = new Properties();
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES, "100");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_MAX_ENTRIES_PER_URL, "50");
+        cache.setProperties(p);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[64];
+        for (int i = 0; i < threads.length; i++) {
+            final int seed = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 1000; j++) {
+                        String param = "p" + ((seed + j) % 100);
+                        Object r = cache.obtain("http://url:" + (j % 2) + "/path", new DummyRequestparam("m1", new Object[]{param}));
+                        Assertions.assertEquals(param + "-result", r);
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(Collections.emptyList(), failures);
+        dump(cache);
+    }
+
+    @Test
+    public void recordsSurviveRestart() throws InterruptedException, IOException {
+        File f = File.createTempFile("cache", ".config");
+        File store = new File(f.getAbsolutePath() + ".store");
+        Properties p = new Properties();
+        p.setProperty(RemoteRequestCacheConfigKeys.CONFIG_REFRESH_RATE_MINUTES, "10");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_REFRESH_RATE_MINUTES, "100000");
+        p.setProperty(RemoteRequestCacheConfigKeys.CACHE_PERSISTENT, "true");
+        try (FileWriter fw = new FileWriter(f)) {
+            p.store(fw, null);
+        }
+        try {
+            DummyOriginalObjectProvider provider1 = new DummyOriginalObjectProvider();
+            AccessibleRemoteRequestsCache cache1 = new AccessibleRemoteRequestsCache(f, provider1) {
+                @Override
+                protected long toUnits(long time) {
+                    return time;
+                }
+            };
+            Assertions.assertEquals(1L, cache1.obtain("http://url:1/path", new DummyRequestparam("m1", new Object[]{"p1"})));
+            for (int i = 0; i < 500 && !store.exists(); i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(store.exists());
+            DummyOriginalObjectProvider provider2 = new DummyOriginalObjectProvider();
+            AccessibleRemoteRequestsCache cache2 = new AccessibleRemoteRequestsCache(f, provider2) {
+                @Override
+                protected long toUnits(long time) {
+                    return time;
+                }
+            };
+            for (int i = 0; i < 500 && cache2.getRestoredCount() == 0; i++) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(1, cache2.getRestoredCount());
+            Assertions.assertEquals(1L, cache2.obtain("http://url:1/path", new DummyRequestparam("m1", new Object[]{"p1"})));
+            Assertions.assertEquals(0, provider2.i.get());
+            dump(cache2);
+        } finally {
+            f.delete();
+            store.delete();
+        }
+    }
+
+    private static void writeStore(File store, Object result) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(store)))) {
+            oos.writeInt(1);
+            oos.writeBoolean(true);
+            oos.writeUTF("http://url:1/path");
+            oos.writeObject(new DummyRequestparam("m1", new Object[]{"p1", 1}));
+            oos.writeLong(System.currentTimeMillis());
+            oos.writeObject(result);
+            oos.writeBoolean(false);
+        }
+    }
+
+    @Test
+    public void storeReadsOnlyCachedClasses() throws Exception {
+        File store = File.createTempFile("cache", ".store");
+        try {
+            List<Object> results = new ArrayList<>();
+            Build build = new Build(1, "b", "1", "1", "b-1-1", "now",
+                    Arrays.asList(new RPM("b", "1", "1", "b-1-1", "x64", "b-1-1.x64.rpm")),
+                    new HashSet<>(Arrays.asList("tag")), new BuildProvider("http://top", "http://download"), false);
+            Map<String, Object> raw = new HashMap<>();
+            raw.put("id", 1);
+            raw.put("rpms", new Object[]{new byte[]{1}, 2L, 3.0});
+            writeStore(store, new Object[]{build, raw});
+            Assertions.assertEquals(1, new PersistentCacheStore(store).load((host, method, created) -> true,
+                    (url, params, created, result) -> results.add(result)));
+            Assertions.assertEquals("b-1-1", ((Build) ((Object[]) results.get(0))[0]).getNvr());
+
+            results.clear();
+            writeStore(store, new AtomicLong(1));
+            Assertions.assertThrows(InvalidClassException.class, () -> new PersistentCacheStore(store).load((host, method, created) -> true,
+                    (url, params, created, result) -> results.add(result)));
+            Assertions.assertEquals(Collections.emptyList(), results);
+        } finally {
+            store.delete();
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.KojiSCM;
+import hudson.plugins.scm.koji.model.RPM;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.xml.bind.DatatypeConverter;
+
+/**
+ * Directory shared by all jobs on one agent, keeping downloaded files so the same file of the same build is
+ * downloaded only once. Each file has its own entry, directory {@code nvr/checksum/filename}, where checksum is the
+ * one known to koji, or size if koji knows just that. The entry holds the file, its md5 and a lock file. Cached file
+ * is read only and served to workspace by copy, so nothing done in workspace can change it; size and md5 of the
+ * file are checked while it is copied, and damaged entry is downloaded again. Entry is locked while it is filled or
+ * served, by lock within this jvm and by file lock against other processes, so concurrent jobs wait for the first
+ * one to download the file instead of downloading it again. Least recently served entries are deleted once all of
+ * them are bigger than the limit.
+ */
+class ArtifactCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KojiSCM.class);
+    private static final String FILE = "file";
+    private static final String MD5 = "md5";
+    private static final String LOCK = "lock";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int LOCK_ATTEMPTS = 10;
+    // guarded by itself; holds only entries some thread uses, so it does not grow with the cache
+    private static final Map<String, EntryLock> ENTRY_LOCKS = new HashMap<>();
+    private static final ReentrantLock EVICTION_LOCK = new ReentrantLock();
+
+    private final File dir;
+    private final long maxBytes;
+
+    ArtifactCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return cache set up by system properties of this jvm, null if there is none
+     */
+    static ArtifactCache fromProperties() {
+        final String dir = System.getProperty(KojiBuildDownloader.class.getName() + ".cacheDir");
+        if (dir == null || dir.trim().isEmpty()) {
+            return null;
+        }
+        final long megabytes = Long.getLong(KojiBuildDownloader.class.getName() + ".cacheMaxMegabytes", 10 * 1024);
+        return new ArtifactCache(new File(dir.trim()), megabytes * 1024 * 1024);
+    }
+
+    interface Fetch {
+
+        /**
+         * Downloads the file to target and sets its md5 to the rpm.
+         *
+         * @return false if there is no such file on server
+         */
+        boolean fetch() throws IOException, NoSuchAlgorithmException;
+    }
+
+    enum Outcome {
+        SERVED, FETCHED, NOT_FOUND
+    }
+
+    /**
+     * Serves the file from cache into target, or fetches it and puts it into cache. Md5 of the file is set to the
+     * rpm in both cases.
+     */
+    Outcome obtain(RPM rpm, File target, Fetch fetch) throws IOException, NoSuchAlgorithmException {
+        final File entry = entryDir(rpm, target.getName());
+        final File cached = new File(entry, FILE);
+        final File md5 = new File(entry, MD5);
+        // file lock is held by jvm, so it has to be guarded against other threads of this jvm too
+        final EntryLock lock = EntryLock.acquire(entry, true);
+        try {
+            final FileLock fileLock = lockEntry(entry, true);
+            boolean filled = false;
+            try {
+                if (cached.isFile() && md5.isFile()) {
+                    final String hashSum = new String(Files.readAllBytes(md5.toPath()), StandardCharsets.UTF_8).trim();
+                    if ((rpm.getSize() == null || rpm.getSize() == cached.length()) && copy(cached, target, hashSum)) {
+                        rpm.setHashSum(hashSum);
+                        // last modification of md5 marks last use, for eviction
+                        md5.setLastModified(System.currentTimeMillis());
+                        filled = true;
+                        return Outcome.SERVED;
+                    }
+                }
+                // nothing cached yet, or the file was damaged since it was cached
+                deleteFiles(entry);
+                // target may be hard link into cache made by older version, which must not be written through
+                Files.deleteIfExists(target.toPath());
+                if (!fetch.fetch()) {
+                    return Outcome.NOT_FOUND;
+                }
+                if (copy(target, cached, rpm.getHashSum())) {
+                    cached.setReadOnly();
+                    Files.write(md5.toPath(), rpm.getHashSum().getBytes(StandardCharsets.UTF_8));
+                    filled = true;
+                }
+            } finally {
+                if (filled) {
+                    fileLock.channel().close();
+                } else {
+                    // file missing on server, or failed download, must not leave empty entry behind
+                    deleteQuietly(entry, fileLock);
+                }
+            }
+        } finally {
+            lock.release();
+        }
+        try {
+            evict();
+        } catch (IOException | RuntimeException ex) {
+            // the file is already in workspace, cache just stays bigger until next eviction
+            LOG.warn("Failed to evict artifact cache " + dir.getAbsolutePath(), ex);
+        }
+        return Outcome.FETCHED;
+    }
+
+    private File entryDir(RPM rpm, String filename) {
+        final String version;
+        if (rpm.getChecksum() != null) {
+            version = rpm.getChecksumType() + "-" + rpm.getChecksum();
+        } else if (rpm.getSize() != null) {
+            version = "size-" + rpm.getSize();
+        } else {
+            version = "unverified";
+        }
+        return new File(new File(new File(dir, safe(rpm.getNvr())), safe(version)), safe(filename));
+    }
+
+    private static String safe(String name) {
+        final String safe = String.valueOf(name).replaceAll("[^A-Za-z0-9._+~-]", "_");
+        return safe.startsWith(".") ? "_" + safe : safe;
+    }
+
+    /**
+     * Copies through temporary file, so {@code to} is replaced only by complete copy of expected md5.
+     *
+     * @return false if md5 of {@code from} is not the expected one, {@code to} is left untouched then
+     */
+    private static boolean copy(File from, File to, String expectedMd5) throws IOException, NoSuchAlgorithmException {
+        final File tmp = new File(to.getAbsolutePath() + TMP_SUFFIX);
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        try (InputStream in = new DigestInputStream(new FileInputStream(from), md5)) {
+            Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (!DatatypeConverter.printHexBinary(md5.digest()).equalsIgnoreCase(expectedMd5)) {
+            Files.deleteIfExists(tmp.toPath());
+            return false;
+        }
+        Files.move(tmp.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Deletes everything in the entry but its lock file.
+     */
+    private static void deleteFiles(File entry) throws IOException {
+        final File[] files = entry.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().equals(LOCK)) {
+                // read only file can not be deleted on some systems
+                file.setWritable(true);
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Locks the entry against other processes, creating the entry if needed. Eviction deletes lock file of the
+     * entry, so process which was waiting for the lock of deleted file tries again with the new one.
+     *
+     * @param wait if false, returns null instead of waiting for lock held by other process
+     * @return lock, its channel has to be closed to release it
+     */
+    private static FileLock lockEntry(File entry, boolean wait) throws IOException {
+        final Path path = new File(entry, LOCK).toPath();
+        for (int attempt = 1; ; attempt++) {
+            if (!entry.isDirectory() && !entry.mkdirs() && !entry.isDirectory() && attempt >= LOCK_ATTEMPTS) {
+                throw new IOException("Failed to create " + entry.getAbsolutePath());
+            }
+            final Object before = fileKey(path);
+            final FileChannel channel;
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            } catch (NoSuchFileException ex) {
+                // entry was evicted meanwhile
+                if (attempt >= LOCK_ATTEMPTS) {
+                    throw ex;
+                }
+                continue;
+            }
+            boolean locked = false;
+            try {
+                final FileLock lock = wait ? channel.lock() : channel.tryLock();
+                if (lock == null) {
+                    return null;
+                }
+                final Object after = fileKey(path);
+                if (after != null && (before == null || before.equals(after))) {
+                    locked = true;
+                    return lock;
+                }
+            } finally {
+                if (!locked) {
+                    channel.close();
+                }
+            }
+            if (!wait || attempt >= LOCK_ATTEMPTS) {
+                throw new IOException("Entry " + entry.getAbsolutePath() + " keeps being deleted while it is locked");
+            }
+        }
+    }
+
+    /**
+     * @return identity of the file, so replaced file is told from the original; null if there is no such file
+     */
+    private static Object fileKey(Path path) {
+        try {
+            final Object key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            // without file keys, only existence of the file can be checked
+            return key == null ? path : key;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes least recently served entries until the rest fits the limit. Entries in use are skipped. Files
+     * already copied into workspaces stay there.
+     */
+    void evict() throws IOException {
+        if (maxBytes <= 0 || !EVICTION_LOCK.tryLock()) {
+            return;
+        }
+        try {
+            final List<File> files = new ArrayList<>();
+            collect(dir, files);
+            // entries are served meanwhile, so their last use and size are read once, not while sorting
+            final List<Candidate> candidates = new ArrayList<>(files.size());
+            long bytes = 0;
+            for (File file : files) {
+                final Candidate candidate = new Candidate(file.getParentFile(), file.length(),
+                        new File(file.getParentFile(), MD5).lastModified());
+                candidates.add(candidate);
+                bytes += candidate.length;
+            }
+            if (bytes <= maxBytes) {
+                return;
+            }
+            candidates.sort((a, b) -> Long.compare(a.lastUse, b.lastUse));
+            for (Candidate candidate : candidates) {
+                if (bytes <= maxBytes) {
+                    break;
+                }
+                if (delete(candidate.entry)) {
+                    bytes -= candidate.length;
+                }
+            }
+        } finally {
+            EVICTION_LOCK.unlock();
+        }
+    }
+
+    private static void collect(File dir, List<File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().equals(FILE)) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Deletes whole entry, and its parent directories left empty.
+     *
+     * @return false if the entry is in use
+     */
+    private boolean delete(File entry) throws IOException {
+        final EntryLock lock = EntryLock.acquire(entry, false);
+        if (lock == null) {
+            return false;
+        }
+        try {
+            final FileLock fileLock;
+            try {
+                fileLock = lockEntry(entry, false);
+            } catch (IOException ex) {
+                return false;
+            }
+            if (fileLock == null) {
+                return false;
+            }
+            deleteLocked(entry, fileLock);
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Deletes entry locked by this thread, and its parent directories left empty. The lock is released.
+     */
+    private void deleteLocked(File entry, FileLock fileLock) throws IOException {
+        try {
+            deleteFiles(entry);
+            // deleted while still locked, so process waiting for the lock sees it got lock of deleted file
+            Files.deleteIfExists(new File(entry, LOCK).toPath());
+        } finally {
+            fileLock.channel().close();
+        }
+        for (File empty = entry; !empty.equals(dir) && empty.delete(); ) {
+            empty = empty.getParentFile();
+        }
+    }
+
+    /**
+     * As {@link #deleteLocked(File, FileLock)}, but failure is only logged, so it does not hide the outcome of the
+     * download.
+     */
+    private void deleteQuietly(File entry, FileLock fileLock) {
+        try {
+            deleteLocked(entry, fileLock);
+        } catch (IOException ex) {
+            LOG.warn("Failed to delete artifact cache entry " + entry.getAbsolutePath(), ex);
+        }
+    }
+
+    private static final class Candidate {
+
+        private final File entry;
+        private final long length;
+        private final long lastUse;
+
+        private Candidate(File entry, long length, long lastUse) {
+            this.entry = entry;
+            this.length = length;
+            this.lastUse = lastUse;
+        }
+    }
+
+    /**
+     * Lock of entry within this jvm. It is kept in {@link #ENTRY_LOCKS} only while some thread holds or waits for
+     * it, and is the only one for its entry meanwhile.
+     */
+    private static final class EntryLock {
+
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+
+        private EntryLock(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @param wait if false, returns null instead of waiting for other thread using the entry
+         */
+        static EntryLock acquire(File entry, boolean wait) {
+            final EntryLock entryLock;
+            synchronized (ENTRY_LOCKS) {
+                entryLock = ENTRY_LOCKS.computeIfAbsent(entry.getAbsolutePath(), EntryLock::new);
+                if (!wait && entryLock.users > 0) {
+                    return null;
+                }
+                entryLock.users++;
+            }
+            if (wait) {
+                entryLock.lock.lock();
+            } else if (!entryLock.lock.tryLock()) {
+                entryLock.unregister();
+                return null;
+            }
+            return entryLock;
+        }
+
+        void release() {
+            lock.unlock();
+            unregister();
+        }
+
+        private void unregister() {
+            synchronized (ENTRY_LOCKS) {
+                if (--users == 0) {
+                    ENTRY_LOCKS.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ import hudson.plugins.scm.koji.client.tools.XmlRpcHelper;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.BuildProvider;
 
+import org.fakekoji.xmlrpc.server.expensiveobjectscache.OriginalObjectProvider;
 import org.fakekoji.xmlrpc.server.expensiveobjectscache.RemoteRequestCacheConfigKeys;
 import org.fakekoji.xmlrpc.server.expensiveobjectscache.RemoteRequestsCache;
 import org.fakekoji.xmlrpc.server.xmlrpcrequestparams.XmlRpcRequestParams;
@@ -39,9 +40,26 @@ import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -59,6 +77,16 @@ abstract class BuildMatcher {
     private final int maxBuilds;
     private final LoggerHelp logger;
     private static final Logger LOG = LoggerFactory.getLogger(KojiSCM.class);
+    // -1 queries providers one by one; 0 queries all of them at once; positive value starts also next provider when
+    // the running ones did not answer in that many milliseconds
+    private static final long HEDGE_MILLIS = Long.getLong(BuildMatcher.class.getName() + ".hedgeMillis", -1);
+    private static final Map<String, ProviderStatistics> providerStatistics = new ConcurrentHashMap<>();
+    private static final ExecutorService hedgePool = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "kojiBuildMatcherProvider");
+        t.setDaemon(true);
+        return t;
+    });
+    private long hedgeMillis = HEDGE_MILLIS;
 
     BuildMatcher(List<KojiBuildProvider> buildProviders, Predicate<String> notProcessedNvrPredicate, int maxBuilds, LoggerHelp logger) {
         this.buildProviders = buildProviders;
@@ -82,33 +110,175 @@ abstract class BuildMatcher {
      * you must filter after limit, otherwise strange builds will go in. The tests are covering this
      */
     public static Stream<Build> listBuilds(BuildMatcher bm, LoggerHelp logger) {
+        if (bm.hedgeMillis >= 0 && bm.buildProviders.size() > 1) {
+            return listBuildsHedged(bm, logger);
+        }
         for (KojiBuildProvider provider : bm.buildProviders) {
-            List<Build> builds;
             try {
-                builds = bm.getBuilds(provider.getBuildProvider());
-                if (builds.isEmpty()) {
-                    throw new RuntimeException("No builds found.");
+                return bm.listProviderBuilds(provider, () -> false).stream();
+            } catch (Exception ex) {
+                logProviderFailure(provider, ex, logger);
+                continue;
+            }
+        }
+        throw new RuntimeException("All providers tried, all failed");
+
+    }
+
+    /**
+     * Providers are queried concurrently. With {@link #hedgeMillis} of zero all of them are started at once,
+     * otherwise next provider is started when none of the running ones answered in time, or when one of them failed.
+     * First successful answer wins, if more of them are ready at once, the one of the provider configured first is
+     * used. Providers still running are cancelled, and statistics of all providers are logged, so it is visible
+     * whether the hedging pays off.
+     */
+    private static Stream<Build> listBuildsHedged(BuildMatcher bm, LoggerHelp logger) {
+        final List<KojiBuildProvider> providers = bm.buildProviders;
+        final CompletionService<List<Build>> completionService = new ExecutorCompletionService<>(hedgePool);
+        final Map<Future<List<Build>>, Integer> futures = new HashMap<>();
+        // set before the running ones are cancelled, so they record the cancellation rather than failure
+        final AtomicBoolean abandoned = new AtomicBoolean();
+        int next = 0;
+        try {
+            do {
+                futures.put(completionService.submit(submittable(bm, providers.get(next), abandoned)), next);
+                next++;
+            } while (next < providers.size() && bm.hedgeMillis == 0);
+            int running = futures.size();
+            while (running > 0) {
+                final Future<List<Build>> completed;
+                if (next < providers.size()) {
+                    completed = completionService.poll(bm.hedgeMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    completed = completionService.take();
                 }
-                List<Build> filteredBuilds = builds.stream()
-                        .sorted(BuildMatcher::compare)
-                        .limit(bm.maxBuilds)
-                        .filter(build -> bm.notProcessedNvrPredicate.test(build.getNvr())).collect(Collectors.toList());
-                if (filteredBuilds.isEmpty()) {
-                    throw new RuntimeException("No filteredBuilds found.");
+                if (completed == null) {
+                    LOG.info("No answer from providers in " + bm.hedgeMillis + "ms, querying also " + providers.get(next).getTopUrl());
+                    futures.put(completionService.submit(submittable(bm, providers.get(next), abandoned)), next);
+                    next++;
+                    running++;
+                    continue;
                 }
-                return filteredBuilds.stream();
-            } catch (Exception ex) {
-                if (logger != null) {
-                    logger.log("", ex);
-                    logger.log("Failed to read builds from " + provider.getTopUrl() + ", trying next one");
+                final List<Future<List<Build>>> ready = new ArrayList<>();
+                Future<List<Build>> another = completed;
+                while (another != null) {
+                    ready.add(another);
+                    running--;
+                    another = completionService.poll();
+                }
+                ready.sort(Comparator.comparing(futures::get));
+                for (final Future<List<Build>> future : ready) {
+                    final KojiBuildProvider provider = providers.get(futures.get(future));
+                    try {
+                        final List<Build> builds = future.get();
+                        LOG.info("Using builds from " + provider.getTopUrl());
+                        return builds.stream();
+                    } catch (ExecutionException ex) {
+                        logProviderFailure(provider, ex.getCause(), logger);
+                    }
+                }
+                // all of the ready ones failed, replace each of them by next provider
+                for (int i = 0; i < ready.size() && next < providers.size(); i++) {
+                    futures.put(completionService.submit(submittable(bm, providers.get(next), abandoned)), next);
+                    next++;
+                    running++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading builds", ex);
+        } finally {
+            abandoned.set(true);
+            for (final Future<List<Build>> future : futures.keySet()) {
+                future.cancel(true);
+            }
+            if (logger != null) {
+                for (String line : getProviderStatistics()) {
+                    logger.log(line);
                 }
-                LOG.warn("", ex);
-                LOG.error("Failed to read builds from " + provider.getTopUrl() + ", trying next one");
-                continue;
             }
         }
         throw new RuntimeException("All providers tried, all failed");
+    }
 
+    private static Callable<List<Build>> submittable(BuildMatcher bm, KojiBuildProvider provider, AtomicBoolean abandoned) {
+        return () -> bm.listProviderBuilds(provider, abandoned::get);
+    }
+
+    /**
+     * @param abandoned whether the caller is no longer interested in the answer, checked once the query ended
+     */
+    private List<Build> listProviderBuilds(KojiBuildProvider provider, BooleanSupplier abandoned) {
+        final long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<Build> builds = getBuilds(provider.getBuildProvider());
+            if (builds.isEmpty()) {
+                throw new RuntimeException("No builds found.");
+            }
+            List<Build> filteredBuilds = builds.stream()
+                    .sorted(BuildMatcher::compare)
+                    .limit(maxBuilds)
+                    .filter(build -> notProcessedNvrPredicate.test(build.getNvr())).collect(Collectors.toList());
+            if (filteredBuilds.isEmpty()) {
+                throw new RuntimeException("No filteredBuilds found.");
+            }
+            ok = true;
+            return filteredBuilds;
+        } finally {
+            final long tookMillis = (System.nanoTime() - started) / 1000000;
+            final ProviderStatistics stats = providerStatistics.computeIfAbsent(provider.getTopUrl(), k -> new ProviderStatistics());
+            stats.record(tookMillis, ok, abandoned.getAsBoolean());
+            LOG.info(provider.getTopUrl() + " answered in " + tookMillis + "ms; " + stats);
+        }
+    }
+
+    private static void logProviderFailure(KojiBuildProvider provider, Throwable ex, LoggerHelp logger) {
+        if (logger != null) {
+            logger.log("", ex);
+            logger.log("Failed to read builds from " + provider.getTopUrl() + ", trying next one");
+        }
+        LOG.warn("", ex);
+        LOG.error("Failed to read builds from " + provider.getTopUrl() + ", trying next one");
+    }
+
+    /**
+     * @return latency and failure counters of all queried providers, by their top url
+     */
+    static List<String> getProviderStatistics() {
+        final List<String> lines = new ArrayList<>(providerStatistics.size());
+        for (Map.Entry<String, ProviderStatistics> e : new TreeMap<>(providerStatistics).entrySet()) {
+            lines.add(e.getKey() + ": " + e.getValue());
+        }
+        return lines;
+    }
+
+    void setHedgeMillis(long hedgeMillis) {
+        this.hedgeMillis = hedgeMillis;
+    }
+
+    private static final class ProviderStatistics {
+        private long count;
+        private long failures;
+        private long cancelled;
+        private long totalMillis;
+        private long maxMillis;
+
+        private synchronized void record(long tookMillis, boolean ok, boolean abandoned) {
+            count++;
+            if (abandoned) {
+                cancelled++;
+            } else if (!ok) {
+                failures++;
+            }
+            totalMillis += tookMillis;
+            maxMillis = Math.max(maxMillis, tookMillis);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "count: " + count + ", failures: " + failures + ", cancelled: " + cancelled + ", avg: " + (count == 0 ? 0 : totalMillis / count) + "ms, max: " + maxMillis + "ms";
+        }
     }
 
     /**
@@ -123,8 +293,15 @@ abstract class BuildMatcher {
         return getLatestOfNewestBuilds(this, logger);
     }
 
+    /**
+     * Only the {@link #getMaxBuilds()} newest of returned builds are used, so implementations may omit older ones.
+     */
     abstract List<Build> getBuilds(BuildProvider buildProvider);
 
+    int getMaxBuilds() {
+        return maxBuilds;
+    }
+
     abstract Build getBuild(Build build);
 
     public static int compare(Build b1, Build b2) {
@@ -139,12 +316,40 @@ abstract class BuildMatcher {
 
     private static final RemoteRequestsCache cache = new RemoteRequestsCache(
             RemoteRequestCacheConfigKeys.DEFAULT_CONFIG_LOCATION,
-            (url, params) -> new XmlRpcHelper.XmlRpcExecutioner(url).execute(params));
+            new OriginalObjectProvider() {
+                @Override
+                public Object obtainOriginal(String url, XmlRpcRequestParams params) {
+                    return new XmlRpcHelper.XmlRpcExecutioner(url).execute(params);
+                }
+
+                @Override
+                public List<Object> obtainOriginals(String url, List<XmlRpcRequestParams> params) {
+                    if (params.size() == 1) {
+                        return Collections.singletonList(obtainOriginal(url, params.get(0)));
+                    }
+                    try {
+                        return new XmlRpcHelper.XmlRpcExecutioner(url).executeMulticall(params);
+                    } catch (Exception ex) {
+                        // hub may not support multicall, or one of the calls failed; the single calls will tell
+                        LOG.warn("Multicall of " + params.size() + " requests to " + url + " failed, calling them one by one", ex);
+                        return OriginalObjectProvider.super.obtainOriginals(url, params);
+                    }
+                }
+            });
 
     public static Object execute(String url, XmlRpcRequestParams params) {
         return cache.obtain(url, params);
     }
 
+    /**
+     * Executes all params against same url, those not cached are sent together in one multicall.
+     *
+     * @return results in order of given params
+     */
+    public static List<Object> executeAll(String url, List<XmlRpcRequestParams> params) {
+        return cache.obtainAll(url, params);
+    }
+
     public static int compareBuildsByCompletionTime(Build b1, Build b2) {
         return compareKojiTime(b1.getCompletionTime(), b2.getCompletionTime(), Constants.DTF);
 
@@ -0,0 +1,97 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.RPM;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import jakarta.xml.bind.DatatypeConverter;
+
+/**
+ * Computes md5 of downloaded file, and checksum expected by koji if it uses other algorithm, while the file is being
+ * downloaded, so the file does not have to be read again. Then verifies size and checksum of the file against
+ * values known to koji, if there are any.
+ */
+class DownloadDigest implements DownloadPool.Check {
+
+    private final RPM rpm;
+    private final MessageDigest md5;
+    private final MessageDigest expected;
+    private String md5Hex;
+
+    DownloadDigest(RPM rpm) throws NoSuchAlgorithmException {
+        this.rpm = rpm;
+        this.md5 = MessageDigest.getInstance("MD5");
+        final String type = rpm.getChecksum() == null ? null : rpm.getChecksumType();
+        if (type == null || "md5".equalsIgnoreCase(type)) {
+            this.expected = null;
+        } else {
+            this.expected = MessageDigest.getInstance(toJavaAlgorithm(type));
+        }
+    }
+
+    private static String toJavaAlgorithm(String kojiType) {
+        final String lower = kojiType.toLowerCase();
+        if (lower.startsWith("sha") && !lower.startsWith("sha-")) {
+            return "SHA-" + lower.substring(3);
+        }
+        return lower.toUpperCase();
+    }
+
+    InputStream wrap(InputStream in) {
+        InputStream digesting = new DigestInputStream(in, md5);
+        if (expected != null) {
+            digesting = new DigestInputStream(digesting, expected);
+        }
+        return digesting;
+    }
+
+    /**
+     * Digests bytes already downloaded by interrupted download, before the rest of the file is read by
+     * {@link #wrap(InputStream)}.
+     */
+    void resume(File part, long length) throws IOException {
+        try (InputStream in = wrap(new FileInputStream(part))) {
+            final byte[] buffer = new byte[DownloadPool.BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException(part.getName() + " is shorter than " + length + " bytes");
+                }
+                remaining -= read;
+            }
+        }
+    }
+
+    @Override
+    public void verify(long size) throws IOException {
+        md5Hex = toHex(md5.digest());
+        if (rpm.getSize() != null && rpm.getSize() != size) {
+            throw new IOException("Size of " + rpm.getFilename("") + " is " + size + ", but koji says " + rpm.getSize());
+        }
+        if (rpm.getChecksum() == null) {
+            return;
+        }
+        final String actual = expected == null ? md5Hex : toHex(expected.digest());
+        if (!actual.equalsIgnoreCase(rpm.getChecksum())) {
+            throw new IOException(rpm.getChecksumType() + " of " + rpm.getFilename("") + " is " + actual + ", but koji says " + rpm.getChecksum());
+        }
+    }
+
+    /**
+     * @return md5 of the downloaded file, null until it is verified
+     */
+    String getMd5() {
+        return md5Hex;
+    }
+
+    private static String toHex(byte[] digest) {
+        return DatatypeConverter.printHexBinary(digest).toLowerCase();
+    }
+}
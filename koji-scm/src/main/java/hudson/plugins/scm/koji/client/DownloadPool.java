@@ -0,0 +1,166 @@
+package hudson.plugins.scm.koji.client;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs downloads on pool of threads, with at most {@code perHost} of them connected to the same host at once. The
+ * limit is shared by all pools in this jvm, so concurrent jobs on one agent together do not exceed it. Results are
+ * returned in order of given downloads, regardless of order in which they finished. With single thread, downloads
+ * run one after another on the calling thread.
+ */
+class DownloadPool {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    // keyed by limit too, so pool with different limit does not change permits of the others
+    private static final Map<String, Semaphore> HOSTS = new ConcurrentHashMap<>();
+
+    private final int threads;
+    private final int perHost;
+
+    DownloadPool(int threads, int perHost) {
+        this.threads = Math.max(1, threads);
+        this.perHost = Math.max(1, perHost);
+    }
+
+    interface Download<T> {
+
+        /**
+         * @return host the download connects to, null if it is not known
+         */
+        String getHost();
+
+        T download() throws Exception;
+    }
+
+    /**
+     * @return results in order of given downloads
+     * @throws RuntimeException first failure, in order of given downloads; downloads not finished yet are cancelled
+     */
+    <T> List<T> run(List<Download<T>> downloads) throws InterruptedException {
+        final List<T> results = new ArrayList<>(downloads.size());
+        if (threads == 1 || downloads.size() <= 1) {
+            for (Download<T> download : downloads) {
+                results.add(call(download));
+            }
+            return results;
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, downloads.size()), runnable -> {
+            Thread thread = new Thread(runnable, "KojiDownload-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final List<Future<T>> futures = new ArrayList<>(downloads.size());
+        try {
+            for (Download<T> download : downloads) {
+                futures.add(pool.submit(() -> limited(download)));
+            }
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    }
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+            return results;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    private <T> T limited(Download<T> download) throws InterruptedException {
+        final String host = download.getHost();
+        if (host == null) {
+            return call(download);
+        }
+        final Semaphore permits = HOSTS.computeIfAbsent(perHost + "@" + host, h -> new Semaphore(perHost));
+        permits.acquire();
+        try {
+            return call(download);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static <T> T call(Download<T> download) {
+        try {
+            return download.download();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException("Exception while downloading", ex);
+        }
+    }
+
+    interface Check {
+
+        /**
+         * Called once the whole stream is written, before the file is renamed to target.
+         *
+         * @throws IOException if the written file is not correct, it is deleted then
+         */
+        void verify(long size) throws IOException;
+    }
+
+    /**
+     * Writes the stream to temporary file next to target, which is renamed to target once the whole stream is read
+     * and checked, so target never contains partial or corrupted download.
+     *
+     * @return number of written bytes
+     */
+    static long save(InputStream in, File target, Check check) throws IOException {
+        return save(in, target, 0, check);
+    }
+
+    /**
+     * As {@link #save(InputStream, File, Check)}, but the stream continues temporary file of interrupted download,
+     * which already contains {@code offset} bytes. If reading of the stream fails, the temporary file is kept, so
+     * the download can be resumed again; if the check fails, it is deleted.
+     *
+     * @return size of whole file
+     */
+    static long save(InputStream in, File target, long offset, Check check) throws IOException {
+        final File part = new File(target.getAbsolutePath() + PartialDownload.PART_SUFFIX);
+        long written = offset;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(part, offset > 0), BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                written += read;
+            }
+            out.flush();
+        }
+        try {
+            check.verify(written);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(part.toPath());
+            throw ex;
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+}
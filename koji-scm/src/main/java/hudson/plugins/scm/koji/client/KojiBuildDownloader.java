@@ -15,13 +15,11 @@ import hudson.remoting.VirtualChannel;
 import hudson.plugins.scm.koji.KojiSCM;
 import hudson.plugins.scm.koji.LoggerHelp;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
@@ -35,9 +33,12 @@ import java.nio.charset.StandardCharsets;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.Date;
@@ -56,7 +57,12 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
 
     private static final Logger LOG = LoggerFactory.getLogger(KojiSCM.class);
     private static final int MAX_REDIRECTIONS = 10;
-    private static final int BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = DownloadPool.BUFFER_SIZE;
+    static final int DOWNLOAD_THREADS = Integer.getInteger(KojiBuildDownloader.class.getName() + ".downloadThreads", 4);
+    static final int DOWNLOADS_PER_HOST = Integer.getInteger(KojiBuildDownloader.class.getName() + ".downloadsPerHost", 4);
+    static final int DOWNLOAD_RETRIES = Integer.getInteger(KojiBuildDownloader.class.getName() + ".downloadRetries", 3);
+    // doubled after each failed attempt
+    static final long RETRY_DELAY_MILLIS = Long.getLong(KojiBuildDownloader.class.getName() + ".retryDelayMillis", 2000);
 
     private final List<KojiBuildProvider> kojiBuildProviders;
     private final KojiXmlRpcApi kojiXmlRpcApi;
@@ -68,6 +74,8 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
     private final int maxPreviousBuilds;
     private final boolean cleanDownloadDir;
     private final boolean dirPerNvr;
+    // suffix found for previous file of the build, most likely the others have it too
+    private transient volatile String resolvedSuffix;
 
     public KojiBuildDownloader(
             List<KojiBuildProvider> kojiBuildProviders,
@@ -142,11 +150,12 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         if (kojiXmlRpcApi instanceof RealKojiXmlRpcApi) {
             final RealKojiXmlRpcApi realKojiXmlRpcApi = (RealKojiXmlRpcApi) kojiXmlRpcApi;
             List<String> rpmFiles = downloadRPMs(targetDir, build, realKojiXmlRpcApi);
+            PartialDownload.deleteLeftovers(targetDir);
             File metadataDownloadDir = new File(targetDir.getAbsolutePath() + "-metadata");
             downloadMetadata(metadataDownloadDir, build);
             downloadMetadataFile(metadataDownloadDir, kojiBuildProviders, build);
             String srcUrl = "";
-            for (String suffix : RPM.Suffix.INSTANCE.getSuffixes()) {
+            for (String suffix : suffixesToTry()) {
                 srcUrl = composeSrcUrl(build.getProvider().getDownloadUrl(), build, suffix);
                 if (isUrlReachable(srcUrl)) {
                     build.setSrcUrl(new URL(srcUrl));
@@ -174,13 +183,23 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         }
         if (kojiXmlRpcApi instanceof FakeKojiXmlRpcApi) {
             final File target = targetDir;
-            List<String> rpmPaths = build.getRpms()
+            final long started = System.currentTimeMillis();
+            final List<DownloadPool.Download<Optional<File>>> downloads = new ArrayList<>();
+            for (RPM rpm : build.getRpms()) {
+                downloads.add(download(hostOf(rpm.getUrl()), () -> downloadArchive(target, rpm)));
+            }
+            List<File> files = newDownloadPool().run(downloads)
                     .stream()
-                    .map(rpm -> downloadArchive(target, rpm))
                     .filter(Optional::isPresent)
-                    .map(optionalFile -> optionalFile.get().getAbsolutePath())
+                    .map(Optional::get)
                     .collect(Collectors.toList());
+            if (files.size() == build.getRpms().size()) {
+                // otherwise the failed ones may be resumed by next checkout
+                PartialDownload.deleteLeftovers(target);
+            }
+            List<String> rpmPaths = files.stream().map(File::getAbsolutePath).collect(Collectors.toList());
             log("Downloaded " + rpmPaths.size() + " out of " + build.getRpms().size() + " archives");
+            logThroughput(files, started);
             return new KojiBuildDownloadResult(build, target.getAbsolutePath(), rpmPaths);
         }
         return null;
@@ -207,32 +226,174 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
     }
 
     private Optional<File> downloadArchive(File targetDir, RPM rpm) {
-        if (!isUrlReachable(rpm.getUrl())) {
-            log("URL " + rpm.getUrl() + " not accessible");
-            return Optional.empty();
-        }
         File targetFile = new File(targetDir, rpm.getFilename(""));
         log("Starting downloading " + rpm.getUrl());
-        try (
-                final OutputStream out = new BufferedOutputStream(new FileOutputStream(targetFile));
-                final InputStream in = httpDownloadStream(rpm.getUrl())
-        ) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
+        try {
+            if (!downloadVerified(rpm.getUrl(), targetFile, rpm)) {
+                log("URL " + rpm.getUrl() + " not accessible");
+                return Optional.empty();
             }
-        } catch (IOException e) {
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
             log("Exception while downloading " + rpm.getFilename("") + ": ", e);
+            return Optional.empty();
         }
-        log("Download successful");
-        rpm.setHashSum(hashSum(targetFile));
         return Optional.of(targetFile);
     }
 
+    /**
+     * Downloads the file, and sets its md5 to the rpm. If agent has artifact cache set up, the file is served from
+     * it, or put into it once downloaded.
+     *
+     * @return false if there is no such file on server
+     */
+    private boolean downloadVerified(String url, File targetFile, RPM rpm) throws IOException, NoSuchAlgorithmException {
+        final ArtifactCache cache = ArtifactCache.fromProperties();
+        if (cache == null) {
+            return downloadRetried(url, targetFile, rpm);
+        }
+        final ArtifactCache.Outcome outcome = cache.obtain(rpm, targetFile, () -> downloadRetried(url, targetFile, rpm));
+        if (outcome == ArtifactCache.Outcome.SERVED) {
+            log("Served " + targetFile.getName() + " from artifact cache");
+        }
+        return outcome != ArtifactCache.Outcome.NOT_FOUND;
+    }
+
+    /**
+     * The md5, and checksum known to koji, are computed while the file is downloaded, and the file is kept only if
+     * it matches size and checksum known to koji. Failed download is retried, resuming from the part already
+     * downloaded, also by previous checkout.
+     */
+    private boolean downloadRetried(String url, File targetFile, RPM rpm) throws IOException, NoSuchAlgorithmException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return downloadResumed(url, targetFile, rpm);
+            } catch (IOException | RuntimeException ex) {
+                if (attempt >= DOWNLOAD_RETRIES) {
+                    throw ex;
+                }
+                final long delay = RETRY_DELAY_MILLIS << Math.min(attempt, 16);
+                log("Downloading " + targetFile.getName() + " failed (" + ex + "), retry " + (attempt + 1) + " of "
+                        + DOWNLOAD_RETRIES + " in " + delay + "ms");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting to retry download of " + url, ie);
+                }
+            }
+        }
+    }
+
+    boolean downloadResumed(String url, File targetFile, RPM rpm) throws IOException, NoSuchAlgorithmException {
+        final long started = System.currentTimeMillis();
+        final DownloadDigest digest = new DownloadDigest(rpm);
+        final PartialDownload partial = new PartialDownload(targetFile, url, rpm);
+        long offset = partial.resumableLength();
+        final HttpURLConnection connection = httpDownloadConnection(url, offset, offset > 0 ? partial.validator() : null);
+        if (connection == null) {
+            return false;
+        }
+        try {
+            if (connection.getResponseCode() == 416) {
+                partial.discard();
+                throw new IOException("Range from " + offset + " not satisfiable for " + url + ", starting over");
+            }
+            if (offset > 0 && connection.getResponseCode() == 206) {
+                checkContentRange(connection, offset, partial);
+                log("Resuming " + targetFile.getName() + " from " + offset + " bytes");
+                digest.resume(partial.getPart(), offset);
+            } else {
+                // nothing to resume, server ignored the range, or the file changed and If-Range made it send whole file
+                offset = 0;
+                final long length = connection.getContentLengthLong();
+                partial.start(rpm.getSize() != null ? rpm.getSize() : (length >= 0 ? length : null), validator(connection));
+            }
+            try (InputStream in = digest.wrap(connection.getInputStream())) {
+                logDownloaded(targetFile, DownloadPool.save(in, targetFile, offset, digest) - offset, started);
+            }
+            partial.finished();
+        } finally {
+            connection.disconnect();
+        }
+        rpm.setHashSum(digest.getMd5());
+        return true;
+    }
+
+    /**
+     * @return strong ETag, or Last-Modified if there is none, which identify this version of the file in If-Range
+     */
+    private static String validator(HttpURLConnection connection) {
+        final String etag = connection.getHeaderField("ETag");
+        if (etag != null && !etag.isEmpty() && !etag.startsWith("W/")) {
+            return etag;
+        }
+        final String lastModified = connection.getHeaderField("Last-Modified");
+        return lastModified == null || lastModified.isEmpty() ? null : lastModified;
+    }
+
+    /**
+     * Content-Range of resumed download is "bytes first-last/size", first has to be the offset, size the one
+     * recorded when the part was started.
+     */
+    private static void checkContentRange(HttpURLConnection connection, long offset, PartialDownload partial) throws IOException {
+        final String range = connection.getHeaderField("Content-Range");
+        final Long expectedSize = partial.expectedSize();
+        final String expected = "bytes " + offset + "-";
+        if (range == null || !range.startsWith(expected)
+                || (expectedSize != null && !range.endsWith("/" + expectedSize) && !range.endsWith("/*"))) {
+            partial.discard();
+            throw new IOException("Unexpected Content-Range " + range + " when resuming from " + offset
+                    + (expectedSize == null ? "" : " of " + expectedSize) + " bytes, starting over");
+        }
+    }
+
+    private DownloadPool newDownloadPool() {
+        return new DownloadPool(DOWNLOAD_THREADS, DOWNLOADS_PER_HOST);
+    }
+
+    private static <T> DownloadPool.Download<T> download(final String host, final Callable<T> download) {
+        return new DownloadPool.Download<T>() {
+            @Override
+            public String getHost() {
+                return host;
+            }
+
+            @Override
+            public T download() throws Exception {
+                return download.call();
+            }
+        };
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException | NullPointerException ex) {
+            return null;
+        }
+    }
+
+    private void logDownloaded(File file, long bytes, long started) {
+        final long millis = Math.max(1, System.currentTimeMillis() - started);
+        log("Downloaded " + file.getName() + ": " + bytes + " bytes in " + millis + "ms (" + bytes / millis + " kB/s)");
+    }
+
+    private void logThroughput(List<File> files, long started) {
+        final long millis = Math.max(1, System.currentTimeMillis() - started);
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        log("Downloaded " + files.size() + " files, " + bytes + " bytes in " + millis + "ms (" + bytes / millis
+                + " kB/s) by " + DOWNLOAD_THREADS + " threads, at most " + DOWNLOADS_PER_HOST + " per host on this agent");
+    }
+
     private void cleanDirRecursively(File file) {
         if (file.isFile()) {
-            file.delete();
+            // part of interrupted download is resumed, or deleted once the build is downloaded
+            if (!PartialDownload.isPartial(file)) {
+                file.delete();
+            }
             return;
         }
         // if we are still here - we have a directory:
@@ -328,13 +489,29 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
             };
         }
 
-        List<String> l = build.getRpms()
+        log(new Date().toString());
+        final long started = System.currentTimeMillis();
+        final String host = hostOf(build.getProvider().getDownloadUrl());
+        final List<DownloadPool.Download<File>> downloads = build.getRpms()
                 .stream()
                 .filter(nvrPredicate)
                 .filter(allowlistPredicate)
-                .map(r -> downloadRPM(targetDir, build, r))
-                .map(File::getAbsolutePath)
+                .map(r -> download(host, () -> downloadRPM(targetDir, build, r)))
                 .collect(Collectors.toList());
+        final List<File> files;
+        try {
+            files = newDownloadPool().run(downloads)
+                    .stream()
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while downloading RPMs", ex);
+        }
+        List<String> l = files.stream().map(File::getAbsolutePath).collect(Collectors.toList());
+        if (!build.isManual()) {
+            logThroughput(files, started);
+        }
         int rpmsInBuildXml = build.getRpms().size();
         int dwnldedFiles = l.size();
         if (dwnldedFiles == 0) {
@@ -347,35 +524,27 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         return l;
     }
 
-    private File downloadRPM(File targetDir, Build build, RPM rpm) {
+    File downloadRPM(File targetDir, Build build, RPM rpm) {
         try {
-            for (String suffix : RPM.Suffix.INSTANCE.getSuffixes()) {
+            for (String suffix : suffixesToTry()) {
                 String urlString = composeUrl(build.getProvider().getDownloadUrl(), build, rpm, suffix);
-                log(InetAddress.getLocalHost().getHostName());
-                log(new Date().toString());
+                File targetFile = new File(targetDir, rpm.getFilename(suffix));
                 if (build.isManual()) {
-                    log("Manual tag provided - skipping download of " + urlString);
+                    if (!isUrlReachable(urlString)) {
+                        log("Not accessible, trying another suffix in: " + rpm.getFilename(suffix));
+                        continue;
+                    }
+                    log("Manual tag provided - skipping download of " + urlString + " to: " + targetFile);
+                    rpm.setHashSum(hashSum(targetFile));
                 } else {
-                    log("Downloading: " + urlString);
-                }
-                if (!isUrlReachable(urlString)) {
-                    log("Not accessible, trying another suffix in: " + rpm.getFilename(suffix));
-                    continue;
-                }
-                rpm.setUrl(urlString);
-                File targetFile = new File(targetDir, rpm.getFilename(suffix));
-                log("To: " + targetFile);
-                if (!build.isManual()) {
-                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(targetFile));
-                         InputStream in = httpDownloadStream(urlString)) {
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int read;
-                        while ((read = in.read(buffer)) != -1) {
-                            out.write(buffer, 0, read);
-                        }
+                    log("Downloading: " + urlString + " to: " + targetFile);
+                    if (!downloadVerified(urlString, targetFile, rpm)) {
+                        log("Not found, trying another suffix in: " + rpm.getFilename(suffix));
+                        continue;
                     }
                 }
-                rpm.setHashSum(hashSum(targetFile));
+                rpm.setUrl(urlString);
+                resolvedSuffix = suffix;
                 return targetFile;
             }
         } catch (RuntimeException ex) {
@@ -383,9 +552,25 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         } catch (Exception ex) {
             throw new RuntimeException("Exception while downloading RPM", ex);
         }
+        log("No suffix of " + rpm.getNvr() + " found, skipping it");
         return null;
     }
 
+    /**
+     * @return known suffixes, the one found for previous file of the build first
+     */
+    private List<String> suffixesToTry() {
+        final List<String> suffixes = new ArrayList<>(Arrays.asList(RPM.Suffix.INSTANCE.getSuffixes()));
+        final String resolved = resolvedSuffix;
+        if (resolved != null && suffixes.remove(resolved)) {
+            suffixes.add(0, resolved);
+        }
+        return suffixes;
+    }
+
+    /**
+     * Used only for files which were not downloaded, digest of downloaded ones is computed while downloading.
+     */
     private String hashSum(File file) {
         byte[] buffer = new byte[BUFFER_SIZE];
         MessageDigest hashAlgorithm;
@@ -403,7 +588,14 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         return DatatypeConverter.printHexBinary(hashAlgorithm.digest()).toLowerCase();
     }
 
-    private InputStream httpDownloadStream(String urlString) {
+    /**
+     * @param offset if positive, only the rest of the file from offset is asked for
+     * @param validator ETag or Last-Modified sent with the part; if set, the rest is asked for only if the file did
+     * not change, otherwise server answers 200 with whole file
+     * @return connection answering 200, 206 if the range was honored or 416 if it was refused; null if there is no
+     * such file on server (404 or 410)
+     */
+    private HttpURLConnection httpDownloadConnection(String urlString, long offset, String validator) {
         HttpURLConnection httpConn = null;
         boolean keepConnection = false;
         for (int i = 0; i < MAX_REDIRECTIONS; i++) {
@@ -411,12 +603,23 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
                 URL url = new URL(urlString);
                 httpConn = (HttpURLConnection) url.openConnection();
                 httpConn.setRequestMethod("GET");
+                if (offset > 0) {
+                    httpConn.setRequestProperty("Range", "bytes=" + offset + "-");
+                    if (validator != null) {
+                        httpConn.setRequestProperty("If-Range", validator);
+                    }
+                }
                 int response = httpConn.getResponseCode();
                 switch (response) {
-                    case 200: {
+                    case 200:
+                    case 206:
+                    case 416: {
                         keepConnection = true;
-                        return httpConn.getInputStream();
+                        return httpConn;
                     }
+                    case 404:
+                    case 410:
+                        return null;
                     case 301:
                     case 302: {
                         String location = httpConn.getHeaderField("Location");
@@ -541,7 +744,7 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         }
     }
 
-    private boolean isUrlReachable(String urlString) {
+    boolean isUrlReachable(String urlString) {
         try {
             return isUrlReachableImpl(urlString, MAX_REDIRECTIONS);
         } catch (Exception e) {
@@ -550,13 +753,18 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         }
     }
 
+    /**
+     * Asks by HEAD, so no content is transferred. Servers which do not support HEAD are asked by GET.
+     */
     private boolean isUrlReachableImpl(String urlString, int redirectionsRemaining) throws MalformedURLException, IOException {
-        URL u = new URL(urlString);
-        HttpURLConnection huc = (HttpURLConnection) u.openConnection();
+        HttpURLConnection huc = probe(urlString, "HEAD");
         try {
-            huc.setRequestMethod("GET");  //OR  huc.setRequestMethod ("HEAD");
-            huc.connect();
             int code = huc.getResponseCode();
+            if (code == 405 || code == 501) {
+                huc.disconnect();
+                huc = probe(urlString, "GET");
+                code = huc.getResponseCode();
+            }
             // http 301=Moved Permanently; 302=Found
             // koji.fedoraproject.org might return both
             if ((code == 301 || code == 302) && redirectionsRemaining > 0) {
@@ -568,6 +776,13 @@ public class KojiBuildDownloader implements FilePath.FileCallable<KojiBuildDownl
         }
     }
 
+    private static HttpURLConnection probe(String urlString, String method) throws IOException {
+        HttpURLConnection huc = (HttpURLConnection) new URL(urlString).openConnection();
+        huc.setRequestMethod(method);
+        huc.connect();
+        return huc;
+    }
+
     private static String addArch(RPM rpm) {
         //it may happen. that this will be necessary to be configurable in koji plugin
         //is container checkbox?
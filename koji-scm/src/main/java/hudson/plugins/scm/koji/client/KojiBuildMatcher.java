@@ -31,6 +31,8 @@ import java.util.function.Predicate;
 class KojiBuildMatcher extends BuildMatcher {
 
     private static final Logger LOG = LoggerFactory.getLogger(KojiBuildMatcher.class);
+    // number of listTags calls sent in one multicall, 1 disables multicall
+    static final int TAGS_BATCH_SIZE = Integer.getInteger(KojiBuildMatcher.class.getName() + ".tagsBatchSize", 100);
 
     private final GlobPredicate tagPredicate;
     private final String pkgName;
@@ -49,28 +51,47 @@ class KojiBuildMatcher extends BuildMatcher {
         this.archs = composeArchList(kojiXmlRpcApi.getArch());
     }
 
+    /**
+     * Tags are resolved lazily, newest build first, until {@link #getMaxBuilds()} builds matching the tag predicate
+     * are found. Older builds would be cut off by {@link BuildMatcher#listBuilds} anyway.
+     */
     @Override
     List<Build> getBuilds(BuildProvider buildProvider) {
         final List<Build> builds = new ArrayList<>();
-        for (final Build build : listPackageBuilds(buildProvider.getTopUrl(), pkgName)) {
-            final Set<String> tags = retrieveTags(buildProvider.getTopUrl(), build);
-            if (matchesTagPredicate(tags)) {
-                builds.add(
-                        new Build(
-                                build.getId(),
-                                build.getName(),
-                                build.getVersion(),
-                                build.getRelease(),
-                                build.getNvr(),
-                                build.getCompletionTime(),
-                                null,
-                                tags,
-                                buildProvider,
-                                null
-                        )
-                );
+        final List<Build> packageBuilds = new ArrayList<>(listPackageBuilds(buildProvider.getTopUrl(), pkgName));
+        packageBuilds.sort(BuildMatcher::compare);
+        final int maxBuilds = getMaxBuilds();
+        final int batchSize = Math.max(1, TAGS_BATCH_SIZE);
+        int chunkSize = 0;
+        int resolved = 0;
+        while (resolved < packageBuilds.size() && builds.size() < maxBuilds) {
+            // start with as many as are missing, grow when too many of them did not match
+            chunkSize = Math.min(batchSize, Math.max(maxBuilds - builds.size(), chunkSize * 2));
+            final List<Build> candidates = packageBuilds.subList(resolved, Math.min(resolved + chunkSize, packageBuilds.size()));
+            final List<Set<String>> allTags = retrieveTags(buildProvider.getTopUrl(), candidates);
+            for (int i = 0; i < candidates.size() && builds.size() < maxBuilds; i++) {
+                final Build build = candidates.get(i);
+                final Set<String> tags = allTags.get(i);
+                if (matchesTagPredicate(tags)) {
+                    builds.add(
+                            new Build(
+                                    build.getId(),
+                                    build.getName(),
+                                    build.getVersion(),
+                                    build.getRelease(),
+                                    build.getNvr(),
+                                    build.getCompletionTime(),
+                                    null,
+                                    tags,
+                                    buildProvider,
+                                    null
+                            )
+                    );
+                }
             }
+            resolved += candidates.size();
         }
+        LOG.info("Resolved tags of " + resolved + " of " + packageBuilds.size() + " builds of " + pkgName + " to find " + builds.size() + " matching");
         return builds;
     }
 
@@ -122,10 +143,19 @@ class KojiBuildMatcher extends BuildMatcher {
         return builds;
     }
 
-    private Set<String> retrieveTags(String url, Build build) {
-        final XmlRpcRequestParams params = new ListTags(build.getId());
-        final TagSet response = TagSet.create(execute(url, params));
-        return response.getValue();
+    private List<Set<String>> retrieveTags(String url, List<Build> builds) {
+        final List<Set<String>> tags = new ArrayList<>(builds.size());
+        final int batchSize = Math.max(1, TAGS_BATCH_SIZE);
+        for (int from = 0; from < builds.size(); from += batchSize) {
+            final List<XmlRpcRequestParams> params = new ArrayList<>(batchSize);
+            for (final Build build : builds.subList(from, Math.min(from + batchSize, builds.size()))) {
+                params.add(new ListTags(build.getId()));
+            }
+            for (final Object response : executeAll(url, params)) {
+                tags.add(TagSet.create(response).getValue());
+            }
+        }
+        return tags;
     }
 
     private boolean matchesTagPredicate(Set<String> tags) {
@@ -168,6 +198,9 @@ class KojiBuildMatcher extends BuildMatcher {
         } else {
             addWindowsArchives(archivefilenames, archives, build);
         }
+        for (RPM archive : archives) {
+            response.describe(archive);
+        }
         return archives;
     }
 
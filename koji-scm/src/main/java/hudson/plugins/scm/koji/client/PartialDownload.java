@@ -0,0 +1,161 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.RPM;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Part of file kept after interrupted download, so the download can be resumed instead of starting from zero. Next
+ * to the {@code .part} file, there is a small properties file saying where the part is downloaded from, and what
+ * size and checksum the whole file is expected to have. The part is resumed only if all of them still match. It
+ * also keeps ETag or Last-Modified the server sent with the part, which is sent back in If-Range, so the server
+ * sends whole file again if the file changed meanwhile. Part with neither the validator nor checksum known to koji
+ * is not resumed, as nothing could tell it belongs to the same file.
+ */
+class PartialDownload {
+
+    static final String PART_SUFFIX = ".part";
+    static final String INFO_SUFFIX = ".part.properties";
+    private static final String URL = "url";
+    private static final String SIZE = "size";
+    private static final String CHECKSUM = "checksum";
+    private static final String VALIDATOR = "validator";
+
+    private final File part;
+    private final File info;
+    private final String url;
+    private final RPM rpm;
+
+    PartialDownload(File target, String url, RPM rpm) {
+        this.part = new File(target.getAbsolutePath() + PART_SUFFIX);
+        this.info = new File(target.getAbsolutePath() + INFO_SUFFIX);
+        this.url = url;
+        this.rpm = rpm;
+    }
+
+    File getPart() {
+        return part;
+    }
+
+    /**
+     * @return number of bytes the download can be resumed from, 0 if there is no usable part; part which can not
+     * be resumed is deleted
+     */
+    long resumableLength() throws IOException {
+        if (!part.exists() || !info.exists()) {
+            discard();
+            return 0;
+        }
+        final Properties properties;
+        try {
+            properties = load();
+        } catch (IOException | IllegalArgumentException ex) {
+            discard();
+            return 0;
+        }
+        final long length = part.length();
+        final Long size = expectedSize(properties);
+        if (!url.equals(properties.getProperty(URL))
+                || !Objects.equals(rpm.getChecksum(), properties.getProperty(CHECKSUM))
+                || (rpm.getSize() != null && !rpm.getSize().equals(size))
+                || (size != null && length >= size)
+                || (rpm.getChecksum() == null && properties.getProperty(VALIDATOR) == null)) {
+            discard();
+            return 0;
+        }
+        return length;
+    }
+
+    /**
+     * @return size of whole file recorded when the part was started, null if it was not known
+     */
+    Long expectedSize() throws IOException {
+        return expectedSize(load());
+    }
+
+    /**
+     * @return ETag or Last-Modified sent by server when the part was started, null if there was none
+     */
+    String validator() throws IOException {
+        return load().getProperty(VALIDATOR);
+    }
+
+    private Properties load() throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(info)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static Long expectedSize(Properties properties) {
+        final String size = properties.getProperty(SIZE);
+        try {
+            return size == null ? null : Long.valueOf(size);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Records origin of the part, before any byte of it is written.
+     *
+     * @param size size of whole file, if koji does not know it, then as announced by server; may be null
+     * @param validator strong ETag or Last-Modified of the file, as sent by server; may be null
+     */
+    void start(Long size, String validator) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(URL, url);
+        if (size != null && size >= 0) {
+            properties.setProperty(SIZE, String.valueOf(size));
+        }
+        if (rpm.getChecksum() != null) {
+            properties.setProperty(CHECKSUM, rpm.getChecksum());
+        }
+        if (validator != null) {
+            properties.setProperty(VALIDATOR, validator);
+        }
+        try (OutputStream out = new FileOutputStream(info)) {
+            properties.store(out, null);
+        }
+    }
+
+    /**
+     * Called once the part was renamed to target.
+     */
+    void finished() throws IOException {
+        Files.deleteIfExists(info.toPath());
+    }
+
+    void discard() throws IOException {
+        Files.deleteIfExists(part.toPath());
+        Files.deleteIfExists(info.toPath());
+    }
+
+    static boolean isPartial(File file) {
+        return file.getName().endsWith(PART_SUFFIX) || file.getName().endsWith(INFO_SUFFIX);
+    }
+
+    /**
+     * Deletes parts left in directory by downloads which were never resumed.
+     */
+    static void deleteLeftovers(File dir) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && isPartial(file)) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.RPM;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.xml.bind.DatatypeConverter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArtifactCacheTest {
+
+    private static ArtifactCache.Fetch writing(File target, RPM rpm, int size, AtomicInteger fetches) {
+        return () -> {
+            fetches.incrementAndGet();
+            Files.write(target.toPath(), new byte[size]);
+            rpm.setHashSum(md5(size));
+            return true;
+        };
+    }
+
+    private static String md5(int zeros) throws NoSuchAlgorithmException {
+        return DatatypeConverter.printHexBinary(MessageDigest.getInstance("MD5").digest(new byte[zeros])).toLowerCase();
+    }
+
+    private static RPM rpm(String nvr, long size) {
+        RPM rpm = new RPM("b", "1", "1", nvr, "x64", nvr + ".x64.rpm");
+        rpm.setSize(size);
+        return rpm;
+    }
+
+    @Test
+    public void fileIsDownloadedOnceForAllWorkspaces(@TempDir Path dir) throws Exception {
+        ArtifactCache cache = new ArtifactCache(dir.resolve("cache").toFile(), 0);
+        AtomicInteger fetches = new AtomicInteger();
+        File first = Files.createDirectories(dir.resolve("job1")).resolve("b-1-1.x64.rpm").toFile();
+        File second = Files.createDirectories(dir.resolve("job2")).resolve("b-1-1.x64.rpm").toFile();
+
+        RPM rpm = rpm("b-1-1", 10);
+        Assertions.assertEquals(ArtifactCache.Outcome.FETCHED, cache.obtain(rpm, first, writing(first, rpm, 10, fetches)));
+        RPM sameRpm = rpm("b-1-1", 10);
+        Assertions.assertEquals(ArtifactCache.Outcome.SERVED, cache.obtain(sameRpm, second, writing(second, sameRpm, 10, fetches)));
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(10, second.length());
+        Assertions.assertEquals(md5(10), sameRpm.getHashSum());
+        // workspace gets its own copy, so changing it does not change the cache
+        Files.write(first.toPath(), new byte[]{1, 2, 3});
+        Assertions.assertEquals(ArtifactCache.Outcome.SERVED, cache.obtain(rpm("b-1-1", 10), first, writing(first, rpm, 10, fetches)));
+        Assertions.assertEquals(10, first.length());
+        Assertions.assertEquals(10, second.length());
+
+        // different size, so different file of the same name
+        RPM rebuilt = rpm("b-1-1", 12);
+        Assertions.assertEquals(ArtifactCache.Outcome.FETCHED, cache.obtain(rebuilt, second, writing(second, rebuilt, 12, fetches)));
+        Assertions.assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void missingFileIsNotCached(@TempDir Path dir) throws Exception {
+        ArtifactCache cache = new ArtifactCache(dir.resolve("cache").toFile(), 0);
+        File target = dir.resolve("b-1-1.x64.rpm").toFile();
+        Assertions.assertEquals(ArtifactCache.Outcome.NOT_FOUND, cache.obtain(rpm("b-1-1", 10), target, () -> false));
+        Assertions.assertFalse(Files.exists(dir.resolve("cache").resolve("b-1-1")), "no empty entry is left");
+        Assertions.assertThrows(IOException.class, () -> cache.obtain(rpm("b-1-1", 10), target, () -> {
+            throw new IOException("connection reset");
+        }));
+        Assertions.assertFalse(Files.exists(dir.resolve("cache").resolve("b-1-1")), "no empty entry is left");
+        AtomicInteger fetches = new AtomicInteger();
+        RPM rpm = rpm("b-1-1", 10);
+        Assertions.assertEquals(ArtifactCache.Outcome.FETCHED, cache.obtain(rpm, target, writing(target, rpm, 10, fetches)));
+    }
+
+    @Test
+    public void leastRecentlyServedFileIsEvicted(@TempDir Path dir) throws Exception {
+        ArtifactCache cache = new ArtifactCache(dir.resolve("cache").toFile(), 25);
+        AtomicInteger fetches = new AtomicInteger();
+        File old = dir.resolve("a-1-1.x64.rpm").toFile();
+        File served = dir.resolve("b-1-1.x64.rpm").toFile();
+        File added = dir.resolve("c-1-1.x64.rpm").toFile();
+        RPM a = rpm("a-1-1", 10);
+        RPM b = rpm("b-1-1", 10);
+        cache.obtain(a, old, writing(old, a, 10, fetches));
+        cache.obtain(b, served, writing(served, b, 10, fetches));
+        backdate(dir.resolve("cache"), 60_000);
+        cache.obtain(rpm("b-1-1", 10), served, writing(served, b, 10, fetches));
+        RPM c = rpm("c-1-1", 10);
+        cache.obtain(c, added, writing(added, c, 10, fetches));
+        Assertions.assertEquals(3, fetches.get());
+
+        cache.obtain(rpm("b-1-1", 10), served, writing(served, b, 10, fetches));
+        Assertions.assertEquals(3, fetches.get());
+        cache.obtain(rpm("a-1-1", 10), old, writing(old, a, 10, fetches));
+        Assertions.assertEquals(4, fetches.get(), "a was evicted");
+        // workspace keeps its file regardless
+        Assertions.assertEquals(10, added.length());
+    }
+
+    @Test
+    public void damagedEntryIsDownloadedAgain(@TempDir Path dir) throws Exception {
+        ArtifactCache cache = new ArtifactCache(dir.resolve("cache").toFile(), 0);
+        AtomicInteger fetches = new AtomicInteger();
+        File target = dir.resolve("b-1-1.x64.rpm").toFile();
+        RPM rpm = rpm("b-1-1", 10);
+        cache.obtain(rpm, target, writing(target, rpm, 10, fetches));
+        File cached = Files.walk(dir.resolve("cache")).filter(p -> p.endsWith("file")).findFirst().get().toFile();
+        // cached file is read only, but may still be damaged on disk
+        cached.setWritable(true);
+        Files.write(cached.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        RPM same = rpm("b-1-1", 10);
+        Assertions.assertEquals(ArtifactCache.Outcome.FETCHED, cache.obtain(same, target, writing(target, same, 10, fetches)));
+        Assertions.assertEquals(2, fetches.get());
+        Assertions.assertEquals(md5(10), same.getHashSum());
+        Assertions.assertEquals(ArtifactCache.Outcome.SERVED, cache.obtain(rpm("b-1-1", 10), target, writing(target, same, 10, fetches)));
+    }
+
+    @Test
+    public void evictedEntryIsDeletedWhole(@TempDir Path dir) throws Exception {
+        ArtifactCache cache = new ArtifactCache(dir.resolve("cache").toFile(), 15);
+        AtomicInteger fetches = new AtomicInteger();
+        File old = dir.resolve("a-1-1.x64.rpm").toFile();
+        File added = dir.resolve("c-1-1.x64.rpm").toFile();
+        RPM a = rpm("a-1-1", 10);
+        cache.obtain(a, old, writing(old, a, 10, fetches));
+        backdate(dir.resolve("cache"), 60_000);
+        RPM c = rpm("c-1-1", 10);
+        cache.obtain(c, added, writing(added, c, 10, fetches));
+        Assertions.assertFalse(Files.exists(dir.resolve("cache").resolve("a-1-1")), "no directory or lock file is left");
+        Assertions.assertTrue(Files.exists(dir.resolve("cache").resolve("c-1-1")));
+    }
+
+    /**
+     * Moves last use of all entries to the past.
+     */
+    private static void backdate(Path dir, long millis) throws IOException {
+        Files.walk(dir).filter(p -> p.endsWith("md5"))
+                .forEach(p -> p.toFile().setLastModified(p.toFile().lastModified() - millis));
+    }
+}
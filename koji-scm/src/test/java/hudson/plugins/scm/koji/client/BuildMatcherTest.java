@@ -1,6 +1,7 @@
 package hudson.plugins.scm.koji.client;
 
 import hudson.plugins.scm.koji.KojiBuildProvider;
+import hudson.plugins.scm.koji.LoggerHelp;
 import hudson.plugins.scm.koji.NotProcessedNvrPredicate;
 import hudson.plugins.scm.koji.model.Build;
 import hudson.plugins.scm.koji.model.BuildProvider;
@@ -233,4 +234,64 @@ public class BuildMatcherTest {
         Optional<Build> b = BuildMatcher.getLatestOfNewestBuilds(bm, null);
         Assertions.assertEquals("b-1-2", b.get().getNvr());
     }
+
+    @Test
+    public void hedgedQueryUsesFasterProvider() throws IOException, InterruptedException {
+        List<KojiBuildProvider> providers = Arrays.asList(
+                new KojiBuildProvider("proc://slow", "proc://slow"),
+                new KojiBuildProvider("proc://failing", "proc://failing"),
+                new KojiBuildProvider("proc://fast", "proc://fast"));
+        BuildMatcher bm = new BuildMatcher(providers, NotProcessedNvrPredicate.createNotProcessedNvrPredicate(new ArrayList<>()), 3, null) {
+            @Override
+            List<Build> getBuilds(BuildProvider buildProvider) {
+                if (buildProvider.getTopUrl().equals("proc://slow")) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    return Arrays.asList(createBuild(1, getDtfDate(10, 10)));
+                }
+                if (buildProvider.getTopUrl().equals("proc://failing")) {
+                    throw new RuntimeException("hub is down");
+                }
+                return Arrays.asList(createBuild(2, getDtfDate(9, 9)));
+            }
+
+            @Override
+            Build getBuild(Build build) {
+                return build;
+            }
+        };
+        bm.setHedgeMillis(50);
+        List<String> log = new ArrayList<>();
+        LoggerHelp logger = new LoggerHelp() {
+            @Override
+            public void log(String s) {
+                log.add(s);
+            }
+
+            @Override
+            public void log(String s, Object o) {
+                log.add(s);
+            }
+
+            @Override
+            public void log(String s, Object... o) {
+                log.add(s);
+            }
+        };
+        long started = System.currentTimeMillis();
+        List<Build> l = BuildMatcher.listBuilds(bm, logger).collect(Collectors.toList());
+        Assertions.assertTrue(System.currentTimeMillis() - started < 5000);
+        Assertions.assertEquals(1, l.size());
+        Assertions.assertEquals("b-1-2", l.get(0).getNvr());
+        Assertions.assertTrue(log.stream().anyMatch(line -> line.startsWith("proc://failing: count: 1, failures: 1, cancelled: 0")), log.toString());
+        Assertions.assertTrue(log.stream().anyMatch(line -> line.startsWith("proc://fast: count: 1, failures: 0, cancelled: 0")), log.toString());
+        // the slow one records its cancellation once it notices the interrupt
+        while (BuildMatcher.getProviderStatistics().stream().noneMatch(line -> line.startsWith("proc://slow: count: 1, failures: 0, cancelled: 1"))) {
+            Assertions.assertTrue(System.currentTimeMillis() - started < 5000, BuildMatcher.getProviderStatistics().toString());
+            Thread.sleep(10);
+        }
+    }
 }
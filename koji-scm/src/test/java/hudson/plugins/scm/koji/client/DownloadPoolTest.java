@@ -0,0 +1,186 @@
+package hudson.plugins.scm.koji.client;
+
+import hudson.plugins.scm.koji.model.RPM;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DownloadPoolTest {
+
+    private static DownloadPool.Download<Integer> sleeping(String host, int result, long millis, AtomicInteger running, AtomicInteger maxRunning) {
+        return new DownloadPool.Download<Integer>() {
+            @Override
+            public String getHost() {
+                return host;
+            }
+
+            @Override
+            public Integer download() throws Exception {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(millis);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void resultsKeepOrderAndHostLimit() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<DownloadPool.Download<Integer>> downloads = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            // earlier downloads take longer, so they finish last
+            downloads.add(sleeping("host", i, 120 - i * 10, running, maxRunning));
+            expected.add(i);
+        }
+        Assertions.assertEquals(expected, new DownloadPool(8, 3).run(downloads));
+        Assertions.assertTrue(maxRunning.get() <= 3, "at most 3 downloads from one host, was " + maxRunning.get());
+        Assertions.assertTrue(maxRunning.get() > 1, "downloads should run in parallel");
+    }
+
+    @Test
+    public void hostLimitIsSharedByPools() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<DownloadPool.Download<Integer>> downloads = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            downloads.add(sleeping("shared-host", i, 50, running, maxRunning));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                new DownloadPool(4, 2).run(downloads);
+            } catch (Throwable ex) {
+                failure.set(ex);
+            }
+        });
+        other.start();
+        new DownloadPool(4, 2).run(downloads);
+        other.join();
+        Assertions.assertNull(failure.get());
+        Assertions.assertTrue(maxRunning.get() <= 2, "at most 2 downloads from one host for both pools, was " + maxRunning.get());
+    }
+
+    @Test
+    public void firstFailureIsThrown() {
+        List<DownloadPool.Download<Integer>> downloads = new ArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        downloads.add(sleeping("host", 0, 10, running, maxRunning));
+        downloads.add(new DownloadPool.Download<Integer>() {
+            @Override
+            public String getHost() {
+                return null;
+            }
+
+            @Override
+            public Integer download() throws IOException {
+                throw new IOException("broken");
+            }
+        });
+        RuntimeException ex = Assertions.assertThrows(RuntimeException.class, () -> new DownloadPool(4, 4).run(downloads));
+        Assertions.assertEquals("broken", ex.getCause().getMessage());
+    }
+
+    @Test
+    public void failedSaveKeepsPartToResume(@TempDir Path dir) throws IOException {
+        File target = dir.resolve("file.rpm").toFile();
+        Assertions.assertEquals(3, DownloadPool.save(new ByteArrayInputStream(new byte[]{1, 2, 3}), target, size -> {
+        }));
+        Assertions.assertEquals(3, target.length());
+        File broken = dir.resolve("broken.rpm").toFile();
+        InputStream failing = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (read++ > 10) {
+                    throw new IOException("connection reset");
+                }
+                return 1;
+            }
+        };
+        Assertions.assertThrows(IOException.class, () -> DownloadPool.save(failing, broken, size -> {
+        }));
+        Assertions.assertFalse(broken.exists());
+        File part = dir.resolve("broken.rpm" + PartialDownload.PART_SUFFIX).toFile();
+        Assertions.assertEquals(11, part.length());
+        Assertions.assertEquals(16, DownloadPool.save(new ByteArrayInputStream(new byte[]{1, 1, 1, 1, 1}), broken, 11, size -> {
+        }));
+        Assertions.assertEquals(16, broken.length());
+        Assertions.assertFalse(part.exists());
+        Assertions.assertEquals(2, Files.list(dir).count());
+    }
+
+    @Test
+    public void partIsResumedOnlyFromSameOrigin(@TempDir Path dir) throws IOException {
+        RPM rpm = new RPM("b", "1", "1", "b-1-1", "x64", "b-1-1.x64.rpm");
+        rpm.setSize(100L);
+        File target = dir.resolve(rpm.getFilename("")).toFile();
+        PartialDownload partial = new PartialDownload(target, "http://koji/b-1-1.x64.rpm", rpm);
+        Assertions.assertEquals(0, partial.resumableLength());
+        partial.start(rpm.getSize(), "\"etag-1\"");
+        Files.write(partial.getPart().toPath(), new byte[40]);
+        Assertions.assertEquals(40, partial.resumableLength());
+        Assertions.assertEquals(Long.valueOf(100), partial.expectedSize());
+        Assertions.assertEquals("\"etag-1\"", partial.validator());
+
+        Assertions.assertEquals(0, new PartialDownload(target, "http://other/b-1-1.x64.rpm", rpm).resumableLength());
+        Assertions.assertFalse(partial.getPart().exists());
+        Assertions.assertEquals(0, Files.list(dir).count());
+    }
+
+    @Test
+    public void partWithoutValidatorIsResumedOnlyIfChecksumIsKnown(@TempDir Path dir) throws IOException {
+        RPM rpm = new RPM("b", "1", "1", "b-1-1", "x64", "b-1-1.x64.rpm");
+        rpm.setSize(100L);
+        File target = dir.resolve(rpm.getFilename("")).toFile();
+        PartialDownload partial = new PartialDownload(target, "http://koji/b-1-1.x64.rpm", rpm);
+        partial.start(rpm.getSize(), null);
+        Files.write(partial.getPart().toPath(), new byte[40]);
+        Assertions.assertEquals(0, partial.resumableLength(), "nothing tells the part is of the same file");
+
+        rpm.setChecksum("md5", "00762c9e1e7b2e64d60bf584a3873987");
+        partial.start(rpm.getSize(), null);
+        Files.write(partial.getPart().toPath(), new byte[40]);
+        Assertions.assertEquals(40, partial.resumableLength(), "checksum is verified once the rest is downloaded");
+        Assertions.assertNull(partial.validator());
+    }
+
+    @Test
+    public void digestIsComputedAndVerifiedWhileSaving(@TempDir Path dir) throws Exception {
+        byte[] content = "content of rpm".getBytes(StandardCharsets.UTF_8);
+        RPM rpm = new RPM("b", "1", "1", "b-1-1", "x64", "b-1-1.x64.rpm");
+        rpm.setSize((long) content.length);
+        rpm.setChecksum("sha256", "3106fc3ab5908faf608878244804cf0d475a29408c8511c916b83efa323bf2d0");
+        DownloadDigest digest = new DownloadDigest(rpm);
+        File target = dir.resolve(rpm.getFilename("")).toFile();
+        DownloadPool.save(digest.wrap(new ByteArrayInputStream(content)), target, digest);
+        Assertions.assertTrue(target.exists());
+        Assertions.assertEquals("00762c9e1e7b2e64d60bf584a3873987", digest.getMd5());
+
+        rpm.setChecksum("sha256", "0000000000000000000000000000000000000000000000000000000000000000");
+        DownloadDigest corrupted = new DownloadDigest(rpm);
+        File rejected = dir.resolve("rejected.rpm").toFile();
+        IOException ex = Assertions.assertThrows(IOException.class,
+                () -> DownloadPool.save(corrupted.wrap(new ByteArrayInputStream(content)), rejected, corrupted));
+        Assertions.assertTrue(ex.getMessage().contains("sha256"), ex.getMessage());
+        Assertions.assertFalse(rejected.exists());
+    }
+}
@@ -0,0 +1,249 @@
+package hudson.plugins.scm.koji.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.plugins.scm.koji.model.Build;
+import hudson.plugins.scm.koji.model.BuildProvider;
+import hudson.plugins.scm.koji.model.RPM;
+import jakarta.xml.bind.DatatypeConverter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class KojiBuildDownloaderTest {
+
+    private static final String BUILD_PATH = "/b/1/1/x86_64/";
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private volatile boolean headRefused;
+    private volatile boolean rangeRefused;
+    private volatile String lastRange;
+    private volatile String lastIfRange;
+    private HttpServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+        requests.add(method + " " + path);
+        final byte[] content = files.get(path);
+        final String etag = etags.get(path);
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        lastRange = range;
+        lastIfRange = ifRange;
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        if (headRefused && method.equals("HEAD")) {
+            exchange.sendResponseHeaders(405, -1);
+        } else if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else if (method.equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+        } else if (range != null && rangeRefused) {
+            exchange.sendResponseHeaders(416, -1);
+        } else if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            // only "bytes=first-" is ever asked for
+            final int first = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + (content.length - 1) + "/" + content.length);
+            exchange.sendResponseHeaders(206, content.length - first);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content, first, content.length - first);
+            }
+        } else {
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        }
+        exchange.close();
+    }
+
+    private String downloadUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    private Build build(boolean manual, RPM... rpms) {
+        return new Build(1, "b", "1", "1", "b-1-1", null, Arrays.asList(rpms), Collections.emptySet(),
+                new BuildProvider(null, downloadUrl()), manual);
+    }
+
+    private static RPM rpm(String nvr) {
+        return new RPM(nvr.substring(0, nvr.length() - 4), "1", "1", nvr, "x86_64", null);
+    }
+
+    private static KojiBuildDownloader downloader() {
+        return new KojiBuildDownloader(null, null, null, null, null, 0, false, false);
+    }
+
+    private static void writePart(File target, String url, RPM rpm, String validator, String part) throws IOException {
+        new PartialDownload(target, url, rpm).start(rpm.getSize(), validator);
+        Files.write(new File(target.getAbsolutePath() + PartialDownload.PART_SUFFIX).toPath(), part.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String md5(byte[] content) throws NoSuchAlgorithmException {
+        return DatatypeConverter.printHexBinary(MessageDigest.getInstance("MD5").digest(content)).toLowerCase();
+    }
+
+    private static void assertNoPart(File target) {
+        Assertions.assertFalse(new File(target.getAbsolutePath() + PartialDownload.PART_SUFFIX).exists());
+        Assertions.assertFalse(new File(target.getAbsolutePath() + PartialDownload.INFO_SUFFIX).exists());
+    }
+
+    @Test
+    public void missingSuffixFallsThroughAndResolvedOneIsTriedFirst(@TempDir Path dir) throws IOException {
+        files.put(BUILD_PATH + "b-1-1.x86_64.tarxz", "b".getBytes(StandardCharsets.UTF_8));
+        files.put(BUILD_PATH + "b-devel-1-1.x86_64.tarxz", "b-devel".getBytes(StandardCharsets.UTF_8));
+        RPM b = rpm("b-1-1");
+        RPM devel = rpm("b-devel-1-1");
+        Build build = build(false, b, devel);
+        KojiBuildDownloader downloader = downloader();
+
+        File first = downloader.downloadRPM(dir.toFile(), build, b);
+        Assertions.assertEquals(dir.resolve("b-1-1.x86_64.tarxz").toFile(), first);
+        Assertions.assertEquals("b", new String(Files.readAllBytes(first.toPath()), StandardCharsets.UTF_8));
+        Assertions.assertEquals(Arrays.asList(
+                "GET " + BUILD_PATH + "b-1-1.x86_64.rpm",
+                "GET " + BUILD_PATH + "b-1-1.x86_64.tarxz"), requests);
+        Assertions.assertEquals(downloadUrl() + BUILD_PATH.substring(1) + "b-1-1.x86_64.tarxz", b.getUrl());
+
+        requests.clear();
+        File second = downloader.downloadRPM(dir.toFile(), build, devel);
+        Assertions.assertEquals("b-devel", new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8));
+        Assertions.assertEquals(Collections.singletonList("GET " + BUILD_PATH + "b-devel-1-1.x86_64.tarxz"), requests);
+        Assertions.assertFalse(dir.resolve("b-1-1.x86_64.rpm").toFile().exists());
+    }
+
+    @Test
+    public void fileOfNoSuffixIsSkipped(@TempDir Path dir) {
+        RPM b = rpm("b-1-1");
+        Assertions.assertNull(downloader().downloadRPM(dir.toFile(), build(false, b), b));
+        Assertions.assertEquals(RPM.Suffix.INSTANCE.getSuffixes().length, requests.size());
+        Assertions.assertNull(b.getUrl());
+    }
+
+    @Test
+    public void refusedHeadFallsBackToGet(@TempDir Path dir) {
+        files.put(BUILD_PATH + "b-1-1.x86_64.tarxz", "b".getBytes(StandardCharsets.UTF_8));
+        headRefused = true;
+        RPM b = rpm("b-1-1");
+
+        File file = downloader().downloadRPM(dir.toFile(), build(true, b), b);
+        Assertions.assertEquals(dir.resolve("b-1-1.x86_64.tarxz").toFile(), file);
+        Assertions.assertEquals(Arrays.asList(
+                "HEAD " + BUILD_PATH + "b-1-1.x86_64.rpm",
+                "GET " + BUILD_PATH + "b-1-1.x86_64.rpm",
+                "HEAD " + BUILD_PATH + "b-1-1.x86_64.tarxz",
+                "GET " + BUILD_PATH + "b-1-1.x86_64.tarxz"), requests);
+        // manual builds are only checked, not downloaded
+        Assertions.assertFalse(file.exists());
+    }
+
+    @Test
+    public void headIsEnoughIfSupported() {
+        files.put(BUILD_PATH + "b-1-1.x86_64.rpm", "b".getBytes(StandardCharsets.UTF_8));
+        KojiBuildDownloader downloader = downloader();
+        Assertions.assertTrue(downloader.isUrlReachable(downloadUrl() + BUILD_PATH.substring(1) + "b-1-1.x86_64.rpm"));
+        Assertions.assertFalse(downloader.isUrlReachable(downloadUrl() + BUILD_PATH.substring(1) + "b-1-1.x86_64.zip"));
+        Assertions.assertEquals(Arrays.asList(
+                "HEAD " + BUILD_PATH + "b-1-1.x86_64.rpm",
+                "HEAD " + BUILD_PATH + "b-1-1.x86_64.zip"), requests);
+    }
+
+    @Test
+    public void partIsResumedFromItsEnd(@TempDir Path dir) throws Exception {
+        byte[] content = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+        files.put(BUILD_PATH + "b-1-1.x86_64.rpm", content);
+        etags.put(BUILD_PATH + "b-1-1.x86_64.rpm", "\"v1\"");
+        String url = downloadUrl() + BUILD_PATH.substring(1) + "b-1-1.x86_64.rpm";
+        RPM b = rpm("b-1-1");
+        b.setSize((long) content.length);
+        File target = dir.resolve("b-1-1.x86_64.rpm").toFile();
+        writePart(target, url, b, "\"v1\"", "012345");
+
+        Assertions.assertTrue(downloader().downloadResumed(url, target, b));
+        Assertions.assertEquals("bytes=6-", lastRange);
+        Assertions.assertEquals("\"v1\"", lastIfRange);
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        // digest of the part is computed before the rest is appended to it
+        Assertions.assertEquals(md5(content), b.getHashSum());
+        assertNoPart(target);
+    }
+
+    @Test
+    public void changedFileIsDownloadedWhole(@TempDir Path dir) throws Exception {
+        byte[] content = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+        files.put(BUILD_PATH + "b-1-1.x86_64.rpm", content);
+        etags.put(BUILD_PATH + "b-1-1.x86_64.rpm", "\"v2\"");
+        String url = downloadUrl() + BUILD_PATH.substring(1) + "b-1-1.x86_64.rpm";
+        RPM b = rpm("b-1-1");
+        b.setSize((long) content.length);
+        File target = dir.resolve("b-1-1.x86_64.rpm").toFile();
+        // part of previous version of the file, server answers If-Range with 200 and whole file
+        writePart(target, url, b, "\"v1\"", "XXXXXXXXXX");
+
+        Assertions.assertTrue(downloader().downloadResumed(url, target, b));
+        Assertions.assertEquals("bytes=10-", lastRange);
+        Assertions.assertEquals("\"v1\"", lastIfRange);
+        // the stale part is truncated, not appended to
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        Assertions.assertEquals(md5(content), b.getHashSum());
+        assertNoPart(target);
+    }
+
+    @Test
+    public void unsatisfiableRangeDiscardsPart(@TempDir Path dir) throws Exception {
+        byte[] content = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+        files.put(BUILD_PATH + "b-1-1.x86_64.rpm", content);
+        etags.put(BUILD_PATH + "b-1-1.x86_64.rpm", "\"v1\"");
+        rangeRefused = true;
+        String url = downloadUrl() + BUILD_PATH.substring(1) + "b-1-1.x86_64.rpm";
+        RPM b = rpm("b-1-1");
+        b.setSize((long) content.length);
+        File target = dir.resolve("b-1-1.x86_64.rpm").toFile();
+        writePart(target, url, b, "\"v1\"", "012345");
+        KojiBuildDownloader downloader = downloader();
+
+        Assertions.assertThrows(IOException.class, () -> downloader.downloadResumed(url, target, b));
+        Assertions.assertEquals("bytes=6-", lastRange);
+        Assertions.assertFalse(target.exists());
+        assertNoPart(target);
+
+        // so the retry starts over
+        Assertions.assertTrue(downloader.downloadResumed(url, target, b));
+        Assertions.assertNull(lastRange);
+        Assertions.assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+    }
+}